@@ -1,16 +1,50 @@
 package com.hashtable;
 
+import com.hashtable.cache.CacheSimulator;
+import com.hashtable.cache.ExpiringMap;
+import com.hashtable.cache.Ticker;
+import com.hashtable.cache.TinyLfuCache;
 import com.hashtable.file.FileInfo;
 import com.hashtable.file.Files;
+import com.hashtable.map.CompactHashMap;
+import com.hashtable.map.ConcurrentHashMap;
+import com.hashtable.map.HashBiMap;
 import com.hashtable.map.HashMap;
+import com.hashtable.map.HashMapStats;
 import com.hashtable.map.LinkedHashMap;
 import com.hashtable.map.Map;
+import com.hashtable.map.PersistentHashMap;
+import com.hashtable.map.RobinHoodHashMap;
+import com.hashtable.map.SwissHashMap;
 import com.hashtable.model.Key;
+import com.hashtable.persist.BitcaskMap;
+import com.hashtable.persist.Codec;
+import com.hashtable.persist.DurableMap;
+import com.hashtable.persist.MapSnapshot;
+import com.hashtable.persist.MappedHashMap;
 import com.hashtable.model.Person;
 import com.hashtable.model.SubKey1;
 import com.hashtable.model.SubKey2;
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
 /**
  * Description: 测试哈希表
  *
@@ -56,6 +90,1726 @@ public class Main {
         });
     }
 
+    @Test
+    public void testLruCache() {
+        LinkedHashMap<String, Integer> cache = new LinkedHashMap<>(16, 0.75f, true);
+        cache.setMaxEntries(3);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        // b最久没有访问, 被淘汰
+        cache.put("d", 4);
+        Assert.test(cache.size() == 3 && !cache.containsKey("b"));
+        // 覆盖也算访问
+        cache.put("c", 30);
+        cache.put("e", 5);
+        Assert.test(!cache.containsKey("a"));
+        StringBuilder order = new StringBuilder();
+        cache.traversal(new Map.Visitor<String, Integer>() {
+            public boolean visit(String key, Integer value) {
+                order.append(key);
+                return false;
+            }
+        });
+        Assert.test(order.toString().equals("dce"));
+
+        // 按权重淘汰: 权重为value
+        LinkedHashMap<String, Integer> weighted = new LinkedHashMap<>(16, 0.75f, true);
+        weighted.setMaxWeight(10, new LinkedHashMap.Weigher<String, Integer>() {
+            @Override
+            public int weigh(String key, Integer value) {
+                return value;
+            }
+        });
+        weighted.put("a", 4);
+        weighted.put("b", 4);
+        weighted.put("c", 4);
+        Assert.test(weighted.size() == 2 && weighted.totalWeight() == 8 && !weighted.containsKey("a"));
+        weighted.put("b", 1);
+        Assert.test(weighted.totalWeight() == 5);
+
+        // 自定义淘汰策略
+        LinkedHashMap<Integer, Integer> custom = new LinkedHashMap<Integer, Integer>() {
+            @Override
+            protected boolean removeEldestEntry(Integer key, Integer value) {
+                return value < 0;
+            }
+        };
+        custom.put(1, -1);
+        custom.put(2, 2);
+        Assert.test(custom.size() == 1 && custom.get(2) == 2);
+    }
+
+    // 100万次访问, 热点数据占80%: 容量为1万的LRU缓存的命中率
+    @Test
+    public void testLruCacheBenchmark() {
+        LinkedHashMap<Integer, Integer> cache = new LinkedHashMap<>(10_000, 0.75f, true);
+        cache.setMaxEntries(10_000);
+        Random random = new Random(1);
+        int[] hits = {0};
+        Times.test("LRU", new Times.Task() {
+            @Override
+            public void execute() {
+                for (int i = 0; i < 1_000_000; i++) {
+                    int key = random.nextInt(10) < 8 ? random.nextInt(5_000) : random.nextInt(1_000_000);
+                    if (cache.get(key) != null) {
+                        hits[0]++;
+                    } else {
+                        cache.put(key, key);
+                    }
+                }
+            }
+        });
+        System.out.println("hit rate = " + hits[0] / 10_000.0 + "%");
+    }
+
+    // ------------------------------------测试ExpiringMap-------------------------------------------
+
+    @Test
+    public void testExpiringMap() {
+        // 手动拨动的时钟
+        long[] time = {0};
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return time[0];
+            }
+        };
+        long second = TimeUnit.SECONDS.toNanos(1);
+
+        ExpiringMap<String, Integer> map = new ExpiringMap<>(ExpiringMap.Policy.AFTER_WRITE, 10, TimeUnit.SECONDS, ticker);
+        map.put("a", 1);
+        map.put("b", 2, 1, TimeUnit.HOURS);
+        time[0] += 5 * second;
+        // 写入之后计时, 读取不会续期
+        Assert.test(map.get("a") == 1);
+        map.put("c", 3);
+        time[0] += 5 * second;
+        Assert.test(map.get("a") == null && map.get("c") == 3 && map.size() == 2);
+        // 覆盖会重新计时
+        Assert.test(map.put("c", 30) == 3);
+        time[0] += 9 * second;
+        Assert.test(map.containsKey("c") && map.containsValue(30));
+        time[0] += second;
+        Assert.test(!map.containsKey("c") && map.size() == 1);
+        time[0] += TimeUnit.HOURS.toNanos(1);
+        Assert.test(map.isEmpty() && map.get("b") == null);
+
+        // 访问之后续期
+        ExpiringMap<String, Integer> access = new ExpiringMap<>(ExpiringMap.Policy.AFTER_ACCESS, 10, TimeUnit.SECONDS, ticker);
+        access.put("a", 1);
+        access.put("b", 2);
+        for (int i = 0; i < 5; i++) {
+            time[0] += 6 * second;
+            Assert.test(access.get("a") == 1);
+        }
+        Assert.test(access.size() == 1 && !access.containsKey("b"));
+
+        // 长时间不操作, 时间轮转过很多圈, 所有到期的都会被清理(包括a)
+        for (int i = 0; i < 1000; i++) {
+            access.put("k" + i, i, i + 1, TimeUnit.MINUTES);
+        }
+        time[0] += TimeUnit.MINUTES.toNanos(500);
+        Assert.test(access.cleanUp() == 501 && access.size() == 500);
+        time[0] += TimeUnit.DAYS.toNanos(30);
+        Assert.test(access.cleanUp() == 500 && access.isEmpty());
+
+        // 数量限制: 淘汰最久没有访问的
+        ExpiringMap<Integer, Integer> bounded = new ExpiringMap<>(ExpiringMap.Policy.AFTER_WRITE, 1, TimeUnit.MINUTES, ticker);
+        bounded.setMaxEntries(2);
+        bounded.put(1, 1);
+        bounded.put(2, 2);
+        bounded.get(1);
+        bounded.put(3, 3);
+        Assert.test(bounded.size() == 2 && !bounded.containsKey(2));
+        time[0] += TimeUnit.MINUTES.toNanos(1);
+        Assert.test(bounded.cleanUp() == 2);
+
+        // 游标跳过过期的键值对, 可以删除
+        map.put("x", 1, 1, TimeUnit.SECONDS);
+        map.put("y", 2);
+        map.put("z", 3);
+        time[0] += 2 * second;
+        Map.Cursor<String, Integer> cursor = map.cursor();
+        StringBuilder keys = new StringBuilder();
+        while (cursor.next()) {
+            keys.append(cursor.key());
+            if (cursor.value() == 2) cursor.remove();
+        }
+        Assert.test(keys.toString().equals("yz") && map.size() == 1 && map.get("z") == 3);
+    }
+
+    // 100万个键值对中有1000个到期: 清理只处理到期的键值对, 和Map的大小无关
+    @Test
+    public void testExpiringMapBenchmark() {
+        long[] time = {0};
+        Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return time[0];
+            }
+        };
+        ExpiringMap<Integer, Integer> map = new ExpiringMap<>(ExpiringMap.Policy.AFTER_WRITE, 1, TimeUnit.HOURS, ticker);
+        Times.test("ExpiringMap put 1000000", new Times.Task() {
+            @Override
+            public void execute() {
+                for (int i = 0; i < 1_000_000; i++) {
+                    // 每1000个中有1个1秒后到期
+                    if (i % 1000 == 0) {
+                        map.put(i, i, 1, TimeUnit.SECONDS);
+                    } else {
+                        map.put(i, i);
+                    }
+                }
+            }
+        });
+        time[0] += TimeUnit.SECONDS.toNanos(2);
+        long begin = System.nanoTime();
+        int expired = map.cleanUp();
+        long cost = System.nanoTime() - begin;
+        Assert.test(expired == 1000 && map.size() == 999_000);
+        System.out.println("清理" + expired + "个过期键值对耗时: " + cost / 1000 + "微秒");
+
+        // 对比: 遍历整个Map检查过期时间
+        HashMap<Integer, Long> expireAt = new HashMap<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            expireAt.put(i, i % 1000 == 0 ? 1L : 3600L);
+        }
+        Times.test("full scan", new Times.Task() {
+            @Override
+            public void execute() {
+                int[] count = {0};
+                expireAt.traversal(new Map.Visitor<Integer, Long>() {
+                    public boolean visit(Integer key, Long value) {
+                        if (value <= 2) count[0]++;
+                        return false;
+                    }
+                });
+                Assert.test(count[0] == 1000);
+            }
+        });
+    }
+
+    // ------------------------------------测试W-TinyLFU-------------------------------------------
+
+    @Test
+    public void testTinyLfuCache() {
+        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>(100);
+        // 热点数据: 访问多次
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 80; i++) {
+                if (cache.get(i) == null) cache.put(i, i);
+            }
+        }
+        Assert.test(cache.size() == 80 && cache.frequency(0) >= 5);
+        // 扫描: 10000个只访问一次的数据, 期间热点数据仍然在被访问
+        for (int i = 1000; i < 11000; i++) {
+            if (cache.get(i) == null) cache.put(i, i);
+            if (cache.get(i % 80) == null) cache.put(i % 80, i % 80);
+        }
+        Assert.test(cache.size() == 100);
+        int hot = 0;
+        for (int i = 0; i < 80; i++) {
+            if (cache.containsKey(i)) hot++;
+        }
+        // 热点数据都留在了主区
+        Assert.test(hot == 80);
+
+        Assert.test(cache.put(0, 100) == 0 && cache.get(0) == 100 && cache.containsValue(100));
+        Assert.test(cache.remove(0) == 100 && !cache.containsKey(0) && cache.size() == 99);
+
+        // 游标删除
+        Map.Cursor<Integer, Integer> cursor = cache.cursor();
+        int count = 0;
+        int removed = 0;
+        while (cursor.next()) {
+            count++;
+            if (cursor.key() % 2 == 0) {
+                cursor.remove();
+                removed++;
+            }
+        }
+        Assert.test(count == 99 && cache.size() == 99 - removed && !cache.containsKey(2) && cache.get(1) == 1);
+
+        // 容量为1
+        TinyLfuCache<Integer, Integer> tiny = new TinyLfuCache<>(1);
+        tiny.put(1, 1);
+        tiny.put(2, 2);
+        Assert.test(tiny.size() == 1 && tiny.get(2) == 2);
+
+        // 容量为1~3: 主区太小, 没有保护区或者保护区只有一个位置, 反复命中之后仍然能取到值
+        for (int maximumSize = 1; maximumSize <= 3; maximumSize++) {
+            TinyLfuCache<Integer, Integer> small = new TinyLfuCache<>(maximumSize);
+            small.put(1, 1);
+            for (int i = 0; i < 3; i++) {
+                small.put(2, 2);
+            }
+            small.put(3, 3);
+            for (int key = 1; key <= 3; key++) {
+                for (int i = 0; i < 3; i++) {
+                    Integer value = small.get(key);
+                    Assert.test(small.containsKey(key) ? value != null && value == key : value == null);
+                    if (value != null) small.put(key, key);
+                }
+            }
+            int[] visited = new int[1];
+            small.traversal(new Map.Visitor<Integer, Integer>() {
+                @Override
+                public boolean visit(Integer key, Integer value) {
+                    Assert.test(key.equals(value) && small.containsKey(key));
+                    visited[0]++;
+                    return false;
+                }
+            });
+            Assert.test(small.size() <= maximumSize && visited[0] == small.size());
+        }
+    }
+
+    // 热点访问(Zipf分布)中穿插大批量的扫描: 回放trace, 比较LRU和W-TinyLFU的命中率
+    @Test
+    public void testTinyLfuCacheBenchmark() throws IOException {
+        Random random = new Random(1);
+        long[] trace = new long[2_000_000];
+        long scanKey = 1_000_000;
+        for (int i = 0; i < trace.length; i++) {
+            // 每20万次访问中有5万次是扫描
+            if (i % 200_000 >= 150_000) {
+                trace[i] = scanKey++;
+            } else {
+                trace[i] = (long) Math.pow(100_000, random.nextDouble());
+            }
+        }
+        File file = File.createTempFile("trace", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("# zipf + scan");
+            for (long key : trace) {
+                writer.println(key);
+            }
+        }
+        long[] replay = CacheSimulator.readTrace(file.getPath());
+        Assert.test(Arrays.equals(trace, replay));
+
+        double[] rates = new double[2];
+        Times.test("LRU", new Times.Task() {
+            @Override
+            public void execute() {
+                rates[0] = CacheSimulator.hitRate(CacheSimulator.lru(5_000), replay);
+            }
+        });
+        Times.test("W-TinyLFU", new Times.Task() {
+            @Override
+            public void execute() {
+                rates[1] = CacheSimulator.hitRate(new TinyLfuCache<Long, Long>(5_000), replay);
+            }
+        });
+        System.out.println("LRU hit rate = " + rates[0] + ", W-TinyLFU hit rate = " + rates[1]);
+        Assert.test(rates[1] > rates[0]);
+    }
+
+    // ------------------------------------测试链表桶/红黑树桶-------------------------------------------
+
+    @Test
+    public void testTreeify() {
+        HashMap<Object, Integer> map = new LinkedHashMap<>();
+        // Key的哈希值为value / 10, 每10个Key在同一个桶中, 桶中超过2个节点就转换为红黑树
+        map.setTreeifyThreshold(2);
+        for (int i = 1; i <= 100; i++) {
+            map.put(new Key(i), i);
+        }
+        // 删除大部分节点, 红黑树退化为链表
+        for (int i = 1; i <= 100; i++) {
+            if (i % 10 > 1) Assert.test(map.remove(new Key(i)) == i);
+        }
+        Assert.test(map.size() == 20);
+        for (int i = 1; i <= 100; i++) {
+            Integer value = map.get(new Key(i));
+            Assert.test(i % 10 > 1 ? value == null : value == i);
+        }
+        // LinkedHashMap仍然按照添加顺序遍历
+        int[] prev = {0};
+        map.traversal(new Map.Visitor<Object, Integer>() {
+            public boolean visit(Object key, Integer value) {
+                Assert.test(value > prev[0]);
+                prev[0] = value;
+                return false;
+            }
+        });
+    }
+
+    // ------------------------------------测试渐进式扩容-------------------------------------------
+
+    @Test
+    public void testIncrementalResize() {
+        HashMap<Object, Integer> map = new HashMap<>();
+        map.setIncrementalResize(true);
+        boolean migrating = false;
+        for (int i = 0; i < 10000; i++) {
+            map.put("test" + i, i);
+            map.put(new Key(i), i);
+            if (i % 3 == 0) map.remove("test" + (i / 2));
+            migrating |= map.remainingMigration() > 0;
+            // 迁移过程中, 旧桶、新桶中的key都能查到
+            Assert.test(map.get(new Key(i / 2)) == i / 2);
+        }
+        Assert.test(migrating);
+        Assert.test(map.size() == 20000 - 3334);
+        Assert.test(map.get("test9999") == 9999);
+        Assert.test(map.get("test0") == null);
+    }
+
+    // 一次性扩容 vs 渐进式扩容, 每次put耗时的长尾
+    @Test
+    public void testIncrementalResizeLatency() {
+        testPutLatency(new HashMap<>(), 4_000_000);
+        HashMap<Integer, Integer> map = new HashMap<>();
+        map.setIncrementalResize(true);
+        testPutLatency(map, 4_000_000);
+    }
+
+    public void testPutLatency(HashMap<Integer, Integer> map, int n) {
+        long[] latencies = new long[n];
+        for (int i = 0; i < n; i++) {
+            long begin = System.nanoTime();
+            map.put(i, i);
+            latencies[i] = System.nanoTime() - begin;
+        }
+        Arrays.sort(latencies);
+        System.out.println("p99 = " + latencies[(int) (n * 0.99)] + "ns, "
+                + "p99.9 = " + latencies[(int) (n * 0.999)] + "ns, "
+                + "p99.99 = " + latencies[(int) (n * 0.9999)] + "ns, "
+                + "max = " + latencies[n - 1] / 1000_000.0 + "ms");
+    }
+
+    // 每个桶都是红黑树时的扩容: 拆分后线性构建红黑树, 不再逐个节点重新插入
+    @Test
+    public void testTreeBinResize() {
+        HashMap<Object, Integer> map = new HashMap<>();
+        int n = 4_000_000;
+        long[] latencies = new long[n];
+        // Key的哈希值为value / 10, 每个桶中至少10个节点, 都是红黑树
+        for (int i = 0; i < n; i++) {
+            long begin = System.nanoTime();
+            map.put(new Key(i), i);
+            latencies[i] = System.nanoTime() - begin;
+        }
+        Assert.test(map.get(new Key(n - 1)) == n - 1);
+        // 从16扩容到n, 一共扩容18次, 最慢的18次put基本就是扩容的耗时
+        Arrays.sort(latencies);
+        long resize = 0;
+        for (int i = n - 18; i < n; i++) {
+            resize += latencies[i];
+        }
+        System.out.println("resize = " + resize / 1000_000.0 + "ms");
+    }
+
+    // ------------------------------------测试预估容量、批量添加-------------------------------------------
+
+    @Test
+    public void testPutAll() {
+        String[] keys = new String[1000];
+        Integer[] values = new Integer[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "test" + i;
+            values[i] = i;
+        }
+        HashMap<String, Integer> map = new HashMap<>(10, 0.5f);
+        map.put("jack", 1);
+        map.putAll(keys, values);
+        Assert.test(map.size() == 1001);
+
+        HashMap<String, Integer> linked = new LinkedHashMap<>(2000);
+        linked.putAll(map);
+        Assert.test(linked.size() == 1001);
+        Assert.test(linked.get("jack") == 1);
+        Assert.test(linked.get("test999") == 999);
+    }
+
+    @Test
+    public void testBuildFromDistinct() {
+        // Key的哈希值为value / 10, 每10个Key在同一个桶中, 填充完之后超过2个节点的桶转换为红黑树
+        Key[] keys = new Key[100];
+        Integer[] values = new Integer[100];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new Key(i + 1);
+            values[i] = i + 1;
+        }
+        LinkedHashMap<Key, Integer> map = new LinkedHashMap<>();
+        map.setTreeifyThreshold(2);
+        map.buildFromDistinct(keys, values);
+        Assert.test(map.size() == 100 && map.stats().getTreeBuckets() > 0);
+        for (int i = 1; i <= 100; i++) {
+            Assert.test(map.get(new Key(i)) == i);
+        }
+        Assert.test(map.put(new Key(5), -5) == 5 && map.remove(new Key(6)) == 6 && map.size() == 99);
+
+        // 填充完只淘汰一次, 留下最后添加的10个
+        LinkedHashMap<Key, Integer> bounded = new LinkedHashMap<>();
+        bounded.setMaxEntries(10);
+        bounded.buildFromDistinct(keys, values);
+        Assert.test(bounded.size() == 10 && bounded.get(new Key(90)) == null && bounded.get(new Key(91)) == 91);
+
+        boolean thrown = false;
+        try {
+            bounded.buildFromDistinct(keys, values);
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        Assert.test(thrown);
+    }
+
+    // 加载一个已知大小的字典: 逐个put(多次扩容) vs 预估容量 + putAll
+    @Test
+    public void testPutAllBenchmark() {
+        int n = 4_000_000;
+        String[] keys = new String[n];
+        Integer[] values = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = "key" + i;
+            values[i] = i;
+        }
+        Times.test("put", new Times.Task() {
+            @Override
+            public void execute() {
+                HashMap<String, Integer> map = new HashMap<>();
+                for (int i = 0; i < n; i++) {
+                    map.put(keys[i], values[i]);
+                }
+            }
+        });
+        Times.test("putAll", new Times.Task() {
+            @Override
+            public void execute() {
+                HashMap<String, Integer> map = new HashMap<>();
+                map.putAll(keys, values);
+            }
+        });
+    }
+
+    // ------------------------------------测试ConcurrentHashMap-------------------------------------------
+
+    @Test
+    public void testConcurrentHashMap() throws InterruptedException {
+        Map<Integer, Integer> map = new ConcurrentHashMap<>();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            int base = t * 100_000;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100_000; i++) {
+                        map.put(base + i, i);
+                        if (i % 2 == 0) map.remove(base + i);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.test(map.size() == 8 * 50_000);
+        Assert.test(map.get(1) == 1);
+        Assert.test(map.get(2) == null);
+        Assert.test(map.get(799_999) == 99_999);
+    }
+
+    // 1~64个线程, 90%读10%写: ConcurrentHashMap vs 加全局锁的HashMap
+    @Test
+    public void testConcurrentHashMapBenchmark() throws InterruptedException {
+        for (int threads = 1; threads <= 64; threads <<= 1) {
+            testThroughput(new HashMap<>(), true, threads);
+            testThroughput(new ConcurrentHashMap<>(), false, threads);
+        }
+    }
+
+    public void testThroughput(Map<Integer, Integer> map, boolean lock, int threadCount) throws InterruptedException {
+        int keys = 1 << 20;
+        int ops = 4_000_000 / threadCount;
+        for (int i = 0; i < keys; i++) {
+            map.put(i, i);
+        }
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            Random random = new Random(t);
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < ops; i++) {
+                        Integer key = random.nextInt(keys);
+                        boolean write = i % 10 == 0;
+                        if (lock) {
+                            synchronized (map) {
+                                if (write) map.put(key, i);
+                                else map.get(key);
+                            }
+                        } else if (write) {
+                            map.put(key, i);
+                        } else {
+                            map.get(key);
+                        }
+                    }
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long ms = Math.max((System.nanoTime() - begin) / 1000_000, 1);
+        System.out.println(map.getClass().getSimpleName() + (lock ? "(synchronized)" : "")
+                + " threads = " + threadCount + ", " + (long) ops * threadCount / ms + " ops/ms");
+    }
+
+    // ------------------------------------测试Cursor-------------------------------------------
+
+    @Test
+    public void testCursor() {
+        HashMap<Integer, Integer> hashMap = new HashMap<>();
+        hashMap.setTreeifyThreshold(2);
+        hashMap.setIncrementalResize(true);
+        Map[] maps = {hashMap, new LinkedHashMap<>(), new RobinHoodHashMap<>(), new SwissHashMap<>(),
+                new ConcurrentHashMap<>(), new com.hashtable.map.TreeMap<>()};
+        for (Map<Integer, Integer> map : maps) {
+            for (int i = 0; i < 10000; i++) {
+                map.put(i * 16, i);
+            }
+            // 遍历过程中删除所有的奇数
+            int count = 0;
+            Map.Cursor<Integer, Integer> cursor = map.cursor();
+            while (cursor.next()) {
+                count++;
+                Assert.test(cursor.value() == cursor.key() / 16);
+                if (cursor.value() % 2 == 1) cursor.remove();
+            }
+            Assert.test(count == 10000);
+            Assert.test(map.size() == 5000);
+            Assert.test(map.get(32) == 2 && map.get(48) == null);
+
+            // 随时停止, 重新开始
+            cursor.reset();
+            count = 0;
+            while (cursor.next() && ++count < 100) ;
+            Assert.test(count == 100);
+        }
+    }
+
+    // 遍历200万个键值对: Visitor(遍历整个哈希表) vs Cursor, 统计耗时和分配的内存
+    @Test
+    public void testCursorBenchmark() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        for (int i = 0; i < 2_000_000; i++) {
+            map.put(i, i);
+        }
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long[] sum = new long[1];
+        for (int round = 0; round < 3; round++) {
+            long bytes = bean.getCurrentThreadAllocatedBytes();
+            Times.test("traversal", new Times.Task() {
+                @Override
+                public void execute() {
+                    map.traversal(new Map.Visitor<Integer, Integer>() {
+                        @Override
+                        public boolean visit(Integer key, Integer value) {
+                            sum[0] += value;
+                            return false;
+                        }
+                    });
+                }
+            });
+            System.out.println("allocated " + (bean.getCurrentThreadAllocatedBytes() - bytes) + " bytes");
+
+            bytes = bean.getCurrentThreadAllocatedBytes();
+            Times.test("cursor", new Times.Task() {
+                @Override
+                public void execute() {
+                    Map.Cursor<Integer, Integer> cursor = map.cursor();
+                    while (cursor.next()) {
+                        sum[0] += cursor.value();
+                    }
+                }
+            });
+            System.out.println("allocated " + (bean.getCurrentThreadAllocatedBytes() - bytes) + " bytes");
+        }
+    }
+
+    // ------------------------------------测试抗哈希碰撞模式-------------------------------------------
+
+    /**
+     * 由"Aa"、"BB"拼接成的字符串, hashCode都相同, 一共有2^blocks个
+     */
+    private String[] collidingStrings(int blocks) {
+        String[] strings = new String[1 << blocks];
+        for (int i = 0; i < strings.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int b = 0; b < blocks; b++) {
+                sb.append((i >> b & 1) == 0 ? "Aa" : "BB");
+            }
+            strings[i] = sb.toString();
+        }
+        return strings;
+    }
+
+    @Test
+    public void testSeededHash() {
+        String[] strings = collidingStrings(12);
+        Assert.test(strings[0].hashCode() == strings[strings.length - 1].hashCode());
+        HashMap<Object, Integer> map = new HashMap<>();
+        map.setSeededHash(true);
+        for (int i = 0; i < strings.length; i++) {
+            map.put(strings[i], i);
+        }
+        // 换了种子之后, hashCode相同的非字符串key仍然能正常工作
+        for (int i = 0; i < 100; i++) {
+            map.put(new Key(i), i);
+        }
+        map.put(new SubKey1(1000), 1);
+        map.put(new SubKey2(1000), 2);
+        Assert.test(map.size() == strings.length + 101);
+        for (int i = 0; i < strings.length; i++) {
+            Assert.test(map.get(strings[i]) == i);
+        }
+        Assert.test(map.get(new Key(99)) == 99);
+        Assert.test(map.get(new SubKey1(1000)) == 2);
+        for (int i = 0; i < strings.length; i += 2) {
+            Assert.test(map.remove(strings[i]) == i);
+        }
+        Assert.test(map.get(strings[1]) == 1 && map.get(strings[2]) == null);
+    }
+
+    // hashCode全部相同的字符串: 平均每次put + get的耗时, 普通模式随着数量增长, 抗碰撞模式基本不变
+    @Test
+    public void testSeededHashBenchmark() {
+        for (int blocks = 10; blocks <= 16; blocks += 2) {
+            String[] strings = collidingStrings(blocks);
+            for (int round = 0; round < 2; round++) {
+                for (boolean seeded : new boolean[]{false, true}) {
+                    HashMap<String, Integer> map = new HashMap<>();
+                    map.setSeededHash(seeded);
+                    long begin = System.nanoTime();
+                    for (int i = 0; i < strings.length; i++) {
+                        map.put(strings[i], i);
+                    }
+                    for (int i = 0; i < strings.length; i++) {
+                        map.get(strings[i]);
+                    }
+                    long ns = (System.nanoTime() - begin) / strings.length;
+                    if (round == 1) {
+                        System.out.println((seeded ? "seeded" : "default") + " n = " + strings.length + ", " + ns + " ns/op");
+                    }
+                }
+            }
+        }
+    }
+
+    // ------------------------------------测试哈希值相同、不可比较的key-------------------------------------------
+
+    @Test
+    public void testCollisionGroups() {
+        HashMap<Object, Integer> map = new HashMap<>();
+        map.setTreeifyThreshold(2);
+        // 10个一组哈希值相同, SubKey1和SubKey2互相equals
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i % 2 == 0 ? new SubKey1(i) : new SubKey2(i), i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assert.test(map.get(i % 2 == 0 ? new SubKey2(i) : new SubKey1(i)) == i);
+        }
+        Assert.test(map.put(new SubKey2(4), -4) == 4);
+        Assert.test(map.size() == 10_000);
+        // 删除每组中的前几个, 冲突链表中的节点接替红黑树节点
+        for (int i = 0; i < 10_000; i++) {
+            if (i % 10 < 7) Assert.test(map.remove(new SubKey1(i)) != null);
+        }
+        Assert.test(map.size() == 3_000);
+        Assert.test(map.get(new SubKey1(9_999)) == 9_999);
+        Assert.test(map.get(new SubKey1(9_996)) == null);
+        Assert.test(!map.containsKey(new Key(9_999)));
+    }
+
+    // SubKey1、SubKey2交替添加, 再用另一个类型的key查找: 平均每次put + get的耗时
+    @Test
+    public void testCollisionGroupsBenchmark() {
+        for (int n = 1 << 16; n <= 1 << 20; n <<= 2) {
+            for (int round = 0; round < 2; round++) {
+                HashMap<Object, Integer> map = new HashMap<>();
+                long begin = System.nanoTime();
+                for (int i = 0; i < n; i++) {
+                    map.put(i % 2 == 0 ? new SubKey1(i) : new SubKey2(i), i);
+                }
+                for (int i = 0; i < n; i++) {
+                    map.get(i % 2 == 0 ? new SubKey2(i) : new SubKey1(i));
+                }
+                long ns = (System.nanoTime() - begin) / n;
+                if (round == 1) System.out.println("n = " + n + ", " + ns + " ns/op");
+            }
+        }
+    }
+
+    // 哈希值相同的字符串、Integer和不可比较的key混在一个桶中: 实现了Comparable的key按类名、compareTo排序
+    @Test
+    public void testComparableCollisionGroups() {
+        String[] strings = collidingStrings(10);
+        HashMap<Object, Integer> map = new HashMap<>();
+        map.setTreeifyThreshold(2);
+        int hash = strings[0].hashCode();
+        for (int i = 0; i < strings.length; i++) {
+            map.put(strings[i], i);
+        }
+        // 和字符串哈希值相同的Integer, 以及哈希值相同、互相equals的SubKey1和SubKey2
+        map.put(hash, -1);
+        map.put(new SubKey1(hash * 10), -2);
+        Assert.test(map.put(new SubKey2(hash * 10), -3) == -2);
+        Assert.test(map.size() == strings.length + 2);
+        for (int i = 0; i < strings.length; i++) {
+            Assert.test(map.get(strings[i]) == i);
+        }
+        Assert.test(map.get(hash) == -1 && map.get(new SubKey1(hash * 10)) == -3);
+        Assert.test(map.get("AaAa") == null && !map.containsKey(hash + 1));
+        // 最长的查找路径是对数级别的, 不是一条冲突链表
+        Assert.test(map.stats().getMaxBucketHeight() < 30);
+        for (int i = 0; i < strings.length; i += 2) {
+            Assert.test(map.remove(strings[i]) == i);
+        }
+        Assert.test(map.remove(new SubKey2(hash * 10)) == -3 && map.remove(hash) == -1);
+        Assert.test(map.size() == strings.length / 2);
+        int[] count = new int[1];
+        map.traversal(new Map.Visitor<Object, Integer>() {
+            @Override
+            public boolean visit(Object key, Integer value) {
+                Assert.test(value % 2 == 1 && key.equals(strings[value]));
+                count[0]++;
+                return false;
+            }
+        });
+        Assert.test(count[0] == strings.length / 2);
+    }
+
+    // 一个桶中全是哈希值相同的字符串: 每次put + get的耗时和最长查找路径随数量对数增长
+    @Test
+    public void testComparableCollisionBenchmark() {
+        for (int blocks = 10; blocks <= 18; blocks += 2) {
+            String[] strings = collidingStrings(blocks);
+            for (int round = 0; round < 2; round++) {
+                HashMap<String, Integer> map = new HashMap<>();
+                long begin = System.nanoTime();
+                for (int i = 0; i < strings.length; i++) {
+                    map.put(strings[i], i);
+                }
+                for (int i = 0; i < strings.length; i++) {
+                    map.get(strings[i]);
+                }
+                long ns = (System.nanoTime() - begin) / strings.length;
+                if (round == 1) {
+                    System.out.println("n = " + strings.length + ", " + ns + " ns/op, max height = "
+                            + map.stats().getMaxBucketHeight());
+                }
+            }
+        }
+    }
+
+    // ------------------------------------测试统计信息-------------------------------------------
+
+    @Test
+    public void testStats() throws Exception {
+        HashMap<Object, Integer> map = new HashMap<>();
+        Assert.test(map.stats().getOperations() == 0);
+        map.setStatsEnabled(true);
+        for (int i = 0; i < 1000; i++) {
+            map.put(new Key(i), i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            map.get(new Key(i));
+        }
+        HashMapStats stats = map.stats();
+        System.out.println(stats);
+        Assert.test(stats.getSize() == 1000);
+        Assert.test(stats.getOperations() == 2000);
+        // Key的哈希值为value / 10, 100个不同的哈希值, 每个桶中至少10个节点
+        Assert.test(stats.getOccupiedBuckets() <= 100);
+        Assert.test(stats.getMaxBucketHeight() >= 10);
+        Assert.test(stats.getResizeCount() == 7);
+        // 比较0次的只有每个桶的第一次put
+        Assert.test(stats.getComparisonHistogram()[0] == stats.getOccupiedBuckets());
+
+        ObjectName name = map.registerStatsMBean("testStats");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assert.test((Integer) server.getAttribute(name, "Size") == 1000);
+        Assert.test((Long) server.getAttribute(name, "ResizeCount") == 7);
+        Assert.test((Long) server.getAttribute(name, "Operations") == 2000);
+        Assert.test((Integer) server.getAttribute(name, "MaxBucketHeight") == stats.getMaxBucketHeight());
+        Assert.test((Double) server.getAttribute(name, "OccupiedBucketRatio") == stats.getOccupiedBucketRatio());
+        server.invoke(name, "resetStats", null, null);
+        Assert.test(map.stats().getOperations() == 0);
+        server.unregisterMBean(name);
+
+        map.setStatsEnabled(false);
+        map.get(new Key(1));
+        Assert.test(map.stats().getOperations() == 0);
+    }
+
+    // 开启统计 vs 关闭统计: 100万次put + get的耗时
+    @Test
+    public void testStatsBenchmark() {
+        for (int round = 0; round < 3; round++) {
+            for (boolean enabled : new boolean[]{false, true}) {
+                Times.test("stats " + (enabled ? "enabled" : "disabled"), new Times.Task() {
+                    @Override
+                    public void execute() {
+                        HashMap<Integer, Integer> map = new HashMap<>();
+                        map.setStatsEnabled(enabled);
+                        for (int i = 0; i < 1_000_000; i++) {
+                            map.put(i, i);
+                        }
+                        for (int i = 0; i < 1_000_000; i++) {
+                            map.get(i);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    // ------------------------------------测试CompactHashMap-------------------------------------------
+
+    @Test
+    public void testCompactHashMap() {
+        testCollisions(new CompactHashMap<>());
+
+        CompactHashMap<Integer, Integer> map = new CompactHashMap<>();
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < 10_000; i += 2) {
+            map.remove(i);
+        }
+        // 删除的编号被复用, 不会扩容
+        long bytes = ObjectSizes.deepSize(map);
+        for (int i = 0; i < 10_000; i += 2) {
+            map.put(-i, i);
+        }
+        Assert.test(ObjectSizes.deepSize(map) == bytes);
+        Assert.test(map.size() == 10_000);
+        Assert.test(map.get(-9_998) == 9_998 && map.get(9_999) == 9_999 && map.get(9_998) == null);
+    }
+
+    // 100万个键值对时, 每个键值对的额外开销(不包括key、value对象本身)
+    @Test
+    public void testCompactHashMapMemory() throws ClassNotFoundException {
+        Map[] maps = {new HashMap<>(), new LinkedHashMap<>(), new CompactHashMap<>(),
+                new RobinHoodHashMap<>(), new SwissHashMap<>()};
+        Integer[] keys = new Integer[1_000_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        System.out.println("HashMap.Node = " + ObjectSizes.shallowSize(Class.forName("com.hashtable.map.HashMap$Node")) + " bytes");
+        for (Map<Integer, Integer> map : maps) {
+            for (Integer key : keys) {
+                map.put(key, key);
+            }
+            long bytes = ObjectSizes.deepSize(map);
+            System.out.println(map.getClass().getSimpleName() + ": " + bytes / keys.length + " bytes/entry");
+        }
+    }
+
+    // ------------------------------------测试HashBiMap-------------------------------------------
+
+    @Test
+    public void testBiMap() {
+        HashBiMap<String, Integer> map = new HashBiMap<>();
+        map.put("a", 1);
+        map.put("b", 2);
+        Assert.test(map.getKey(1).equals("a") && map.containsValue(2) && !map.containsValue(3));
+        // 覆盖value, 旧value的反向索引也要删除
+        Assert.test(map.put("a", 3) == 1);
+        Assert.test(!map.containsValue(1) && map.getKey(3).equals("a"));
+        // value必须唯一
+        boolean thrown = false;
+        try {
+            map.put("c", 2);
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        Assert.test(thrown && map.size() == 2);
+        Assert.test(map.forcePut("c", 2) == null && !map.containsKey("b") && map.getKey(2).equals("c"));
+
+        // 反向视图和原来的BiMap共用数据
+        HashBiMap<Integer, String> inverse = map.inverse();
+        Assert.test(inverse.get(3).equals("a") && inverse.inverse() == map);
+        inverse.put(4, "d");
+        Assert.test(map.get("d") == 4 && map.size() == 3);
+        Assert.test(inverse.remove(3).equals("a") && !map.containsKey("a"));
+
+        Map.Cursor<String, Integer> cursor = map.cursor();
+        while (cursor.next()) {
+            if (cursor.value() == 4) cursor.remove();
+        }
+        Assert.test(map.size() == 1 && !map.containsValue(4) && !inverse.containsKey(4));
+
+        // 修复: LinkedHashMap.containsValue之前总是返回false
+        LinkedHashMap<String, Integer> linked = new LinkedHashMap<>();
+        linked.put("a", 1);
+        Assert.test(linked.containsValue(1) && !linked.containsValue(2));
+    }
+
+    // 1万个键值对, 反向查找1万次: 遍历查找 vs 反向索引
+    @Test
+    public void testBiMapBenchmark() {
+        Map<Integer, Integer>[] maps = new Map[]{new HashMap<>(), new LinkedHashMap<>(),
+                new com.hashtable.map.TreeMap<>(), new HashBiMap<>()};
+        for (Map<Integer, Integer> map : maps) {
+            for (int i = 0; i < 10_000; i++) {
+                map.put(i, i * 10);
+            }
+            Times.test(map.getClass().getSimpleName() + " containsValue", new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < 10_000; i++) {
+                        Assert.test(map.containsValue(i * 10));
+                    }
+                }
+            });
+        }
+    }
+
+    // ------------------------------------测试PersistentHashMap-------------------------------------------
+
+    @Test
+    public void testPersistentHashMap() {
+        PersistentHashMap<Object, Integer> v1 = PersistentHashMap.empty();
+        for (int i = 0; i < 100; i++) {
+            v1 = v1.with(i, i);
+        }
+        // 新版本不影响旧版本
+        PersistentHashMap<Object, Integer> v2 = v1.with(0, 100).without(1).with("jack", 1);
+        Assert.test(v1.size() == 100 && v1.get(0) == 0 && v1.containsKey(1) && !v1.containsKey("jack"));
+        Assert.test(v2.size() == 100 && v2.get(0) == 100 && !v2.containsKey(1) && v2.get("jack") == 1);
+        Assert.test(v1.without("rose") == v1 && v1.with(2, 2) == v1);
+
+        // 哈希值相同的key(Key的哈希值为value / 10)、null
+        PersistentHashMap<Object, Integer> collisions = PersistentHashMap.empty();
+        for (int i = 1; i <= 100; i++) {
+            collisions = collisions.with(new Key(i), i);
+        }
+        collisions = collisions.with(null, 0).with(new SubKey1(1), 1).with(new SubKey2(1), 2);
+        Assert.test(collisions.size() == 102 && collisions.get(new Key(55)) == 55 && collisions.get(null) == 0);
+        Assert.test(collisions.get(new SubKey1(1)) == 2 && collisions.containsValue(99));
+        for (int i = 1; i <= 100; i += 2) {
+            collisions = collisions.without(new Key(i));
+        }
+        Assert.test(collisions.size() == 52 && collisions.get(new Key(55)) == null && collisions.get(new Key(56)) == 56);
+
+        // 不可变
+        boolean thrown = false;
+        try {
+            v1.put(1, 1);
+        } catch (UnsupportedOperationException e) {
+            thrown = true;
+        }
+        Assert.test(thrown);
+
+        // Transient批量修改
+        PersistentHashMap.Transient<Object, Integer> builder = v1.asTransient();
+        for (int i = 0; i < 1000; i++) {
+            builder.put(i, -i);
+        }
+        Assert.test(builder.remove(999) == -999 && builder.size() == 999);
+        Map.Cursor<Object, Integer> cursor = builder.cursor();
+        while (cursor.next()) {
+            if ((Integer) cursor.key() % 2 == 1) cursor.remove();
+        }
+        PersistentHashMap<Object, Integer> v3 = builder.persistent();
+        Assert.test(v3.size() == 500 && v3.get(998) == -998 && !v3.containsKey(997) && v1.get(10) == 10);
+        thrown = false;
+        try {
+            builder.put(1, 1);
+        } catch (IllegalStateException e) {
+            thrown = true;
+        }
+        Assert.test(thrown);
+
+        int[] count = {0};
+        v3.traversal(new Map.Visitor<Object, Integer>() {
+            public boolean visit(Object key, Integer value) {
+                count[0]++;
+                return false;
+            }
+        });
+        Assert.test(count[0] == 500);
+    }
+
+    // 100万个键值对: 快照的开销、写入时的并发读、版本之间共享的内存
+    @Test
+    public void testPersistentHashMapBenchmark() throws InterruptedException {
+        int n = 1_000_000;
+        HashMap<Integer, Integer> hashMap = new HashMap<>(n);
+        PersistentHashMap.Transient<Integer, Integer> builder = PersistentHashMap.<Integer, Integer>empty().asTransient();
+        for (int i = 0; i < n; i++) {
+            hashMap.put(i, i);
+            builder.put(i, i);
+        }
+        PersistentHashMap<Integer, Integer> base = builder.persistent();
+
+        // 快照: HashMap只能复制一份, PersistentHashMap的每个版本本身就是快照
+        Times.test("HashMap copy x 10", new Times.Task() {
+            @Override
+            public void execute() {
+                for (int i = 0; i < 10; i++) {
+                    HashMap<Integer, Integer> copy = new HashMap<>(n);
+                    copy.putAll(hashMap);
+                    copy.put(i, -i);
+                }
+            }
+        });
+        Times.test("PersistentHashMap with x 10", new Times.Task() {
+            @Override
+            public void execute() {
+                PersistentHashMap<Integer, Integer> version = base;
+                for (int i = 0; i < 10; i++) {
+                    version = version.with(i, -i);
+                }
+            }
+        });
+
+        // 新旧版本共享的内存
+        PersistentHashMap<Integer, Integer> next = base.with(0, -1);
+        long baseBytes = ObjectSizes.deepSize(base);
+        long bothBytes = ObjectSizes.deepSize(new Object[]{base, next});
+        System.out.println("base = " + baseBytes / n + " bytes/entry, new version adds " + (bothBytes - baseBytes) + " bytes");
+
+        // 一个线程不断写入并发布新版本, 读线程无锁读取当前版本
+        AtomicReference<PersistentHashMap<Integer, Integer>> current = new AtomicReference<>(base);
+        AtomicBoolean stop = new AtomicBoolean();
+        long[] reads = new long[2];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Random random = new Random(1);
+                for (int i = 0; i < 200_000; i++) {
+                    current.set(current.get().with(random.nextInt(n), i));
+                }
+                stop.set(true);
+            }
+        });
+        Thread[] readers = new Thread[reads.length];
+        for (int t = 0; t < readers.length; t++) {
+            int index = t;
+            readers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(index);
+                    while (!stop.get()) {
+                        PersistentHashMap<Integer, Integer> snapshot = current.get();
+                        for (int i = 0; i < 1000; i++) {
+                            Assert.test(snapshot.get(random.nextInt(n)) != null);
+                        }
+                        reads[index] += 1000;
+                    }
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        long ms = Math.max((System.nanoTime() - begin) / 1000_000, 1);
+        System.out.println("200000 writes in " + ms + "ms, " + (reads[0] + reads[1]) / ms + " reads/ms");
+    }
+
+    // ------------------------------------测试快照-------------------------------------------
+
+    @Test
+    public void testMapSnapshot() throws IOException {
+        File file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+
+        HashMap<Integer, String> hashMap = new HashMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            hashMap.put(i, "v" + i);
+        }
+        hashMap.put(-1, "中文");
+        MapSnapshot.save(hashMap, file, Codec.INT, Codec.STRING);
+        HashMap<Integer, String> loaded = MapSnapshot.loadHashMap(file, Codec.INT, Codec.STRING);
+        Assert.test(loaded.size() == hashMap.size() && loaded.get(99_999).equals("v99999") && loaded.get(-1).equals("中文"));
+
+        // 跨越多个数据块的大value
+        HashMap<Integer, String> big = new HashMap<>();
+        char[] chars = new char[3 << 20];
+        Arrays.fill(chars, 'x');
+        big.put(1, new String(chars));
+        big.put(2, "small");
+        MapSnapshot.save(big, file, Codec.INT, Codec.STRING);
+        loaded = MapSnapshot.loadHashMap(file, Codec.INT, Codec.STRING);
+        Assert.test(loaded.get(1).length() == chars.length && loaded.get(2).equals("small"));
+
+        com.map.map.TreeMap<String, Long> treeMap = new com.map.map.TreeMap<>();
+        for (long i = 0; i < 10_000; i++) {
+            treeMap.put("k" + i, i);
+        }
+        MapSnapshot.save(treeMap, file, Codec.STRING, Codec.LONG);
+        com.map.map.TreeMap<String, Long> loadedTree = MapSnapshot.loadTreeMap(file, Codec.STRING, Codec.LONG, null);
+        Assert.test(loadedTree.size() == 10_000 && loadedTree.get("k42") == 42 && !loadedTree.containsKey("k10000"));
+        // 加载出来的TreeMap可以继续修改
+        loadedTree.put("k10000", 10_000L);
+        loadedTree.remove("k0");
+        StringBuilder first = new StringBuilder();
+        loadedTree.traversal(new com.map.map.Map.Visitor<String, Long>() {
+            public boolean visit(String key, Long value) {
+                if (first.length() == 0) first.append(key);
+                return false;
+            }
+        });
+        Assert.test(first.toString().equals("k1") && loadedTree.size() == 10_000);
+
+        // 损坏的文件
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(100);
+            raf.write(raf.read() ^ 0xFF);
+        }
+        boolean thrown = false;
+        try {
+            MapSnapshot.loadTreeMap(file, Codec.STRING, Codec.LONG, null);
+        } catch (IOException e) {
+            thrown = true;
+        }
+        Assert.test(thrown);
+    }
+
+    // 100万个键值对: 从文本数据源逐个添加 vs 从快照加载
+    @Test
+    public void testMapSnapshotBenchmark() throws IOException {
+        int n = 1_000_000;
+        File source = File.createTempFile("source", ".txt");
+        File hashFile = File.createTempFile("hash", ".bin");
+        File treeFile = File.createTempFile("tree", ".bin");
+        source.deleteOnExit();
+        hashFile.deleteOnExit();
+        treeFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(source)) {
+            for (int i = 0; i < n; i++) {
+                writer.println(i + "=value" + i);
+            }
+        }
+
+        HashMap<Integer, String> hashMap = new HashMap<>();
+        com.map.map.TreeMap<Integer, String> treeMap = new com.map.map.TreeMap<>();
+        // 每一项的耗时(纳秒): 重建HashMap, 重建TreeMap, 加载HashMap, 加载TreeMap
+        // 每一项开始之前先GC, 不让上一项留下的垃圾算到这一项的耗时中
+        long[] nanos = new long[4];
+        System.gc();
+        long begin = System.nanoTime();
+        Times.test("rebuild HashMap from source", new Times.Task() {
+            @Override
+            public void execute() {
+                try (BufferedReader reader = new BufferedReader(new FileReader(source))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int i = line.indexOf('=');
+                        hashMap.put(Integer.parseInt(line.substring(0, i)), line.substring(i + 1));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        nanos[0] = System.nanoTime() - begin;
+        System.gc();
+        begin = System.nanoTime();
+        Times.test("rebuild TreeMap from source", new Times.Task() {
+            @Override
+            public void execute() {
+                try (BufferedReader reader = new BufferedReader(new FileReader(source))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        int i = line.indexOf('=');
+                        treeMap.put(Integer.parseInt(line.substring(0, i)), line.substring(i + 1));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        nanos[1] = System.nanoTime() - begin;
+        Times.test("save snapshots", new Times.Task() {
+            @Override
+            public void execute() {
+                try {
+                    MapSnapshot.save(hashMap, hashFile, Codec.INT, Codec.STRING);
+                    MapSnapshot.save(treeMap, treeFile, Codec.INT, Codec.STRING);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        System.gc();
+        begin = System.nanoTime();
+        Times.test("load HashMap snapshot", new Times.Task() {
+            @Override
+            public void execute() {
+                try {
+                    HashMap<Integer, String> loaded = MapSnapshot.loadHashMap(hashFile, Codec.INT, Codec.STRING);
+                    Assert.test(loaded.size() == n && loaded.get(n - 1).equals("value" + (n - 1)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        nanos[2] = System.nanoTime() - begin;
+        System.gc();
+        begin = System.nanoTime();
+        Times.test("load TreeMap snapshot", new Times.Task() {
+            @Override
+            public void execute() {
+                try {
+                    Assert.test(MapSnapshot.loadTreeMap(treeFile, Codec.INT, Codec.STRING, null).size() == n);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        nanos[3] = System.nanoTime() - begin;
+        System.out.printf("HashMap: rebuild / load = %.1fx%n", (double) nanos[0] / nanos[2]);
+        System.out.printf("TreeMap: rebuild / load = %.1fx%n", (double) nanos[1] / nanos[3]);
+    }
+
+    @Test
+    public void testDurableMap() throws IOException {
+        File dir = java.nio.file.Files.createTempDirectory("durable").toFile();
+        try {
+            DurableMap<Integer, String> map = new DurableMap<>(dir, new HashMap<>(), Codec.INT, Codec.STRING,
+                    DurableMap.SyncMode.PER_OPERATION);
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, "v" + i);
+            }
+            map.put(1, "one");
+            map.remove(2);
+            Assert.test(map.remove(2) == null);
+            map.close();
+
+            // 重启之后重放日志
+            map = new DurableMap<>(dir, new HashMap<>(), Codec.INT, Codec.STRING, DurableMap.SyncMode.GROUP_COMMIT);
+            Assert.test(map.size() == 999 && map.get(1).equals("one") && !map.containsKey(2) && map.get(999).equals("v999"));
+            long logSize = map.logSize();
+            map.close();
+
+            // 最后一条记录只写了一半(模拟崩溃), 恢复时丢弃
+            try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "wal.log"), "rw")) {
+                raf.seek(raf.length());
+                raf.writeInt(100);
+                raf.writeInt(12345);
+                raf.write(new byte[]{1, 0, 0});
+            }
+            map = new DurableMap<>(dir, new HashMap<>(), Codec.INT, Codec.STRING, DurableMap.SyncMode.GROUP_COMMIT);
+            Assert.test(map.size() == 999 && map.logSize() == logSize);
+            map.put(2, "two");
+
+            // 检查点之后日志清空, 再写入的操作记录在新的日志中
+            map.checkpoint();
+            Assert.test(map.logSize() == 0);
+            map.put(3, "three");
+            map.remove(4);
+            map.close();
+            map = new DurableMap<>(dir, new HashMap<>(), Codec.INT, Codec.STRING, DurableMap.SyncMode.PER_OPERATION);
+            Assert.test(map.size() == 999 && map.get(2).equals("two") && map.get(3).equals("three") && !map.containsKey(4));
+
+            // 日志超过阈值自动做检查点
+            map.setCheckpointBytes(4096);
+            for (int i = 0; i < 1000; i++) {
+                map.put(i, "w" + i);
+            }
+            Assert.test(map.logSize() < 4096);
+            map.clear();
+            map.put(7, "seven");
+            map.close();
+            map = new DurableMap<>(dir, new HashMap<>(), Codec.INT, Codec.STRING, DurableMap.SyncMode.PER_OPERATION);
+            Assert.test(map.size() == 1 && map.get(7).equals("seven"));
+            map.close();
+
+            boolean thrown = false;
+            try {
+                map.put(8, "eight");
+            } catch (IllegalStateException e) {
+                thrown = true;
+            }
+            Assert.test(thrown);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // 多个线程同时写入: 每个操作单独fsync vs 组提交
+    @Test
+    public void testDurableMapBenchmark() throws IOException, InterruptedException {
+        for (int threads : new int[]{1, 4, 16}) {
+            testDurableThroughput(DurableMap.SyncMode.PER_OPERATION, threads);
+            testDurableThroughput(DurableMap.SyncMode.GROUP_COMMIT, threads);
+        }
+    }
+
+    public void testDurableThroughput(DurableMap.SyncMode syncMode, int threadCount) throws IOException, InterruptedException {
+        File dir = java.nio.file.Files.createTempDirectory("durable").toFile();
+        try {
+            DurableMap<Integer, String> map = new DurableMap<>(dir, new HashMap<>(), Codec.INT, Codec.STRING, syncMode);
+            int ops = 4000 / threadCount;
+            Thread[] threads = new Thread[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                int base = t * ops;
+                threads[t] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < ops; i++) {
+                            map.put(base + i, "value" + i);
+                        }
+                    }
+                });
+            }
+            long begin = System.nanoTime();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long ms = Math.max((System.nanoTime() - begin) / 1000_000, 1);
+            map.close();
+            System.out.println(syncMode + " threads = " + threadCount + ", " + (long) ops * threadCount * 1000 / ms
+                    + " ops/s, wal = " + new File(dir, "wal.log").length() + " bytes");
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /**
+     * 递归删除测试用的临时目录
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void testMappedHashMap() throws IOException {
+        File dir = java.nio.file.Files.createTempDirectory("mapped").toFile();
+        try {
+            MappedHashMap<Long, String> map = new MappedHashMap<>(dir, 8, Codec.LONG, Codec.STRING);
+            long capacity = map.capacity();
+            for (long i = 0; i < 100_000; i++) {
+                Assert.test(map.put(i, "v" + i) == null);
+            }
+            // 逐段扩容, 容量翻倍
+            Assert.test(map.size() == 100_000 && map.capacity() > capacity && Long.bitCount(map.capacity()) == 1);
+            Assert.test(map.put(7L, "seven").equals("v7") && map.get(7L).equals("seven"));
+            Assert.test(map.remove(8L).equals("v8") && map.remove(8L) == null && !map.containsKey(8L));
+            Assert.test(map.containsValue("v99999") && !map.containsValue("v8"));
+
+            // 游标删除所有的奇数key
+            Map.Cursor<Long, String> cursor = map.cursor();
+            int count = 0;
+            while (cursor.next()) {
+                count++;
+                if (cursor.key() % 2 == 1) cursor.remove();
+            }
+            Assert.test(count == 99_999 && map.size() == 49_999 && map.get(9L) == null && map.get(10L).equals("v10"));
+            map.close();
+
+            // 正常关闭之后直接使用原来的索引
+            map = new MappedHashMap<>(dir, 8, Codec.LONG, Codec.STRING);
+            Assert.test(map.size() == 49_999 && map.get(99_998L).equals("v99998") && map.get(99_999L) == null);
+            map.put(1L, "one");
+            map.close();
+
+            // 模拟没有flush就"崩溃"了: 关闭之后把index.meta最后的clean标记改回0,
+            // 重新打开时扫描数据文件重建索引. 先关闭是因为重建会删除原来的实例还映射着的index.*文件
+            try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "index.meta"), "rw")) {
+                raf.seek(raf.length() - 1);
+                raf.write(0);
+            }
+            MappedHashMap<Long, String> recovered = new MappedHashMap<>(dir, 8, Codec.LONG, Codec.STRING);
+            Assert.test(recovered.size() == 50_000 && recovered.get(1L).equals("one") && recovered.get(10L).equals("v10"));
+            recovered.close();
+
+            boolean thrown = false;
+            try {
+                new MappedHashMap<>(dir, 4, Codec.INT, Codec.STRING);
+            } catch (IllegalArgumentException e) {
+                thrown = true;
+            }
+            Assert.test(thrown);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // 键值对放在内存映射文件中: 页缓存中的热点key(warm) vs 刚打开时随机访问所有key(cold)
+    @Test
+    public void testMappedHashMapBenchmark() throws IOException {
+        int n = 2_000_000;
+        int lookups = 1_000_000;
+        File dir = java.nio.file.Files.createTempDirectory("mapped").toFile();
+        try {
+            MappedHashMap<Long, String>[] maps = new MappedHashMap[]{
+                    new MappedHashMap<>(dir, 8, Codec.LONG, Codec.STRING)
+            };
+            Times.test("MappedHashMap put " + n, new Times.Task() {
+                @Override
+                public void execute() {
+                    for (long i = 0; i < n; i++) {
+                        maps[0].put(i, "value" + i);
+                    }
+                }
+            });
+            Times.test("MappedHashMap close(flush)", new Times.Task() {
+                @Override
+                public void execute() {
+                    try {
+                        maps[0].close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+
+            // 丢弃操作系统的页缓存会影响整台机器, 只有-Dmapped.dropCaches=true时才做(需要root权限);
+            // 默认保留页缓存, cold只是重新映射之后的缺页
+            boolean dropped = false;
+            if (Boolean.getBoolean("mapped.dropCaches")) {
+                try (PrintWriter writer = new PrintWriter("/proc/sys/vm/drop_caches")) {
+                    writer.print(3);
+                    writer.flush();
+                    dropped = !writer.checkError();
+                } catch (IOException e) {
+                    dropped = false;
+                }
+            }
+            maps[0] = new MappedHashMap<>(dir, 8, Codec.LONG, Codec.STRING);
+            Random random = new Random(1);
+            Times.test("cold lookups " + lookups + (dropped ? " (page cache dropped)" : " (page cache kept)"), new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < lookups; i++) {
+                        Assert.test(maps[0].get((long) random.nextInt(n)) != null);
+                    }
+                }
+            });
+            Times.test("warm lookups " + lookups + " (10000 hot keys)", new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < lookups; i++) {
+                        Assert.test(maps[0].get((long) random.nextInt(10_000)) != null);
+                    }
+                }
+            });
+            Times.test("warm lookups " + lookups + " (all keys)", new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < lookups; i++) {
+                        Assert.test(maps[0].get((long) random.nextInt(n)) != null);
+                    }
+                }
+            });
+            maps[0].close();
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    @Test
+    public void testBitcaskMap() throws IOException {
+        File dir = java.nio.file.Files.createTempDirectory("bitcask").toFile();
+        try {
+            BitcaskMap<String, Long> map = new BitcaskMap<>(dir, Codec.STRING, Codec.LONG);
+            map.setMaxFileSize(64 << 10);
+            map.setMergeRatio(0);
+            // 计数器: 1000个key, 每个加100次
+            for (int round = 0; round < 100; round++) {
+                for (int i = 0; i < 1000; i++) {
+                    String key = "counter" + i;
+                    Long count = map.get(key);
+                    map.put(key, count == null ? 1 : count + 1);
+                }
+            }
+            map.remove("counter0");
+            Assert.test(map.size() == 999 && map.get("counter1") == 100 && map.get("counter0") == null);
+            Assert.test(map.fileCount() > 1);
+
+            // 合并之后只剩下有效的记录
+            long diskSize = map.diskSize();
+            Assert.test(map.merge());
+            Assert.test(map.diskSize() < diskSize / 50 && map.size() == 999 && map.get("counter999") == 100);
+            map.put("counter0", 7L);
+            map.close();
+
+            // 重启: 合并生成的文件通过提示文件重建keydir, 活动文件需要扫描
+            boolean hasHint = false;
+            for (String name : dir.list()) {
+                hasHint |= name.endsWith(".hint");
+            }
+            Assert.test(hasHint);
+            map = new BitcaskMap<>(dir, Codec.STRING, Codec.LONG);
+            Assert.test(map.size() == 1000 && map.get("counter0") == 7 && map.get("counter500") == 100);
+            map.close();
+
+            // 删除提示文件, 扫描数据文件得到相同的结果
+            for (File file : dir.listFiles()) {
+                if (file.getName().endsWith(".hint")) file.delete();
+            }
+            map = new BitcaskMap<>(dir, Codec.STRING, Codec.LONG);
+            Assert.test(map.size() == 1000 && map.get("counter0") == 7 && map.get("counter500") == 100);
+            map.clear();
+            Assert.test(map.isEmpty());
+            map.close();
+            map = new BitcaskMap<>(dir, Codec.STRING, Codec.LONG);
+            Assert.test(map.isEmpty());
+            map.put("k", 1L);
+            map.close();
+
+            // 损坏的记录读取时校验不通过
+            for (File file : dir.listFiles()) {
+                if (file.length() == 0 || !file.getName().endsWith(".data")) continue;
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.seek(file.length() - 1);
+                    int last = raf.read();
+                    raf.seek(file.length() - 1);
+                    raf.write(last ^ 0xFF);
+                }
+            }
+            map = new BitcaskMap<>(dir, Codec.STRING, Codec.LONG);
+            // 扫描时遇到校验不通过的记录就停止, 最后一条put("k")丢失
+            Assert.test(map.get("k") == null);
+            map.close();
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // 计数器: 写多读少, 每次递增都是一次读 + 一次顺序追加
+    @Test
+    public void testBitcaskMapBenchmark() throws IOException {
+        int keys = 100_000;
+        int increments = 2_000_000;
+        File dir = java.nio.file.Files.createTempDirectory("bitcask").toFile();
+        try {
+            BitcaskMap<Long, Long>[] maps = new BitcaskMap[]{new BitcaskMap<>(dir, Codec.LONG, Codec.LONG)};
+            maps[0].setMaxFileSize(8 << 20);
+            Random random = new Random(1);
+            Times.test("BitcaskMap " + increments + " increments", new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < increments; i++) {
+                        Long key = (long) random.nextInt(keys);
+                        Long count = maps[0].get(key);
+                        maps[0].put(key, count == null ? 1 : count + 1);
+                    }
+                }
+            });
+            System.out.println("disk = " + maps[0].diskSize() + " bytes, files = " + maps[0].fileCount());
+            Times.test("BitcaskMap merge", new Times.Task() {
+                @Override
+                public void execute() {
+                    try {
+                        maps[0].merge();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            System.out.println("disk = " + maps[0].diskSize() + " bytes, files = " + maps[0].fileCount());
+            maps[0].close();
+
+            Times.test("open with hint files", new Times.Task() {
+                @Override
+                public void execute() {
+                    try {
+                        maps[0] = new BitcaskMap<>(dir, Codec.LONG, Codec.LONG);
+                        Assert.test(maps[0].size() == keys);
+                        maps[0].close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+            for (File file : dir.listFiles()) {
+                if (file.getName().endsWith(".hint")) file.delete();
+            }
+            Times.test("open by scanning data files", new Times.Task() {
+                @Override
+                public void execute() {
+                    try {
+                        maps[0] = new BitcaskMap<>(dir, Codec.LONG, Codec.LONG);
+                        Assert.test(maps[0].size() == keys);
+                        maps[0].close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // ------------------------------------测试Stream-------------------------------------------
+
+    @Test
+    public void testStream() {
+        HashMap<Integer, Integer> map = new HashMap<>();
+        map.setTreeifyThreshold(2);
+        for (int i = 0; i < 100_000; i++) {
+            // 哈希值相同的key放在同一个桶中, 部分桶会转换为红黑树
+            map.put(i % 50_000 + (i / 50_000) * (1 << 20), i % 10);
+        }
+        Assert.test(map.spliterator().estimateSize() == 100_000);
+        Assert.test(map.stream().count() == 100_000);
+        Assert.test(map.parallelStream().count() == 100_000);
+        Assert.test(map.parallelStream().mapToLong(e -> e.getKey()).distinct().count() == 100_000);
+        Assert.test(map.parallelStream().mapToLong(e -> e.getValue()).sum() == 450_000);
+        // 值的分布
+        java.util.Map<Integer, Long> histogram = map.parallelStream().collect(
+                Collectors.groupingBy(e -> e.getValue(), Collectors.counting()));
+        Assert.test(histogram.size() == 10 && histogram.get(7) == 10_000);
+        Assert.test(map.parallelStream().anyMatch(e -> e.getKey() == (1 << 20) + 49_999));
+    }
+
+    // 在400万个键值对中统计值的分布: 串行 vs 并行(ForkJoinPool.commonPool)
+    @Test
+    public void testStreamBenchmark() {
+        HashMap<Integer, Integer> map = new HashMap<>(4_000_000);
+        Random random = new Random(1);
+        for (int i = 0; i < 4_000_000; i++) {
+            map.put(i, random.nextInt(100));
+        }
+        System.out.println("parallelism = " + ForkJoinPool.commonPool().getParallelism());
+        for (int round = 0; round < 3; round++) {
+            Times.test("stream", new Times.Task() {
+                @Override
+                public void execute() {
+                    map.stream().collect(Collectors.groupingBy(e -> e.getValue(), Collectors.counting()));
+                }
+            });
+            Times.test("parallelStream", new Times.Task() {
+                @Override
+                public void execute() {
+                    map.parallelStream().collect(Collectors.groupingByConcurrent(e -> e.getValue(), Collectors.counting()));
+                }
+            });
+        }
+    }
+
     // ------------------------------------测试LinkedHashMap-------------------------------------------
 
     public void testMap(Map<String, Integer> map, String[] words) {
@@ -95,6 +1849,99 @@ public class Main {
         testMap(new HashMap<>(), words);
     }
 
+    // 基准测试读取的源码目录; 目录不存在时, 随机生成单词代替
+    private static final String WORDS_PATH = "C:\\Users\\guizy1\\Desktop\\src";
+
+    private String[] words() {
+        FileInfo fileInfo = Files.read(WORDS_PATH, null);
+        if (fileInfo != null) return fileInfo.words();
+        Random random = new Random(1);
+        String[] words = new String[1_000_000];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "word" + random.nextInt(20000);
+        }
+        return words;
+    }
+
+    // ------------------------------------测试RobinHoodHashMap-------------------------------------------
+
+    @Test
+    public void testRobinHoodHashMap() {
+        testCollisions(new RobinHoodHashMap<>());
+    }
+
+    // 大量Key(value / 10)哈希冲突时的增删改查
+    public void testCollisions(Map<Object, Integer> map) {
+        map.put(null, 0);
+        for (int i = 1; i <= 100; i++) {
+            map.put("test" + i, i);
+            map.put(new Key(i), i);
+        }
+        for (int i = 5; i <= 70; i++) {
+            Assert.test(map.remove(new Key(i)) == i);
+        }
+        for (int i = 1; i <= 3; i++) {
+            map.put(new Key(i), i + 5);
+        }
+        Assert.test(map.size() == 135);
+        Assert.test(map.get(null) == 0);
+        Assert.test(map.get(new Key(1)) == 6);
+        Assert.test(map.get(new Key(3)) == 8);
+        Assert.test(map.get(new Key(4)) == 4);
+        Assert.test(map.get(new Key(5)) == null);
+        Assert.test(map.get(new Key(70)) == null);
+        Assert.test(map.get(new Key(71)) == 71);
+        Assert.test(map.get("test100") == 100);
+        Assert.test(map.containsValue(100));
+        Assert.test(!map.containsKey(new Key(6)));
+    }
+
+    // 单词计数: 红黑树桶的HashMap vs 开放定址的RobinHoodHashMap
+    @Test
+    public void testRobinHoodHashMapBenchmark() {
+        String[] words = words();
+        testMap(new HashMap<>(), words);
+        testMap(new RobinHoodHashMap<>(), words);
+    }
+
+    // ------------------------------------测试SwissHashMap-------------------------------------------
+
+    @Test
+    public void testSwissHashMap() {
+        testCollisions(new SwissHashMap<>());
+    }
+
+    // 查找大量不存在的key(类似去重时HashSet.contains): HashMap vs SwissHashMap
+    @Test
+    public void testSwissHashMapBenchmark() {
+        testContains(new HashMap<>(), 1_000_000);
+        testContains(new SwissHashMap<>(), 1_000_000);
+    }
+
+    public void testContains(Map<String, Integer> map, int n) {
+        Random random = new Random(1);
+        String[] present = new String[n];
+        String[] absent = new String[n];
+        for (int i = 0; i < n; i++) {
+            present[i] = "key" + random.nextLong();
+            absent[i] = "miss" + random.nextLong();
+            map.put(present[i], i);
+        }
+        Times.test(map.getClass().getName(), new Times.Task() {
+            @Override
+            public void execute() {
+                int hits = 0;
+                for (int round = 0; round < 10; round++) {
+                    for (int i = 0; i < n; i++) {
+                        // 只有1/10的key存在
+                        if (map.containsKey(i % 10 == 0 ? present[i] : absent[i])) hits++;
+                    }
+                }
+                Assert.test(hits == n);
+            }
+        });
+    }
+
     @Test
     public void test10() {
         HashMap<Object, Integer> map = new HashMap<>();
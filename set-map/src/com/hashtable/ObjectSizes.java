@@ -0,0 +1,97 @@
+package com.hashtable;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+
+/**
+ * Description: 估算对象占用内存的小工具, 模仿JOL的估算方式
+ * <p>
+ * 按64位JVM、开启压缩指针计算: 对象头12字节, 数组头16字节, 引用4字节, 对象大小按8字节对齐.
+ * 只会深入统计com.hashtable.map包中的对象(以及它们引用的数组), key、value等其他对象只算一个引用,
+ * 这样统计出来的就是数据结构本身的开销.
+ *
+ * @author guizy
+ * @date 2026/10/18 16:30
+ */
+public class ObjectSizes {
+    private static final int OBJECT_HEADER = 12;
+    private static final int ARRAY_HEADER = 16;
+    private static final int REFERENCE = 4;
+    private static final String PACKAGE = "com.hashtable.map";
+
+    /**
+     * 从root出发能访问到的数据结构对象的总大小
+     */
+    public static long deepSize(Object root) {
+        IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<>();
+        Deque<Object> stack = new ArrayDeque<>();
+        stack.push(root);
+        visited.put(root, true);
+        long size = 0;
+        while (!stack.isEmpty()) {
+            Object object = stack.pop();
+            Class<?> cls = object.getClass();
+            if (cls.isArray()) {
+                int length = Array.getLength(object);
+                Class<?> component = cls.getComponentType();
+                size += align(ARRAY_HEADER + (long) length * sizeOf(component));
+                if (component.isPrimitive()) continue;
+                for (int i = 0; i < length; i++) {
+                    push(Array.get(object, i), stack, visited);
+                }
+                continue;
+            }
+            size += shallowSize(cls);
+            for (; cls != null; cls = cls.getSuperclass()) {
+                for (Field field : cls.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) continue;
+                    try {
+                        field.setAccessible(true);
+                        push(field.get(object), stack, visited);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 一个对象(不包括它引用的对象)的大小
+     */
+    public static long shallowSize(Class<?> cls) {
+        long size = OBJECT_HEADER;
+        for (; cls != null; cls = cls.getSuperclass()) {
+            for (Field field : cls.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) size += sizeOf(field.getType());
+            }
+        }
+        return align(size);
+    }
+
+    private static void push(Object object, Deque<Object> stack, IdentityHashMap<Object, Boolean> visited) {
+        if (object == null || visited.containsKey(object)) return;
+        Class<?> cls = object.getClass();
+        // 只深入数据结构自己的对象和数组, 数组中的key、value不会被深入(它们不在com.hashtable.map包中)
+        if (!cls.isArray() && !cls.getName().startsWith(PACKAGE)) return;
+        visited.put(object, true);
+        stack.push(object);
+    }
+
+    private static int sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        if (type == byte.class || type == boolean.class) return 1;
+        return REFERENCE;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
@@ -0,0 +1,84 @@
+package com.hashtable.cache;
+
+import com.hashtable.map.LinkedHashMap;
+import com.hashtable.map.Map;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Description: 缓存命中率模拟器, 用记录下来的访问序列(trace)回放, 比较LRU和W-TinyLFU的命中率
+ * <p>
+ * trace文件每行一个key(long), 空行和#开头的行会被忽略.
+ * 每次访问先get, 没有命中就put, 和应用中"查缓存, 查不到再加载"的用法一致.
+ * 用法: java com.hashtable.cache.CacheSimulator trace文件 缓存容量...
+ *
+ * @author guizy
+ * @date 2026/10/18 18:30
+ */
+public class CacheSimulator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("usage: CacheSimulator <trace file> <maximum size>...");
+            return;
+        }
+        long[] trace = readTrace(args[0]);
+        System.out.println("trace: " + args[0] + ", " + trace.length + " accesses");
+        for (int i = 1; i < args.length; i++) {
+            int maximumSize = Integer.parseInt(args[i]);
+            System.out.println("maximumSize = " + maximumSize
+                    + ", LRU = " + percent(hitRate(lru(maximumSize), trace))
+                    + ", W-TinyLFU = " + percent(hitRate(new TinyLfuCache<Long, Long>(maximumSize), trace)));
+        }
+    }
+
+    /**
+     * 读取trace文件
+     */
+    public static long[] readTrace(String file) throws IOException {
+        long[] trace = new long[1024];
+        int size = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                if (size == trace.length) trace = Arrays.copyOf(trace, size << 1);
+                trace[size++] = Long.parseLong(line);
+            }
+        }
+        return Arrays.copyOf(trace, size);
+    }
+
+    /**
+     * 容量为maximumSize的LRU缓存
+     */
+    public static Map<Long, Long> lru(int maximumSize) {
+        LinkedHashMap<Long, Long> cache = new LinkedHashMap<>(maximumSize, 0.75f, true);
+        cache.setMaxEntries(maximumSize);
+        return cache;
+    }
+
+    /**
+     * 回放trace, 返回命中率
+     */
+    public static double hitRate(Map<Long, Long> cache, long[] trace) {
+        if (trace.length == 0) return 0;
+        long hits = 0;
+        for (long key : trace) {
+            if (cache.get(key) != null) {
+                hits++;
+            } else {
+                cache.put(key, key);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+    private static String percent(double rate) {
+        return String.format("%.2f%%", rate * 100);
+    }
+}
@@ -0,0 +1,306 @@
+package com.hashtable.cache;
+
+import com.hashtable.map.LinkedHashMap;
+import com.hashtable.map.Map;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Description: 键值对会过期的Map, 基于LinkedHashMap和分层时间轮实现
+ * <p>
+ * 过期策略:
+ * AFTER_WRITE: 从添加(覆盖)开始计时, 到期就删除;
+ * AFTER_ACCESS: 每次get命中都重新计时, 一段时间没有访问就删除.
+ * 每个键值对可以单独指定存活时间, 不指定就使用默认的存活时间.
+ * <p>
+ * 没有后台线程, 每次操作之前先拨动时间轮, 清理走过的槽位中到期的键值对, 清理的工作量和到期的数量成正比, 和Map的大小无关.
+ * 时间轮的刻度大约是1毫秒, 还没有被清理的过期键值对在get、containsKey、遍历时也会被当作不存在;
+ * size()中可能包含最近1个刻度内过期、还没有被清理的键值对.
+ *
+ * @author guizy
+ * @date 2026/10/18 17:30
+ */
+@SuppressWarnings("all")
+public class ExpiringMap<K, V> implements Map<K, V> {
+
+    public enum Policy {
+        AFTER_WRITE, AFTER_ACCESS
+    }
+
+    private final Policy policy;
+    // 默认的存活时间(纳秒)
+    private final long ttl;
+    private final Ticker ticker;
+    // 按访问顺序排列, 超过maxEntries时淘汰最久没有访问的键值对
+    private final LinkedHashMap<K, Entry<K, V>> map;
+    private final TimerWheel<Entry<K, V>> wheel;
+    // 最多存放多少个键值对, 0表示不限制
+    private int maxEntries;
+
+    private final TimerWheel.Listener<Entry<K, V>> expirer = new TimerWheel.Listener<Entry<K, V>>() {
+        @Override
+        public void expire(Entry<K, V> entry) {
+            map.remove(entry.key);
+        }
+    };
+
+    public ExpiringMap(Policy policy, long duration, TimeUnit unit) {
+        this(policy, duration, unit, Ticker.SYSTEM);
+    }
+
+    /**
+     * @param policy   过期策略
+     * @param duration 默认的存活时间
+     * @param unit     存活时间的单位
+     * @param ticker   时钟
+     */
+    public ExpiringMap(Policy policy, long duration, TimeUnit unit, Ticker ticker) {
+        if (policy == null || unit == null || ticker == null) {
+            throw new IllegalArgumentException("policy, unit and ticker must not be null");
+        }
+        this.policy = policy;
+        this.ttl = toNanos(duration, unit);
+        this.ticker = ticker;
+        this.wheel = new TimerWheel<>(ticker.read());
+        this.map = new LinkedHashMap<K, Entry<K, V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(K key, Entry<K, V> entry) {
+                if (maxEntries == 0 || size() <= maxEntries) return false;
+                // 被淘汰的键值对不需要再定时了
+                wheel.cancel(entry);
+                return true;
+            }
+        };
+    }
+
+    /**
+     * 键值对, 同时也是时间轮中的定时器
+     */
+    private static class Entry<K, V> extends TimerWheel.Timer {
+        K key;
+        V value;
+        // 这个键值对的存活时间(纳秒)
+        long ttl;
+
+        Entry(K key, V value, long ttl) {
+            this.key = key;
+            this.value = value;
+            this.ttl = ttl;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt - now <= 0;
+        }
+    }
+
+    /**
+     * 最多存放maxEntries个键值对, 超过了就淘汰最久没有访问的键值对
+     *
+     * @param maxEntries 0表示不限制
+     */
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        while (maxEntries > 0 && map.size() > maxEntries) {
+            Cursor<K, Entry<K, V>> cursor = map.cursor();
+            cursor.next();
+            wheel.cancel(cursor.value());
+            cursor.remove();
+        }
+    }
+
+    public Policy policy() {
+        return policy;
+    }
+
+    /**
+     * 立即清理到期的键值对
+     *
+     * @return 清理的数量
+     */
+    public int cleanUp() {
+        return wheel.advance(ticker.read(), expirer);
+    }
+
+    @Override
+    public int size() {
+        cleanUp();
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+        wheel.clear();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, ttl, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 添加键值对, 并单独指定它的存活时间
+     *
+     * @return 之前没有过期的value
+     */
+    public V put(K key, V value, long duration, TimeUnit unit) {
+        long nanos = toNanos(duration, unit);
+        long now = ticker.read();
+        wheel.advance(now, expirer);
+
+        Entry<K, V> entry = map.get(key);
+        V oldValue = null;
+        if (entry == null) {
+            entry = new Entry<>(key, value, nanos);
+            entry.expireAt = now + nanos;
+            wheel.schedule(entry);
+            map.put(key, entry);
+        } else {
+            if (!entry.isExpired(now)) oldValue = entry.value;
+            // 覆盖: 不管哪种策略都重新计时
+            entry.value = value;
+            entry.ttl = nanos;
+            entry.expireAt = now + nanos;
+            wheel.reschedule(entry);
+        }
+        return oldValue;
+    }
+
+    @Override
+    public V get(K key) {
+        long now = ticker.read();
+        wheel.advance(now, expirer);
+        Entry<K, V> entry = map.get(key);
+        if (entry == null) return null;
+        if (entry.isExpired(now)) {
+            removeEntry(entry);
+            return null;
+        }
+        if (policy == Policy.AFTER_ACCESS) {
+            entry.expireAt = now + entry.ttl;
+            wheel.reschedule(entry);
+        }
+        return entry.value;
+    }
+
+    @Override
+    public V remove(K key) {
+        long now = ticker.read();
+        wheel.advance(now, expirer);
+        Entry<K, V> entry = map.remove(key);
+        if (entry == null) return null;
+        wheel.cancel(entry);
+        return entry.isExpired(now) ? null : entry.value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        long now = ticker.read();
+        wheel.advance(now, expirer);
+        Entry<K, V> entry = map.get(key);
+        return entry != null && !entry.isExpired(now);
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        long now = ticker.read();
+        wheel.advance(now, expirer);
+        Cursor<K, Entry<K, V>> cursor = map.cursor();
+        while (cursor.next()) {
+            Entry<K, V> entry = cursor.value();
+            if (!entry.isExpired(now) && Objects.equals(value, entry.value)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        long now = ticker.read();
+        wheel.advance(now, expirer);
+        Cursor<K, Entry<K, V>> cursor = map.cursor();
+        while (cursor.next()) {
+            Entry<K, V> entry = cursor.value();
+            if (entry.isExpired(now)) continue;
+            // 返回为true, 就停止遍历
+            if (visitor.visit(entry.key, entry.value)) return;
+        }
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        cleanUp();
+        return new ExpiringCursor();
+    }
+
+    /**
+     * 按照访问顺序遍历, 跳过已经过期的键值对
+     */
+    private class ExpiringCursor implements Cursor<K, V> {
+        private final Cursor<K, Entry<K, V>> cursor = map.cursor();
+        private Entry<K, V> current;
+
+        @Override
+        public boolean next() {
+            long now = ticker.read();
+            while (cursor.next()) {
+                Entry<K, V> entry = cursor.value();
+                if (!entry.isExpired(now)) {
+                    current = entry;
+                    return true;
+                }
+            }
+            current = null;
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return current().key;
+        }
+
+        @Override
+        public V value() {
+            return current().value;
+        }
+
+        @Override
+        public void remove() {
+            wheel.cancel(current());
+            cursor.remove();
+            current = null;
+        }
+
+        @Override
+        public void reset() {
+            cursor.reset();
+            current = null;
+        }
+
+        private Entry<K, V> current() {
+            if (current == null) throw new IllegalStateException("no current entry");
+            return current;
+        }
+    }
+
+    private void removeEntry(Entry<K, V> entry) {
+        map.remove(entry.key);
+        wheel.cancel(entry);
+    }
+
+    private static long toNanos(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        return unit.toNanos(duration);
+    }
+}
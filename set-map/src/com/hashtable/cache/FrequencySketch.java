@@ -0,0 +1,108 @@
+package com.hashtable.cache;
+
+/**
+ * Description: Count-Min Sketch, 估算key最近的访问频率
+ * <p>
+ * 每个计数器只有4位(最大15), 16个计数器打包在一个long中. 每个key通过4个不同的哈希函数各选中一个计数器,
+ * 访问时4个计数器都加1, 估算频率时取4个计数器中的最小值(哈希冲突只会让估算值偏大).
+ * 访问次数达到容量的10倍时, 所有计数器减半(aging), 让很久以前的热点数据逐渐"冷却".
+ *
+ * @author guizy
+ * @date 2026/10/18 18:30
+ */
+@SuppressWarnings("all")
+class FrequencySketch<K> {
+
+    // 4个哈希函数的种子
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    // 每个4位计数器的最高位清零, 右移一位时防止高位的计数器移到低位
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int sampleLimit;
+    private int sampleSize;
+
+    /**
+     * @param maximumSize 缓存的容量, 计数器的数量和容量同一个数量级
+     */
+    FrequencySketch(int maximumSize) {
+        int length = 1;
+        while (length < maximumSize && length < (1 << 30)) {
+            length <<= 1;
+        }
+        table = new long[length];
+        sampleLimit = maximumSize * 10 > 0 ? maximumSize * 10 : Integer.MAX_VALUE;
+    }
+
+    /**
+     * 估算key的访问频率
+     */
+    int frequency(K key) {
+        int hash = spread(key);
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = indexHash(hash, i);
+            long word = table[(int) h & (table.length - 1)];
+            frequency = Math.min(frequency, (int) ((word >>> offset(h)) & 0xF));
+        }
+        return frequency;
+    }
+
+    /**
+     * 访问一次key, 访问次数达到上限就全部减半
+     */
+    void increment(K key) {
+        int hash = spread(key);
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = indexHash(hash, i);
+            int index = (int) h & (table.length - 1);
+            int offset = offset(h);
+            // 已经是15了就不再增加
+            if (((table[index] >>> offset) & 0xF) != 0xF) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++sampleSize == sampleLimit) reset();
+    }
+
+    void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 0;
+        }
+        sampleSize = 0;
+    }
+
+    /**
+     * 所有计数器减半
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        sampleSize /= 2;
+    }
+
+    /**
+     * 第i个哈希函数
+     */
+    private static long indexHash(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h + (h >>> 32);
+    }
+
+    /**
+     * 计数器在long中的偏移量: 0, 4, 8, ..., 60
+     */
+    private static int offset(long h) {
+        return ((int) (h >>> 40) & 0xF) << 2;
+    }
+
+    private static int spread(Object key) {
+        int hash = key == null ? 0 : key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,19 @@
+package com.hashtable.cache;
+
+/**
+ * Description: 时钟, 返回以纳秒为单位的时间; 测试时可以传入手动拨动的时钟
+ *
+ * @author guizy
+ * @date 2026/10/18 17:30
+ */
+public interface Ticker {
+
+    long read();
+
+    Ticker SYSTEM = new Ticker() {
+        @Override
+        public long read() {
+            return System.nanoTime();
+        }
+    };
+}
@@ -0,0 +1,171 @@
+package com.hashtable.cache;
+
+/**
+ * Description: 分层时间轮(hierarchical timing wheel)
+ * <p>
+ * 时间按刻度(tick, 2^20纳秒, 大约1毫秒)划分, 一共5层, 每层64个槽位, 第L层的一个槽位代表64^L个刻度.
+ * 定时器根据距离到期还有多少个刻度放到对应层的槽位中(双向链表), 添加、取消都是O(1).
+ * 时间前进时, 只处理走过的槽位: 第0层槽位中的定时器到期, 高层槽位中的定时器降级到更低的层(cascade).
+ * 每一层最多处理64个槽位, 所以一次前进的工作量 = 常数 + 到期的定时器数量 + 降级的定时器数量,
+ * 一个定时器最多降级4次, 和定时器的总数无关.
+ *
+ * @author guizy
+ * @date 2026/10/18 17:30
+ */
+@SuppressWarnings("all")
+class TimerWheel<T extends TimerWheel.Timer> {
+
+    private static final int TICK_SHIFT = 20;
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 5;
+    // 最多能表示多少个刻度, 更远的定时器先放在最高层, 到时候再重新放置
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    // 每个槽位是一个带哨兵的双向循环链表
+    private final Timer[][] wheel;
+    // 已经处理到哪个刻度
+    private long currentTick;
+
+    TimerWheel(long now) {
+        wheel = new Timer[LEVELS][SLOTS];
+        for (int i = 0; i < LEVELS; i++) {
+            for (int j = 0; j < SLOTS; j++) {
+                wheel[i][j] = new Timer();
+                wheel[i][j].prev = wheel[i][j];
+                wheel[i][j].next = wheel[i][j];
+            }
+        }
+        currentTick = now >> TICK_SHIFT;
+    }
+
+    /**
+     * 定时器, 在expireAt(纳秒)到期
+     */
+    static class Timer {
+        long expireAt;
+        Timer prev;
+        Timer next;
+
+        boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    /**
+     * 定时器到期的回调
+     */
+    interface Listener<T> {
+        void expire(T timer);
+    }
+
+    /**
+     * 按照timer.expireAt放入时间轮
+     */
+    void schedule(T timer) {
+        long expireTick = timer.expireAt >> TICK_SHIFT;
+        // 当前刻度内到期的, 放到下一个刻度; 太远的先放在最高层
+        long delta = Math.min(Math.max(expireTick - currentTick, 1), MAX_DELTA);
+        expireTick = currentTick + delta;
+        int level = (63 - Long.numberOfLeadingZeros(delta)) / BITS;
+        Timer sentinel = wheel[level][(int) (expireTick >> (BITS * level)) & MASK];
+        // 挂到链表尾部
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    /**
+     * 从时间轮中取消, 没有放入过时间轮的话什么也不做
+     */
+    void cancel(T timer) {
+        if (!timer.isScheduled()) return;
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    /**
+     * expireAt变化之后重新放置
+     */
+    void reschedule(T timer) {
+        cancel(timer);
+        schedule(timer);
+    }
+
+    /**
+     * 时间前进到now, 把到期的定时器从时间轮中取出并交给listener
+     *
+     * @return 到期的定时器数量
+     */
+    int advance(long now, Listener<T> listener) {
+        long prevTick = currentTick;
+        long nowTick = now >> TICK_SHIFT;
+        if (nowTick <= prevTick) return 0;
+        currentTick = nowTick;
+
+        int expired = 0;
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            long prev = prevTick >> shift;
+            long cur = nowTick >> shift;
+            // 这一层没有走动, 更高的层也不会走动
+            if (prev == cur) break;
+            // 走过了一整圈的话, 所有槽位都处理一遍即可
+            long end = prev + Math.min(cur - prev, SLOTS);
+            for (long tick = prev + 1; tick <= end; tick++) {
+                expired += expireSlot(wheel[level][(int) tick & MASK], now, listener);
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 处理一个槽位: 到期的交给listener, 没有到期的按照当前刻度重新放置(降级)
+     */
+    private int expireSlot(Timer sentinel, long now, Listener<T> listener) {
+        if (sentinel.next == sentinel) return 0;
+        // 先把整个链表摘下来, 重新放置的定时器可能又回到这个槽位
+        Timer timer = sentinel.next;
+        sentinel.prev.next = null;
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+
+        int expired = 0;
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            if (timer.expireAt - now <= 0) {
+                listener.expire((T) timer);
+                expired++;
+            } else {
+                schedule((T) timer);
+            }
+            timer = next;
+        }
+        return expired;
+    }
+
+    /**
+     * 清空所有的定时器
+     */
+    void clear() {
+        for (Timer[] slots : wheel) {
+            for (Timer sentinel : slots) {
+                Timer timer = sentinel.next;
+                while (timer != sentinel) {
+                    Timer next = timer.next;
+                    timer.prev = null;
+                    timer.next = null;
+                    timer = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+    }
+}
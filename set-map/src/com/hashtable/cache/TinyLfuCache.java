@@ -0,0 +1,252 @@
+package com.hashtable.cache;
+
+import com.hashtable.map.HashMap;
+import com.hashtable.map.LinkedHashMap;
+import com.hashtable.map.Map;
+
+import java.util.Objects;
+
+/**
+ * Description: W-TinyLFU缓存
+ * <p>
+ * 缓存分为3段, 都是按访问顺序排列的LinkedHashMap:
+ * window(窗口, 1%): 新数据先进入窗口, 让突发的新热点有机会积累访问频率;
+ * probation(试用区): 从窗口淘汰下来、通过准入的数据;
+ * protected(保护区, 主区的80%): 在试用区中再次被访问的数据, 保护区满了就把最久没有访问的降级回试用区.
+ * <p>
+ * 窗口满了之后, 窗口中最老的数据(候选者)要和试用区中最老的数据(受害者)比较访问频率(FrequencySketch),
+ * 频率更高的留在主区, 另一个被淘汰. 扫描产生的大量只访问一次的数据频率很低, 进不了主区, 不会冲掉热点数据.
+ * HashMap index记录每个key在哪一段中.
+ *
+ * @author guizy
+ * @date 2026/10/18 18:30
+ */
+@SuppressWarnings("all")
+public class TinyLfuCache<K, V> implements Map<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final int maximumSize;
+    private final int windowMax;
+    private final int mainMax;
+    private final int protectedMax;
+
+    // key在哪一段中
+    private final HashMap<K, Integer> index;
+    private final LinkedHashMap<K, V>[] segments;
+    private final FrequencySketch<K> sketch;
+
+    /**
+     * @param maximumSize 最多缓存多少个键值对
+     */
+    public TinyLfuCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.windowMax = Math.max(1, maximumSize / 100);
+        this.mainMax = maximumSize - windowMax;
+        this.protectedMax = mainMax * 4 / 5;
+        this.index = new HashMap<>(maximumSize);
+        this.segments = new LinkedHashMap[3];
+        segments[WINDOW] = new LinkedHashMap<>(windowMax, 0.75f, true);
+        segments[PROBATION] = new LinkedHashMap<>(mainMax - protectedMax, 0.75f, true);
+        segments[PROTECTED] = new LinkedHashMap<>(protectedMax, 0.75f, true);
+        this.sketch = new FrequencySketch<>(maximumSize);
+    }
+
+    public int maximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 估算key最近的访问频率(0 ~ 15)
+     */
+    public int frequency(K key) {
+        return sketch.frequency(key);
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return index.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        index.clear();
+        for (LinkedHashMap<K, V> segment : segments) {
+            segment.clear();
+        }
+        sketch.clear();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        sketch.increment(key);
+        Integer segment = index.get(key);
+        if (segment != null) {
+            // 覆盖也算一次访问
+            return segments[onAccess(key, segment)].put(key, value);
+        }
+        segments[WINDOW].put(key, value);
+        index.put(key, WINDOW);
+        if (segments[WINDOW].size() > windowMax) evictFromWindow();
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        Integer segment = index.get(key);
+        // 没有命中时不记录, 调用者接着put时会记录一次
+        if (segment == null) return null;
+        sketch.increment(key);
+        return segments[onAccess(key, segment)].get(key);
+    }
+
+    @Override
+    public V remove(K key) {
+        Integer segment = index.remove(key);
+        return segment == null ? null : segments[segment].remove(key);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return index.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        Cursor<K, V> cursor = cursor();
+        while (cursor.next()) {
+            if (Objects.equals(value, cursor.value())) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        Cursor<K, V> cursor = cursor();
+        while (cursor.next()) {
+            // 返回为true, 就停止遍历
+            if (visitor.visit(cursor.key(), cursor.value())) return;
+        }
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        return new TinyLfuCursor();
+    }
+
+    /**
+     * 依次遍历window、probation、protected
+     */
+    private class TinyLfuCursor implements Cursor<K, V> {
+        private int segment;
+        private Cursor<K, V> cursor = segments[0].cursor();
+        private boolean hasCurrent;
+
+        @Override
+        public boolean next() {
+            while (!cursor.next()) {
+                if (segment == segments.length - 1) {
+                    hasCurrent = false;
+                    return false;
+                }
+                cursor = segments[++segment].cursor();
+            }
+            hasCurrent = true;
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return current().key();
+        }
+
+        @Override
+        public V value() {
+            return current().value();
+        }
+
+        @Override
+        public void remove() {
+            index.remove(current().key());
+            cursor.remove();
+            hasCurrent = false;
+        }
+
+        @Override
+        public void reset() {
+            segment = 0;
+            cursor = segments[0].cursor();
+            hasCurrent = false;
+        }
+
+        private Cursor<K, V> current() {
+            if (!hasCurrent) throw new IllegalStateException("no current entry");
+            return cursor;
+        }
+    }
+
+    /**
+     * 访问了segment段中的key, probation中的key晋升到protected
+     * 容量很小时protectedMax为0, 没有保护区, 不晋升
+     *
+     * @return 访问之后key所在的段
+     */
+    private int onAccess(K key, int segment) {
+        if (segment != PROBATION || protectedMax == 0) return segment;
+        move(key, PROBATION, PROTECTED);
+        // protected满了, 最久没有访问的降级回probation
+        if (segments[PROTECTED].size() > protectedMax) {
+            move(segments[PROTECTED].eldestKey(), PROTECTED, PROBATION);
+        }
+        return index.get(key);
+    }
+
+    /**
+     * 窗口中最老的候选者和主区中最老的受害者比较访问频率, 淘汰频率低的
+     */
+    private void evictFromWindow() {
+        K candidate = segments[WINDOW].eldestKey();
+        if (segments[PROBATION].size() + segments[PROTECTED].size() < mainMax) {
+            move(candidate, WINDOW, PROBATION);
+            return;
+        }
+        if (mainMax == 0) {
+            evict(candidate, WINDOW);
+            return;
+        }
+        int victimSegment = segments[PROBATION].isEmpty() ? PROTECTED : PROBATION;
+        K victim = segments[victimSegment].eldestKey();
+        // 频率相同时保留主区中的数据, 防止扫描数据挤掉已有的数据
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            evict(victim, victimSegment);
+            move(candidate, WINDOW, PROBATION);
+        } else {
+            evict(candidate, WINDOW);
+        }
+    }
+
+    /**
+     * 把key挪到to段的尾部(最近访问)
+     */
+    private void move(K key, int from, int to) {
+        V value = segments[from].remove(key);
+        segments[to].put(key, value);
+        index.put(key, to);
+    }
+
+    private void evict(K key, int segment) {
+        segments[segment].remove(key);
+        index.remove(key);
+    }
+}
@@ -0,0 +1,279 @@
+package com.hashtable.map;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Description: 节省内存的HashMap, 没有Node节点对象
+ * <p>
+ * 键值对存放在平行数组(struct of arrays)中, 下标就是键值对的编号: hashes[i]、keys[i]、values[i]、next[i].
+ * 桶数组buckets中存放链表头的编号, 链表通过int类型的next串起来, 不需要对象头和引用.
+ * 删除的编号放入空闲链表(free list), 下次添加时优先复用, 数组中不会留下空洞.
+ * 每个键值对的额外开销大约是4个int/引用加上桶数组的一个int, 而HashMap.Node是一个48字节的对象.
+ * <p>
+ * 桶中只有单向链表, 不会转换为红黑树, 依赖哈希值分布均匀.
+ *
+ * @author guizy
+ * @date 2026/10/18 16:30
+ */
+@SuppressWarnings("all")
+public class CompactHashMap<K, V> implements Map<K, V> {
+
+    private static final int DEFAULT_CAPACITY = 1 << 4;
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private int size;
+    // 桶数组, 存放链表头节点的编号 + 1, 0表示空桶
+    private int[] buckets;
+    // 平行数组, 长度为桶数组的loadFactor倍, 存满了就扩容
+    private int[] hashes;
+    // 链表中下一个节点的编号 + 1, 0表示链表结束; 空闲的编号存放的是负数(见free)
+    private int[] next;
+    private Object[] keys;
+    private Object[] values;
+    // 使用过的最大编号 + 1, [0, used)之外的编号都没有用过
+    private int used;
+    // 空闲链表头的编号 + 1, 0表示空闲链表为空; 空闲编号i的next[i] = -1 - (下一个空闲编号 + 1)
+    private int free;
+
+    public CompactHashMap() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize 预计存放的键值对数量, 放入这么多键值对之前不会扩容
+     */
+    public CompactHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAXIMUM_CAPACITY && entryCapacity(capacity) < expectedSize) {
+            capacity <<= 1;
+        }
+        init(capacity);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        if (used == 0) return;
+        size = 0;
+        used = 0;
+        free = 0;
+        Arrays.fill(buckets, 0);
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int h = hash(key);
+        int i = index(key, h);
+        if (i >= 0) {
+            V oldValue = (V) values[i];
+            keys[i] = key;
+            values[i] = value;
+            return oldValue;
+        }
+        if (free == 0 && used == keys.length) resize();
+        // 优先复用删除的编号
+        if (free != 0) {
+            i = free - 1;
+            free = -1 - next[i];
+        } else {
+            i = used++;
+        }
+        int bucket = h & (buckets.length - 1);
+        hashes[i] = h;
+        keys[i] = key;
+        values[i] = value;
+        // 挂到链表头部
+        next[i] = buckets[bucket];
+        buckets[bucket] = i + 1;
+        size++;
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        int i = index(key, hash(key));
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @Override
+    public V remove(K key) {
+        int h = hash(key);
+        int bucket = h & (buckets.length - 1);
+        int prev = -1;
+        for (int i = buckets[bucket] - 1; i >= 0; prev = i, i = next[i] - 1) {
+            if (hashes[i] == h && Objects.equals(key, keys[i])) {
+                if (prev < 0) {
+                    buckets[bucket] = next[i];
+                } else {
+                    next[prev] = next[i];
+                }
+                return release(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return index(key, hash(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        for (int i = 0; i < used; i++) {
+            if (next[i] >= 0 && Objects.equals(value, values[i])) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        for (int i = 0; i < used; i++) {
+            if (next[i] < 0) continue;
+            // 返回为true, 就停止遍历
+            if (visitor.visit((K) keys[i], (V) values[i])) return;
+        }
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        return new CompactCursor();
+    }
+
+    /**
+     * 按编号顺序遍历; 删除只会把编号放入空闲链表, 不会挪动其他键值对
+     */
+    private class CompactCursor implements Cursor<K, V> {
+        private int index;
+        private int current = -1;
+
+        @Override
+        public boolean next() {
+            while (index < used) {
+                if (next[index] >= 0) {
+                    current = index++;
+                    return true;
+                }
+                index++;
+            }
+            current = -1;
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return (K) keys[current()];
+        }
+
+        @Override
+        public V value() {
+            return (V) values[current()];
+        }
+
+        @Override
+        public void remove() {
+            CompactHashMap.this.remove((K) keys[current()]);
+            current = -1;
+        }
+
+        @Override
+        public void reset() {
+            index = 0;
+            current = -1;
+        }
+
+        private int current() {
+            if (current < 0) throw new IllegalStateException("no current entry");
+            return current;
+        }
+    }
+
+    /**
+     * 查找key的编号
+     *
+     * @return 不存在返回-1
+     */
+    private int index(K key, int h) {
+        for (int i = buckets[h & (buckets.length - 1)] - 1; i >= 0; i = next[i] - 1) {
+            if (hashes[i] == h && Objects.equals(key, keys[i])) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 释放编号i(已经从链表中摘除), 放入空闲链表
+     *
+     * @return 被删除的value
+     */
+    private V release(int i) {
+        V oldValue = (V) values[i];
+        keys[i] = null;
+        values[i] = null;
+        next[i] = -1 - free;
+        free = i + 1;
+        size--;
+        return oldValue;
+    }
+
+    /**
+     * 扩容: 平行数组直接复制(编号不变), 桶数组用保存的哈希值重新挂链表, 不需要再调用hashCode
+     */
+    private void resize() {
+        if (buckets.length == MAXIMUM_CAPACITY) {
+            throw new IllegalStateException("CompactHashMap is full");
+        }
+        int capacity = buckets.length << 1;
+        int entries = entryCapacity(capacity);
+        buckets = new int[capacity];
+        hashes = Arrays.copyOf(hashes, entries);
+        next = Arrays.copyOf(next, entries);
+        keys = Arrays.copyOf(keys, entries);
+        values = Arrays.copyOf(values, entries);
+        int mask = capacity - 1;
+        // 扩容时没有空闲编号, [0, used)全部都是有效的键值对
+        for (int i = 0; i < used; i++) {
+            int bucket = hashes[i] & mask;
+            next[i] = buckets[bucket];
+            buckets[bucket] = i + 1;
+        }
+    }
+
+    private void init(int capacity) {
+        int entries = entryCapacity(capacity);
+        buckets = new int[capacity];
+        hashes = new int[entries];
+        next = new int[entries];
+        keys = new Object[entries];
+        values = new Object[entries];
+    }
+
+    private static int entryCapacity(int capacity) {
+        return (int) (capacity * DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 扰动计算哈希值
+     */
+    private int hash(K key) {
+        if (key == null) return 0;
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,517 @@
+package com.hashtable.map;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Description: 线程安全的HashMap
+ * <p>
+ * 和HashMap一样是桶数组 + 单向链表, 不同的是:
+ * 1. 锁的粒度是一个桶(对桶的头节点加锁), 不同桶的添加、删除可以同时进行; 空桶直接CAS放入头节点, 不需要加锁
+ * 2. 读取不加锁: 桶数组通过AtomicReferenceArray进行volatile读, 节点的value、next都是volatile的
+ * 3. size用LongAdder统计, 多个线程同时添加时不会在同一个计数器上竞争
+ * 4. 扩容时把旧桶数组按区间分给多个线程一起迁移, 迁移完的桶放一个ForwardingNode, 指向新桶数组
+ * 桶中始终是单向链表, 不会转换为红黑树.
+ *
+ * @author guizy
+ * @date 2026/10/18 14:00
+ */
+@SuppressWarnings("all")
+public class ConcurrentHashMap<K, V> implements Map<K, V> {
+
+    private static final int DEFAULT_CAPACITY = 1 << 4;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final float LOAD_FACTOR = 0.75f;
+    // 每个线程一次至少领取多少个桶去迁移
+    private static final int MIN_TRANSFER_STRIDE = 16;
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    // ForwardingNode的哈希值, 普通节点的哈希值都是非负数
+    private static final int MOVED = -1;
+    // null key用这个对象代替存储
+    private static final Object NULL_KEY = new Object();
+
+    private volatile AtomicReferenceArray<Node<K, V>> table;
+    // 扩容时的新桶数组, 没有扩容时为null
+    private volatile AtomicReferenceArray<Node<K, V>> nextTable;
+    /*
+     * 大于0: 扩容阈值
+     * -1: 正在准备扩容(创建新桶数组), 或者扩容刚刚结束正在切换到新桶数组
+     * 小于-1: 正在扩容, -(1 + sizeCtl)就是正在迁移的线程数量, 此时nextTable肯定已经创建好了
+     */
+    private final AtomicInteger sizeCtl = new AtomicInteger();
+    // 旧桶数组中[0, transferIndex)的桶还没有线程领取
+    private final AtomicInteger transferIndex = new AtomicInteger();
+    private final LongAdder counter = new LongAdder();
+
+    public ConcurrentHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize 预计存放的键值对数量, 放入这么多键值对之前不会扩容
+     */
+    public ConcurrentHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < MAXIMUM_CAPACITY && capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        table = new AtomicReferenceArray<>(capacity);
+        sizeCtl.set(threshold(capacity));
+    }
+
+    @Override
+    public int size() {
+        long n = counter.sum();
+        return n < 0 ? 0 : (n > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) n);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return counter.sum() <= 0;
+    }
+
+    @Override
+    public void clear() {
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        int i = 0;
+        while (i < tab.length()) {
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                i++;
+            } else if (f.hash == MOVED) {
+                // 正在扩容, 帮忙迁移完再从头清空新桶数组
+                tab = helpTransfer((ForwardingNode<K, V>) f);
+                i = 0;
+            } else {
+                synchronized (f) {
+                    if (tab.get(i) == f) {
+                        int count = 0;
+                        for (Node<K, V> e = f; e != null; e = e.next) {
+                            count++;
+                        }
+                        tab.set(i, null);
+                        counter.add(-count);
+                        i++;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Object k = maskNull(key);
+        int h = spread(k.hashCode());
+        int binCount = 0;
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            int i = h & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) {
+                // 空桶, 直接CAS放入, 不需要加锁
+                if (tab.compareAndSet(i, null, new Node<>(h, k, value, null))) break;
+            } else if (f.hash == MOVED) {
+                tab = helpTransfer((ForwardingNode<K, V>) f);
+            } else {
+                V oldValue = null;
+                boolean replaced = false;
+                synchronized (f) {
+                    // 加锁之后头节点可能已经变了(被删除、被迁移), 需要重新来过
+                    if (tab.get(i) == f) {
+                        binCount = 1;
+                        for (Node<K, V> e = f; ; binCount++) {
+                            if (e.hash == h && Objects.equals(k, e.key)) {
+                                oldValue = e.value;
+                                e.value = value;
+                                replaced = true;
+                                break;
+                            }
+                            if (e.next == null) {
+                                e.next = new Node<>(h, k, value, null);
+                                break;
+                            }
+                            e = e.next;
+                        }
+                    }
+                }
+                if (binCount != 0) {
+                    if (replaced) return oldValue;
+                    break;
+                }
+            }
+        }
+        addCount(1);
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        Node<K, V> node = node(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public V remove(K key) {
+        Object k = maskNull(key);
+        int h = spread(k.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            int i = h & (tab.length() - 1);
+            Node<K, V> f = tab.get(i);
+            if (f == null) return null;
+            if (f.hash == MOVED) {
+                tab = helpTransfer((ForwardingNode<K, V>) f);
+                continue;
+            }
+            boolean validated = false;
+            Node<K, V> removed = null;
+            synchronized (f) {
+                if (tab.get(i) == f) {
+                    validated = true;
+                    for (Node<K, V> e = f, prev = null; e != null; prev = e, e = e.next) {
+                        if (e.hash == h && Objects.equals(k, e.key)) {
+                            removed = e;
+                            if (prev == null) {
+                                tab.set(i, e.next);
+                            } else {
+                                prev.next = e.next;
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            if (!validated) continue;
+            if (removed == null) return null;
+            counter.decrement();
+            return removed.value;
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return node(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        Cursor<K, V> cursor = cursor();
+        while (cursor.next()) {
+            if (Objects.equals(value, cursor.value())) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 遍历时不加锁, 能看到遍历开始之后的部分修改(弱一致性)
+     */
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            if (traversal(tab, i, visitor)) return;
+        }
+    }
+
+    /**
+     * 遍历tab中i位置的桶; 如果这个桶已经迁移, 它的节点在新桶数组的i和i + tab.length()位置
+     *
+     * @return 是否停止遍历
+     */
+    private boolean traversal(AtomicReferenceArray<Node<K, V>> tab, int i, Visitor<K, V> visitor) {
+        Node<K, V> f = tab.get(i);
+        if (f != null && f.hash == MOVED) {
+            AtomicReferenceArray<Node<K, V>> nextTab = ((ForwardingNode<K, V>) f).nextTable;
+            return traversal(nextTab, i, visitor) || traversal(nextTab, i + tab.length(), visitor);
+        }
+        for (Node<K, V> e = f; e != null; e = e.next) {
+            if (visitor.visit((K) unmaskNull(e.key), e.value)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 和traversal一样不加锁, 是弱一致性的; remove()按key删除当前节点
+     */
+    @Override
+    public Cursor<K, V> cursor() {
+        return new ConcurrentCursor();
+    }
+
+    /**
+     * 用一个栈记录正在遍历的桶数组: 每一层从index开始, 每次跳过step个桶;
+     * 遇到ForwardingNode时压入新桶数组, 旧桶数组i位置的节点在新桶数组的i, i + n, i + 2n...位置(n为旧桶数组长度)
+     * 连续多次扩容时才会压入多层, 数组长度一般不会超过初始的4
+     */
+    private class ConcurrentCursor implements Cursor<K, V> {
+        private AtomicReferenceArray<Node<K, V>>[] tabs = new AtomicReferenceArray[4];
+        private int[] indexes = new int[4];
+        private int[] steps = new int[4];
+        private int depth;
+        // 遍历到的位置
+        private Node<K, V> node;
+        // 可以访问、删除的节点, 删除之后为null
+        private Node<K, V> current;
+
+        ConcurrentCursor() {
+            reset();
+        }
+
+        @Override
+        public boolean next() {
+            // 被删除的节点next不会改变, 仍然可以沿着它继续往后遍历
+            Node<K, V> e = node == null ? null : node.next;
+            while (e == null) {
+                if (depth < 0) {
+                    node = current = null;
+                    return false;
+                }
+                AtomicReferenceArray<Node<K, V>> tab = tabs[depth];
+                int i = indexes[depth];
+                if (i >= tab.length()) {
+                    tabs[depth--] = null;
+                    continue;
+                }
+                indexes[depth] = i + steps[depth];
+                Node<K, V> f = tab.get(i);
+                if (f != null && f.hash == MOVED) {
+                    push(((ForwardingNode<K, V>) f).nextTable, i, tab.length());
+                } else {
+                    e = f;
+                }
+            }
+            node = current = e;
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return (K) unmaskNull(current().key);
+        }
+
+        @Override
+        public V value() {
+            return current().value;
+        }
+
+        @Override
+        public void remove() {
+            ConcurrentHashMap.this.remove((K) unmaskNull(current().key));
+            current = null;
+        }
+
+        @Override
+        public void reset() {
+            Arrays.fill(tabs, null);
+            depth = -1;
+            push(table, 0, 1);
+            node = current = null;
+        }
+
+        private void push(AtomicReferenceArray<Node<K, V>> tab, int index, int step) {
+            if (++depth == tabs.length) {
+                tabs = Arrays.copyOf(tabs, depth << 1);
+                indexes = Arrays.copyOf(indexes, depth << 1);
+                steps = Arrays.copyOf(steps, depth << 1);
+            }
+            tabs[depth] = tab;
+            indexes[depth] = index;
+            steps[depth] = step;
+        }
+
+        private Node<K, V> current() {
+            if (current == null) throw new IllegalStateException("no current entry");
+            return current;
+        }
+    }
+
+    private Node<K, V> node(K key) {
+        Object k = maskNull(key);
+        int h = spread(k.hashCode());
+        AtomicReferenceArray<Node<K, V>> tab = table;
+        for (; ; ) {
+            Node<K, V> e = tab.get(h & (tab.length() - 1));
+            // 桶已经迁移, 去新桶数组中找
+            if (e != null && e.hash == MOVED) {
+                tab = ((ForwardingNode<K, V>) e).nextTable;
+                continue;
+            }
+            for (; e != null; e = e.next) {
+                if (e.hash == h && Objects.equals(k, e.key)) return e;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * size加1, 超过阈值就扩容(或者帮忙扩容)
+     */
+    private void addCount(long x) {
+        counter.add(x);
+        long s = counter.sum();
+        int sc;
+        while (s >= (long) (sc = sizeCtl.get()) && sc > 0) {
+            if (table.length() >= MAXIMUM_CAPACITY) return;
+            // 抢到扩容的线程把sizeCtl置为-1, 创建好新桶数组后再置为-2(1个线程正在迁移)
+            if (sizeCtl.compareAndSet(sc, -1)) {
+                AtomicReferenceArray<Node<K, V>> tab = table;
+                AtomicReferenceArray<Node<K, V>> nextTab = new AtomicReferenceArray<>(tab.length() << 1);
+                transferIndex.set(tab.length());
+                nextTable = nextTab;
+                sizeCtl.set(-2);
+                transfer(tab, nextTab);
+            }
+            s = counter.sum();
+        }
+        if (sc < -1) helpTransfer();
+    }
+
+    /**
+     * 遇到ForwardingNode, 说明正在扩容, 帮忙迁移
+     *
+     * @return 迁移完成后应该使用的桶数组
+     */
+    private AtomicReferenceArray<Node<K, V>> helpTransfer(ForwardingNode<K, V> f) {
+        helpTransfer();
+        return f.nextTable;
+    }
+
+    private void helpTransfer() {
+        int sc;
+        while ((sc = sizeCtl.get()) < -1 && transferIndex.get() > 0) {
+            // 加入之后, 这次扩容在当前线程退出之前不会结束, table、nextTable都不会变
+            if (sizeCtl.compareAndSet(sc, sc - 1)) {
+                transfer(table, nextTable);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 把tab中的桶迁移到nextTab中, 调用之前已经把sizeCtl中的迁移线程数量加1
+     */
+    private void transfer(AtomicReferenceArray<Node<K, V>> tab, AtomicReferenceArray<Node<K, V>> nextTab) {
+        int n = tab.length();
+        int stride = Math.max(n / (NCPU * 8), MIN_TRANSFER_STRIDE);
+        ForwardingNode<K, V> fwd = new ForwardingNode<>(nextTab);
+        for (; ; ) {
+            // 领取[bound, index)范围内的桶, 从后往前迁移
+            int index = transferIndex.get();
+            if (index <= 0) break;
+            int bound = index > stride ? index - stride : 0;
+            if (!transferIndex.compareAndSet(index, bound)) continue;
+            for (int i = index - 1; i >= bound; ) {
+                if (transferBin(tab, nextTab, i, fwd)) i--;
+            }
+        }
+        // 最后一个退出的线程负责切换到新桶数组
+        for (; ; ) {
+            int sc = sizeCtl.get();
+            if (sizeCtl.compareAndSet(sc, sc + 1)) {
+                if (sc == -2) {
+                    table = nextTab;
+                    nextTable = null;
+                    sizeCtl.set(threshold(n << 1));
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 迁移tab中i位置的桶, 迁移完放入ForwardingNode
+     *
+     * @return 是否迁移成功(加锁时头节点已经变了, 需要重试)
+     */
+    private boolean transferBin(AtomicReferenceArray<Node<K, V>> tab, AtomicReferenceArray<Node<K, V>> nextTab,
+                                int i, ForwardingNode<K, V> fwd) {
+        Node<K, V> f = tab.get(i);
+        if (f == null) return tab.compareAndSet(i, null, fwd);
+        if (f.hash == MOVED) return true;
+        synchronized (f) {
+            if (tab.get(i) != f) return false;
+            int n = tab.length();
+            // 其他线程可能正在无锁地读这条链表, 所以不能修改原来的节点, 只能复制一份;
+            // 链表尾部哈希位相同的一段(lastRun)可以直接复用
+            Node<K, V> lastRun = f;
+            int runBit = f.hash & n;
+            for (Node<K, V> e = f.next; e != null; e = e.next) {
+                int b = e.hash & n;
+                if (b != runBit) {
+                    runBit = b;
+                    lastRun = e;
+                }
+            }
+            Node<K, V> lo = runBit == 0 ? lastRun : null;
+            Node<K, V> hi = runBit == 0 ? null : lastRun;
+            for (Node<K, V> e = f; e != lastRun; e = e.next) {
+                if ((e.hash & n) == 0) {
+                    lo = new Node<>(e.hash, e.key, e.value, lo);
+                } else {
+                    hi = new Node<>(e.hash, e.key, e.value, hi);
+                }
+            }
+            nextTab.set(i, lo);
+            nextTab.set(i + n, hi);
+            tab.set(i, fwd);
+        }
+        return true;
+    }
+
+    private static int threshold(int capacity) {
+        return (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * 扰动计算哈希值, 并保证不是负数(负数留给ForwardingNode)
+     */
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) & 0x7fffffff;
+    }
+
+    private static Object maskNull(Object key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    private static Object unmaskNull(Object key) {
+        return key == NULL_KEY ? null : key;
+    }
+
+    private static class Node<K, V> {
+        final int hash;
+        final Object key;
+        volatile V value;
+        volatile Node<K, V> next;
+
+        Node(int hash, Object key, V value, Node<K, V> next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+
+        @Override
+        public String toString() {
+            return "Node_" + unmaskNull(key) + "_" + value;
+        }
+    }
+
+    /**
+     * 已经迁移完的桶中放的节点, 指向新桶数组
+     */
+    private static class ForwardingNode<K, V> extends Node<K, V> {
+        final AtomicReferenceArray<Node<K, V>> nextTable;
+
+        ForwardingNode(AtomicReferenceArray<Node<K, V>> nextTable) {
+            super(MOVED, null, null, null);
+            this.nextTable = nextTable;
+        }
+    }
+}
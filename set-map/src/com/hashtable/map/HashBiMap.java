@@ -0,0 +1,169 @@
+package com.hashtable.map;
+
+import java.util.Objects;
+
+/**
+ * Description: 双向Map(BiMap), key和value都是唯一的
+ * <p>
+ * 内部有两个HashMap: forward存放key -> value, backward存放value -> key, 每次put/remove同时修改两个方向.
+ * 所以containsValue、getKey(value)都只需要查一次哈希表, 不需要遍历所有的键值对.
+ * inverse()返回value -> key方向的视图, 和原来的BiMap共用这两个HashMap, 修改任何一个另一个都能看到.
+ *
+ * @author guizy
+ * @date 2026/10/18 19:30
+ */
+@SuppressWarnings("all")
+public class HashBiMap<K, V> implements Map<K, V> {
+
+    private final HashMap<K, V> forward;
+    private final HashMap<V, K> backward;
+    private final HashBiMap<V, K> inverse;
+
+    public HashBiMap() {
+        this.forward = new HashMap<>();
+        this.backward = new HashMap<>();
+        this.inverse = new HashBiMap<>(backward, forward, this);
+    }
+
+    private HashBiMap(HashMap<K, V> forward, HashMap<V, K> backward, HashBiMap<V, K> inverse) {
+        this.forward = forward;
+        this.backward = backward;
+        this.inverse = inverse;
+    }
+
+    /**
+     * 反向视图: value -> key
+     */
+    public HashBiMap<V, K> inverse() {
+        return inverse;
+    }
+
+    /**
+     * 根据value查找key
+     */
+    public K getKey(V value) {
+        return backward.get(value);
+    }
+
+    @Override
+    public int size() {
+        return forward.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return forward.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        forward.clear();
+        backward.clear();
+    }
+
+    /**
+     * 添加键值对
+     *
+     * @throws IllegalArgumentException value已经对应了其他的key
+     */
+    @Override
+    public V put(K key, V value) {
+        if (backward.containsKey(value)) {
+            K oldKey = backward.get(value);
+            if (Objects.equals(key, oldKey)) return value;
+            throw new IllegalArgumentException("value already present: " + value);
+        }
+        return putUnchecked(key, value);
+    }
+
+    /**
+     * 添加键值对, value已经对应了其他的key的话, 先删除那个键值对
+     */
+    public V forcePut(K key, V value) {
+        if (backward.containsKey(value)) {
+            K oldKey = backward.get(value);
+            if (Objects.equals(key, oldKey)) return value;
+            forward.remove(oldKey);
+            backward.remove(value);
+        }
+        return putUnchecked(key, value);
+    }
+
+    /**
+     * 调用前已经保证value不存在
+     */
+    private V putUnchecked(K key, V value) {
+        boolean exists = forward.containsKey(key);
+        V oldValue = forward.put(key, value);
+        // 覆盖了旧value, 删除旧value的反向索引
+        if (exists) backward.remove(oldValue);
+        backward.put(value, key);
+        return oldValue;
+    }
+
+    @Override
+    public V get(K key) {
+        return forward.get(key);
+    }
+
+    @Override
+    public V remove(K key) {
+        if (!forward.containsKey(key)) return null;
+        V value = forward.remove(key);
+        backward.remove(value);
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return forward.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return backward.containsKey(value);
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        forward.traversal(visitor);
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        return new BiCursor();
+    }
+
+    /**
+     * 遍历forward, 删除时同时删除反向索引
+     */
+    private class BiCursor implements Cursor<K, V> {
+        private final Cursor<K, V> cursor = forward.cursor();
+
+        @Override
+        public boolean next() {
+            return cursor.next();
+        }
+
+        @Override
+        public K key() {
+            return cursor.key();
+        }
+
+        @Override
+        public V value() {
+            return cursor.value();
+        }
+
+        @Override
+        public void remove() {
+            backward.remove(cursor.value());
+            cursor.remove();
+        }
+
+        @Override
+        public void reset() {
+            cursor.reset();
+        }
+    }
+}
@@ -3,9 +3,16 @@ package com.hashtable.map;
 import com.hashtable.printer.BinaryTreeInfo;
 import com.hashtable.printer.BinaryTrees;
 
-import java.util.LinkedList;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.AbstractMap;
 import java.util.Objects;
-import java.util.Queue;
+import java.util.Spliterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Description: 使用哈希表来实现一个HashMap
@@ -21,14 +28,190 @@ public class HashMap<K, V> implements Map<K, V> {
     private static final int DEFAULT_CAPACITY = 1 << 4;
     // 装载因子, 当哈希表容量为table.length用到75%就进行扩容
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    // 桶中节点数量超过这个值, 单向链表就转换为红黑树
+    private static final int DEFAULT_TREEIFY_THRESHOLD = 8;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
 
     private int size;   // HashMap的容量(哈希表容量), 用来记录存放多少个entry(键值对)
 
-    // 存放 红黑树根节点 的数组(哈希表底层就是数组), 也就是说哈希表中每一个桶中都是一颗红黑树. 桶数组
+    private final float loadFactor;
+    // 扩容阈值: table.length * loadFactor, size达到这个值就扩容
+    private int threshold;
+
+    // 存放 链表头节点/红黑树根节点 的数组(哈希表底层就是数组). 桶数组
+    // 桶中节点比较少时是一条单向链表(next), 超过treeifyThreshold才转换为一颗红黑树(left,right,parent)
     private Node<K, V>[] table;
 
+    private int treeifyThreshold = DEFAULT_TREEIFY_THRESHOLD;
+    // 红黑树中的节点数量减少到这个值, 就退化回单向链表
+    private int untreeifyThreshold = untreeifyThreshold(DEFAULT_TREEIFY_THRESHOLD);
+
+    // 渐进式扩容: 扩容时新旧两个哈希表同时存在, 每次添加、删除时迁移MIGRATE_STEP个桶, 避免某一次put一次性迁移所有的节点
+    private static final int MIGRATE_STEP = 4;
+    private boolean incrementalResize;
+    // 正在迁移的旧哈希表, 没有扩容时为null; 已经迁移的桶置为null
+    private Node<K, V>[] oldTable;
+    // 下一个按顺序迁移的旧桶
+    private int migrateIndex;
+    // buildTree时, 有序链表中下一个要使用的节点
+    private Node<K, V> sequence;
+
+    // 抗哈希碰撞模式: 发现桶退化(链表长到要转换为红黑树)时, 生成随机种子重新计算所有节点的哈希值
+    private boolean seededHash;
+    // 哈希种子, 为0表示还没有启用种子, 使用普通的扰动函数
+    private int hashSeed;
+
+    // 统计信息的计数器, 没有开启统计时为null, 只需要一次判空
+    private StatsCounter stats;
+
     public HashMap() {
-        table = new Node[DEFAULT_CAPACITY];
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        setTable(new Node[DEFAULT_CAPACITY]);
+    }
+
+    /**
+     * @param expectedSize 预计存放的键值对数量, 放入这么多键值对之前不会扩容
+     */
+    public HashMap(int expectedSize) {
+        this(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @param expectedSize 预计存放的键值对数量, 放入这么多键值对之前不会扩容
+     * @param loadFactor   装载因子, size超过table.length * loadFactor就扩容
+     */
+    public HashMap(int expectedSize, float loadFactor) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize must not be negative");
+        }
+        if (!(loadFactor > 0)) {
+            throw new IllegalArgumentException("loadFactor must be positive");
+        }
+        this.loadFactor = loadFactor;
+        setTable(new Node[capacityFor(expectedSize)]);
+    }
+
+    /**
+     * 设置桶转换为红黑树的阈值(桶中节点数量超过threshold时转换), 退化为链表的阈值为它的3/4
+     *
+     * @param threshold
+     */
+    public void setTreeifyThreshold(int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("treeifyThreshold must be positive");
+        }
+        treeifyThreshold = threshold;
+        untreeifyThreshold = untreeifyThreshold(threshold);
+    }
+
+    private static int untreeifyThreshold(int treeifyThreshold) {
+        return treeifyThreshold * 3 / 4;
+    }
+
+    /**
+     * 是否渐进式扩容; 开启后扩容不再在一次put中迁移所有的节点, 而是分摊到之后的每一次添加、删除中
+     *
+     * @param incrementalResize
+     */
+    public void setIncrementalResize(boolean incrementalResize) {
+        this.incrementalResize = incrementalResize;
+    }
+
+    /**
+     * 是否开启抗哈希碰撞模式. 开启后, 第一次有桶因为冲突太多要转换为红黑树时, 生成一个这个HashMap独有的随机种子,
+     * 用种子重新计算所有key的哈希值: 字符串按内容重新计算(hashCode相同的字符串也能分散开), 其他key把hashCode和种子混合.
+     * 攻击者不知道种子, 就无法构造出落在同一个桶中的key
+     * (hashCode本身就相同的非字符串key仍然会在同一个桶中, 只能靠红黑树兜底)
+     *
+     * @param seededHash
+     */
+    public void setSeededHash(boolean seededHash) {
+        this.seededHash = seededHash;
+    }
+
+    /**
+     * 是否统计每次查找、添加时比较key的次数, 以及扩容次数和耗时; 关闭时不会有任何计数的开销.
+     * 重新开启会清空之前累计的数据
+     *
+     * @param enabled
+     */
+    public void setStatsEnabled(boolean enabled) {
+        stats = enabled ? new StatsCounter() : null;
+    }
+
+    public boolean isStatsEnabled() {
+        return stats != null;
+    }
+
+    /**
+     * 当前的统计信息快照; 桶的结构每次都重新扫描哈希表, 没有开启统计时比较次数、扩容次数都为0
+     *
+     * @return
+     */
+    public HashMapStats stats() {
+        BucketScan scan = scanBuckets();
+        StatsCounter counter = stats;
+        return new HashMapStats(size, table.length, scan.occupied, scan.treeBuckets, scan.maxHeight,
+                scan.averageHeight(),
+                counter == null ? new long[StatsCounter.HISTOGRAM_SIZE] : counter.comparisons.clone(),
+                counter == null ? 0 : counter.resizeCount,
+                counter == null ? 0 : counter.resizeNanos);
+    }
+
+    /**
+     * 扫描哈希表得到桶的结构(占用、高度)
+     */
+    private BucketScan scanBuckets() {
+        BucketScan scan = new BucketScan();
+        // 渐进式扩容中还没有迁移的旧桶也要算上
+        Node<K, V>[][] tables = oldTable == null ? new Node[][]{table} : new Node[][]{table, oldTable};
+        for (Node<K, V>[] tab : tables) {
+            for (Node<K, V> root : tab) {
+                if (root == null) continue;
+                scan.occupied++;
+                int height;
+                if (root.tree) {
+                    scan.treeBuckets++;
+                    height = treeHeight(root);
+                } else {
+                    height = 0;
+                    for (Node<K, V> node = root; node != null; node = node.next) {
+                        height++;
+                    }
+                }
+                scan.maxHeight = Math.max(scan.maxHeight, height);
+                scan.totalHeight += height;
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * 把统计信息注册到平台MBeanServer, ObjectName为com.hashtable.map:type=HashMap,name=name
+     *
+     * @param name
+     * @return 注册使用的ObjectName, 可以用来注销
+     */
+    public ObjectName registerStatsMBean(String name) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("name must not be empty");
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.hashtable.map:type=HashMap,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StatsMBean(), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("cannot register stats MBean: " + name, e);
+        }
+    }
+
+    /**
+     * 渐进式扩容还剩多少个旧桶没有按顺序迁移(其中可能有因为添加、删除而提前迁移的桶)
+     *
+     * @return 没有正在进行的扩容时返回0
+     */
+    public int remainingMigration() {
+        return oldTable == null ? 0 : oldTable.length - migrateIndex;
     }
 
     @Override
@@ -46,6 +229,7 @@ public class HashMap<K, V> implements Map<K, V> {
         // 这里的判断是因为, 如果size==0的时候, 调用clear, 还是会进入下面的循环,进行清空,数组只是开辟了16个空的位置,本来就是空的.
         if (size == 0) return;
         size = 0;
+        oldTable = null;
         // 将哈希表中每一个桶(红黑树的根节点)都清空.
         for (int i = 0; i < table.length; i++) {
             table[i] = null;
@@ -62,91 +246,193 @@ public class HashMap<K, V> implements Map<K, V> {
     @Override
     public V put(K key, V value) {
         resize();
+        migrateBucket(key);
+        V oldValue = putVal(key, value);
+        afterPutEntry();
+        return oldValue;
+    }
+
+    /**
+     * 批量添加, 先一次性扩容到能放下所有的键值对, 添加过程中不再扩容
+     *
+     * @param map
+     */
+    public void putAll(Map<K, V> map) {
+        if (map == null || map.isEmpty()) return;
+        ensureCapacity(size + map.size());
+        map.traversal(new Visitor<K, V>() {
+            @Override
+            public boolean visit(K key, V value) {
+                putVal(key, value);
+                afterPutEntry();
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 批量添加, keys[i]对应values[i]
+     *
+     * @param keys
+     * @param values
+     */
+    public void putAll(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values must have the same length");
+        }
+        ensureCapacity(size + keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            putVal(keys[i], values[i]);
+            afterPutEntry();
+        }
+    }
+
+    /**
+     * 用key没有重复的键值对直接填充哈希表, 只能在HashMap为空时调用(比如从快照加载)
+     * 一次性分配好容量, 每个键值对直接挂到桶的链表头部: 不检查扩容、不迁移、不用equals查找相同的key,
+     * 也不对每个键值对调用afterPutEntry, 填充完再统一把太长的链表转换为红黑树, 最后调用一次afterPutEntry
+     *
+     * @param keys   没有重复的key, 有重复的key时哈希表会出现重复的键值对
+     * @param values keys[i]对应values[i]
+     */
+    public void buildFromDistinct(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values must have the same length");
+        }
+        if (size != 0) {
+            throw new IllegalStateException("buildFromDistinct can only be called on an empty map");
+        }
+        ensureCapacity(keys.length);
+        int mask = table.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            Node<K, V> node = newNode(keys[i], values[i], null);
+            int index = node.hash & mask;
+            node.next = table[index];
+            table[index] = node;
+            if (stats != null) stats.compared(0);
+        }
+        size = keys.length;
+        // 抗哈希碰撞模式下有太长的链表就换用随机种子重新散列, reseed会转换仍然太长的桶
+        if (seededHash && hashSeed == 0 && hasLongBucket()) {
+            reseed();
+        } else {
+            treeifyLongBuckets();
+        }
+        afterPutEntry();
+    }
 
+    /**
+     * 添加键值对, 不检查是否需要扩容
+     *
+     * @param key
+     * @param value
+     * @return 返回是被替代的value
+     */
+    private V putVal(K key, V value) {
         // 哈希表中的索引
         int index = index(key);
-        // 取出index位置(数组中)的红黑树根节点(因为哈希表中存储的就是红黑树的根节点(键值对))
+        // 取出index位置(数组中)的链表头节点/红黑树根节点
         Node<K, V> root = table[index];
         if (root == null) {
             //root = new Node<>(key, value, null);
-            root = createNode(key, value, null);
+            root = newNode(key, value, null);
             table[index] = root;
             size++;
-            // 修复红黑树性质
-            afterPut(root);
+            if (stats != null) stats.compared(0);
             return null;
         }
-        // 出现hash冲突, 说明table[index]表中的位置不为空,已经有红黑树的根节点了
+        // 出现hash冲突, 说明table[index]表中的位置不为空
+        if (root.tree) return putTreeVal(root, key, value);
+
+        // 桶中是单向链表, 从头到尾比较, 找不到就挂到链表尾部
+        int h1 = hash(key);
+        int binCount = 0;
+        Node<K, V> prev = null;
+        for (Node<K, V> node = root; node != null; node = node.next) {
+            if (node.hash == h1 && Objects.equals(key, node.key)) {
+                if (stats != null) stats.compared(binCount + 1);
+                node.key = key;
+                V oldValue = node.value;
+                node.value = value;
+                afterNodeAccess(node);
+                return oldValue;
+            }
+            prev = node;
+            binCount++;
+        }
+        prev.next = newNode(key, value, null);
+        size++;
+        if (stats != null) stats.compared(binCount);
+        // 链表太长, 转换为红黑树; 抗哈希碰撞模式下先换用随机种子重新散列
+        if (binCount >= treeifyThreshold) {
+            if (seededHash && hashSeed == 0) {
+                reseed();
+            } else {
+                treeify(index);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 往红黑树桶中添加
+     *
+     * @param root  桶中红黑树的根节点
+     * @param key
+     * @param value
+     * @return 返回是被替代的value
+     */
+    private V putTreeVal(Node<K, V> root, K key, V value) {
         // 添加的不是第一个节点
         Node<K, V> parent = root; // 这个是第一次比较的父节点
         Node<K, V> node = root;
         int cmp = 0;
-        K k1 = key;
+        // 比较的次数
+        int probes = 0;
         //int h1 = k1 == null ? 0 : k1.hashCode();
-        int h1 = hash(k1);
-        // 搜索结果
-        Node<K, V> result = null;
-        // 是否搜索过, 为了防止重复搜索; 提高代码性能
-        boolean searched = false;
+        int h1 = hash(key);
         do {
             parent = node; // 记录其每一次比较的父节点
-            K k2 = node.key;
+            probes++;
             int h2 = node.hash;
-            // 先比较哈希值
-            if (h1 > h2) {
-                cmp = 1;
-            } else if (h1 < h2) {
-                cmp = -1;
-            } else if (Objects.equals(k1, k2)) {
-                cmp = 0;
-            } else if (k1 != null && k2 != null
-                    && k1.getClass() == k2.getClass()
-                    && k1 instanceof Comparable
-                    && (cmp = ((Comparable) k1).compareTo(k2)) != 0) {
-                // 什么都不做. 直接就会到下下面cmp的比较逻辑
-                // 这里就不比较了, 因为我们之前说过哈希表的元素可以不具备可比较性.
-                // 确定两个key是否相同,只能比equals是否相同; 通过compareTo比较相等,也不代表他们就是相等的
-                // cmp = ((Comparable) k1).compareTo(k2);
-            } else if (searched) {
-                // 已经搜索过了
-                cmp = System.identityHashCode(k1) - System.identityHashCode(k2);
-            } else { // 先进行扫描, 然后再根据内存地址大小决定,插入到左/右; searched == false 还没有搜索过
-                if ((node.left != null && (result = node(node.left, k1)) != null)
-                        || (node.right != null && (result = node(node.right, k1)) != null)) {
-                    // 已经存在这个key
-                    node = result;
-                    cmp = 0;
-                } else {
-                    // 不存在这个key
-                    searched = true;
-                    cmp = System.identityHashCode(k1) - System.identityHashCode(k2);
-                }
-            }
-
+            // 红黑树先按哈希值排序, 哈希值相同再按compareKeys排序
+            cmp = h1 > h2 ? 1 : h1 < h2 ? -1 : compareKeys(key, node.key);
             if (cmp > 0) {
-                // 插入的元素大于根节点的元素,插入到根节点的右边
                 node = node.right;
             } else if (cmp < 0) {
-                // 插入的元素小于根节点的元素,插入到根节点的左边
                 node = node.left;
-            } else { // 相等
-                node.key = key;
-                V oldValue = node.value;
-                node.value = value;
-                // 这里写不写都行,hash本来就等于h1; 因为key是相同(equals相同)的时候,才会来到这里,key相同,hash值也肯定相同
-                node.hash = h1;
-                return oldValue; // 返回之前node的value
+            } else {
+                // 哈希值相同并且不能区分大小, 只需要在这个节点的冲突链表中用equals比较
+                for (Node<K, V> e = node; e != null; e = e.next, probes++) {
+                    if (Objects.equals(key, e.key)) {
+                        if (stats != null) stats.compared(probes);
+                        e.key = key;
+                        V oldValue = e.value;
+                        e.value = value;
+                        afterNodeAccess(e);
+                        return oldValue; // 返回之前node的value
+                    }
+                }
+                // 不存在这个key, 挂到冲突链表中(不参与红黑树的平衡)
+                Node<K, V> member = newNode(key, value, node);
+                member.next = node.next;
+                node.next = member;
+                size++;
+                if (stats != null) stats.compared(probes - 1);
+                return null;
             }
         } while (node != null);
         // 看看插入到父节点的哪个位置
         //Node<K, V> newNode = new Node<>(key, value, parent);
-        Node<K, V> newNode = createNode(key, value, parent);
+        Node<K, V> newNode = newNode(key, value, parent);
+        newNode.tree = true;
         if (cmp > 0) {
             parent.right = newNode;
         } else {
             parent.left = newNode;
         }
         size++;
+        if (stats != null) stats.compared(probes);
 
         // 添加节点之后的逻辑
         afterPut(newNode);
@@ -157,11 +443,17 @@ public class HashMap<K, V> implements Map<K, V> {
     @Override
     public V get(K key) {
         Node<K, V> node = node(key);
-        return node != null ? node.value : null;
+        if (node == null) return null;
+        afterNodeAccess(node);
+        return node.value;
     }
 
     @Override
     public V remove(K key) {
+        if (oldTable != null) {
+            migrate(MIGRATE_STEP);
+            migrateBucket(key);
+        }
         return remove(node(key));
     }
 
@@ -173,22 +465,9 @@ public class HashMap<K, V> implements Map<K, V> {
     @Override
     public boolean containsValue(V value) {
         if (size == 0) return false;
-        Queue<Node<K, V>> queue = new LinkedList<>();
-        // 遍历哈希表中的所有的桶, 然后根据每个桶中的红黑树根节点, 层序遍历, 看看是否存在value
-        for (int i = 0; i < table.length; i++) {
-            // 说明哈希表中的table[i]的位置没有红黑树根节点, 也就是为空, 此时不用遍历比较.跳过
-            if (table[i] == null) continue;
-            queue.offer(table[i]);
-            while (!queue.isEmpty()) {
-                Node<K, V> node = queue.poll();
-                if (Objects.equals(value, node.value)) return true;
-                if (node.left != null) {
-                    queue.offer(node.left);
-                }
-                if (node.right != null) {
-                    queue.offer(node.right);
-                }
-            }
+        Cursor<K, V> cursor = cursor();
+        while (cursor.next()) {
+            if (Objects.equals(value, cursor.value())) return true;
         }
         return false;
     }
@@ -196,28 +475,39 @@ public class HashMap<K, V> implements Map<K, V> {
     @Override
     public void traversal(Visitor<K, V> visitor) {
         if (size == 0 || visitor == null) return;
-        Queue<Node<K, V>> queue = new LinkedList<>();
-        // 遍历哈希表中的所有的桶, 然后根据每个桶中的红黑树根节点, 层序遍历, 看看是否存在value
-        for (int i = 0; i < table.length; i++) {
-            // 说明哈希表中的table[i]的位置没有红黑树根节点, 也就是为空, 此时不用遍历比较.跳过
-            if (table[i] == null) continue;
-            queue.offer(table[i]);
-            while (!queue.isEmpty()) {
-                Node<K, V> node = queue.poll();
-                // 返回为true, 就停止遍历
-                if (visitor.visit(node.key, node.value)) return;
-                if (node.left != null) {
-                    queue.offer(node.left);
-                }
-                if (node.right != null) {
-                    queue.offer(node.right);
-                }
-            }
+        Cursor<K, V> cursor = cursor();
+        while (cursor.next()) {
+            // 返回为true, 就停止遍历
+            if (visitor.visit(cursor.key(), cursor.value())) return;
         }
     }
 
+    @Override
+    public Cursor<K, V> cursor() {
+        return new HashCursor();
+    }
+
+    /**
+     * 按桶的区间拆分的Spliterator, 可以交给ForkJoinPool并行遍历; 遍历过程中不能修改HashMap
+     */
+    public Spliterator<java.util.Map.Entry<K, V>> spliterator() {
+        // 渐进式扩容没有迁移完的话, 节点分散在两个哈希表中, 先迁移完
+        finishMigration();
+        return new HashSpliterator(table, 0, table.length, size, true);
+    }
+
+    public Stream<java.util.Map.Entry<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    public Stream<java.util.Map.Entry<K, V>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
     public void print() {
         if (size == 0) return;
+        // 遍历所有的桶本身就是O(n)的, 顺便把没有迁移完的桶都迁移了
+        if (oldTable != null) migrate(oldTable.length);
         for (int i = 0; i < table.length; i++) {
             final Node<K, V> root = table[i];
             System.out.println("[index = " + i + "]");
@@ -234,12 +524,21 @@ public class HashMap<K, V> implements Map<K, V> {
 
                 @Override
                 public Object right(Object node) {
-                    return ((Node<K, V>) node).right;
+                    // 链表桶打印成一条向右的斜线
+                    Node<K, V> n = (Node<K, V>) node;
+                    return n.tree ? n.right : n.next;
                 }
 
                 @Override
                 public Object string(Object node) {
-                    return node;
+                    Node<K, V> n = (Node<K, V>) node;
+                    if (!n.tree || n.next == null) return node;
+                    // 红黑树节点后面跟着它的冲突链表
+                    StringBuilder sb = new StringBuilder(n.toString());
+                    for (Node<K, V> e = n.next; e != null; e = e.next) {
+                        sb.append(" | ").append(e);
+                    }
+                    return sb.toString();
                 }
             });
             System.out.println("----------------------------------");
@@ -257,6 +556,29 @@ public class HashMap<K, V> implements Map<K, V> {
         return new Node<>(key, value, parent);
     }
 
+    /**
+     * 创建节点, 节点的哈希值使用当前的哈希函数(可能带有种子)
+     */
+    private Node<K, V> newNode(K key, V value, Node<K, V> parent) {
+        Node<K, V> node = createNode(key, value, parent);
+        if (hashSeed != 0) node.hash = hash(key);
+        return node;
+    }
+
+    /**
+     * get命中或者put覆盖了node的value之后调用, 交给子类处理的
+     *
+     * @param node
+     */
+    protected void afterNodeAccess(Node<K, V> node) {
+    }
+
+    /**
+     * 每次put(包括批量添加中的每一个键值对)完成之后调用, 交给子类处理的
+     */
+    protected void afterPutEntry() {
+    }
+
     /**
      * @param willNode   即将要删除的节点
      * @param removeNode 实际删除的节点
@@ -268,31 +590,288 @@ public class HashMap<K, V> implements Map<K, V> {
      * 扩容
      */
     private void resize() {
-        // 装填因子 <= 0.75, 不扩容
-        if (size / table.length <= DEFAULT_LOAD_FACTOR) return;
-        Node<K, V>[] oldTable = table;
-        table = new Node[oldTable.length << 1];
-        Queue<Node<K, V>> queue = new LinkedList<>();
-        for (int i = 0; i < oldTable.length; i++) {
-            if (oldTable[i] == null) continue;
-            // 层序遍历
-            queue.offer(oldTable[i]);
-            while (!queue.isEmpty()) {
-                Node<K, V> node = queue.poll();
-                if (node.left != null) {
-                    queue.offer(node.left);
-                }
-                if (node.right != null) {
-                    queue.offer(node.right);
-                }
-                // 挪动代码,放到后面
-                moveNode(node);
+        // 渐进式扩容过程中, 每次添加都顺便迁移几个桶
+        if (oldTable != null) migrate(MIGRATE_STEP);
+        // 装填因子 <= loadFactor, 不扩容
+        if (size < threshold || table.length == MAXIMUM_CAPACITY) return;
+        // 非渐进式扩容, 一次性迁移所有的桶
+        rehash(table.length << 1, incrementalResize);
+    }
+
+    /**
+     * 保证能放下expectedSize个键值对而不需要扩容, 需要扩容的话一次性扩容到位
+     *
+     * @param expectedSize
+     */
+    private void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (capacity > table.length) {
+            rehash(capacity, false);
+        } else if (oldTable != null) {
+            migrate(oldTable.length);
+        }
+    }
+
+    /**
+     * 扩容到capacity
+     *
+     * @param capacity    新哈希表的容量, 必须大于当前容量
+     * @param incremental 是否渐进式迁移
+     */
+    private void rehash(int capacity, boolean incremental) {
+        if (stats != null) stats.resizeCount++;
+        // 上一次扩容还没迁移完, 先全部迁移完
+        if (oldTable != null) migrate(oldTable.length);
+        oldTable = table;
+        migrateIndex = 0;
+        setTable(new Node[capacity]);
+        migrate(incremental ? MIGRATE_STEP : oldTable.length);
+    }
+
+    private void setTable(Node<K, V>[] table) {
+        this.table = table;
+        threshold = (int) Math.min(table.length * loadFactor, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 能放下expectedSize个键值对而不需要扩容的最小容量(2的幂)
+     *
+     * @param expectedSize
+     * @return
+     */
+    private int capacityFor(int expectedSize) {
+        double capacity = Math.ceil(expectedSize / (double) loadFactor);
+        if (capacity >= MAXIMUM_CAPACITY) return MAXIMUM_CAPACITY;
+        int n = Math.max((int) capacity, 1);
+        return n == 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * 按顺序从旧哈希表中迁移count个桶到新哈希表, 全部迁移完就丢弃旧哈希表
+     *
+     * @param count
+     */
+    private void migrate(int count) {
+        long begin = stats != null ? System.nanoTime() : 0;
+        int oldCapacity = oldTable.length;
+        while (count-- > 0 && migrateIndex < oldCapacity) {
+            transfer(migrateIndex++);
+        }
+        if (migrateIndex == oldCapacity) oldTable = null;
+        if (stats != null) stats.resizeNanos += System.nanoTime() - begin;
+    }
+
+    /**
+     * 把渐进式扩容中还没有迁移的桶全部迁移完, 之后所有节点都在table中
+     */
+    protected void finishMigration() {
+        if (oldTable != null) migrate(oldTable.length);
+    }
+
+    /**
+     * 如果key所在的旧桶还没有迁移, 立即迁移它; 保证接下来的修改只发生在新哈希表中
+     *
+     * @param key
+     */
+    private void migrateBucket(K key) {
+        if (oldTable == null) return;
+        transfer(hash(key) & (oldTable.length - 1));
+    }
+
+    /**
+     * 将旧哈希表中i位置的桶迁移到新哈希表中, 迁移完旧桶置为null(表示已经迁移)
+     *
+     * @param i
+     */
+    private void transfer(int i) {
+        if (oldTable[i] == null) return;
+        int oldCapacity = oldTable.length;
+        boolean treeBin = oldTable[i].tree;
+        // 红黑树先按中序遍历串成链表
+        Node<K, V> node = treeBin ? flatten(oldTable[i]) : oldTable[i];
+        oldTable[i] = null;
+        // 扩容后节点只可能在i + k * oldCapacity位置(扩容一倍时就是i或者i + oldCapacity)
+        // 旧桶还没迁移时, 新哈希表中这些位置肯定是空的; 先倒序挂到这些新桶上, 再逐个反转回原来的顺序
+        int mask = table.length - 1;
+        while (node != null) {
+            Node<K, V> next = node.next;
+            int index = node.hash & mask;
+            node.next = table[index];
+            table[index] = node;
+            node = next;
+        }
+        for (int index = i; index < table.length; index += oldCapacity) {
+            if (table[index] == null) continue;
+            Node<K, V> head = null;
+            int count = 0;
+            // 红黑树节点的数量, 同一个红黑树节点和它的冲突链表在有序链表中是连续的
+            int groups = 0;
+            for (node = table[index]; node != null; count++) {
+                Node<K, V> next = node.next;
+                if (head == null || !sameGroup(head, node)) groups++;
+                node.next = head;
+                head = node;
+                node = next;
             }
+            if (treeBin) {
+                // 拆分出来的链表仍然是有序的, 直接线性构建红黑树, 不需要再逐个比较、旋转
+                table[index] = count > untreeifyThreshold ? buildTree(head, groups) : head;
+            } else {
+                table[index] = head;
+                if (count > treeifyThreshold) treeify(index);
+            }
+        }
+    }
+
+    /**
+     * 用一条按中序遍历顺序排好的链表, 线性时间构建一颗红黑树
+     * 构建出来的是一颗完全平衡的二叉树, 只有最底层(不满的那一层)的节点染成红色
+     *
+     * @param head  有序链表的头节点
+     * @param count 红黑树节点的数量, sameGroup的连续节点会组成一个红黑树节点和它的冲突链表
+     * @return 红黑树的根节点
+     */
+    private Node<K, V> buildTree(Node<K, V> head, int count) {
+        // 完全平衡二叉树中, 最底层的深度
+        int redLevel = 0;
+        for (int m = count - 1; m >= 0; m = m / 2 - 1) {
+            redLevel++;
         }
+        sequence = head;
+        Node<K, V> root = buildTree(0, 0, count - 1, redLevel);
+        root.parent = null;
+        return root;
     }
 
     /**
-     * 将之前哈希表中的节点, 挪动到扩容后的哈希表中
+     * 中序构建[lo, hi]范围内的子树, 依次使用sequence链表中的节点
+     */
+    private Node<K, V> buildTree(int level, int lo, int hi, int redLevel) {
+        if (hi < lo) return null;
+        int mid = (lo + hi) >>> 1;
+        Node<K, V> left = buildTree(level + 1, lo, mid - 1, redLevel);
+
+        Node<K, V> middle = sequence;
+        // 后面和middle属于同一组的节点留在middle的冲突链表中
+        Node<K, V> last = middle;
+        while (last.next != null && sameGroup(last.next, middle)) {
+            last = last.next;
+            last.parent = middle;
+        }
+        sequence = last.next;
+        last.next = null;
+        middle.tree = true;
+        middle.color = level == redLevel ? RED : BLACK;
+        middle.left = left;
+        if (left != null) left.parent = middle;
+
+        Node<K, V> right = buildTree(level + 1, mid + 1, hi, redLevel);
+        middle.right = right;
+        if (right != null) right.parent = middle;
+        return middle;
+    }
+
+    /**
+     * 将index位置的单向链表转换为红黑树
+     *
+     * @param index
+     */
+    private void treeify(int index) {
+        Node<K, V> node = table[index];
+        table[index] = null;
+        while (node != null) {
+            Node<K, V> next = node.next;
+            node.next = null;
+            moveNode(node);
+            node = next;
+        }
+    }
+
+    /**
+     * 将index位置的红黑树退化为单向链表(按中序遍历的顺序)
+     *
+     * @param index
+     */
+    private void untreeify(int index) {
+        table[index] = flatten(table[index]);
+    }
+
+    /**
+     * 将红黑树按中序遍历的顺序用next串成一条单向链表, 并清除节点的红黑树信息
+     *
+     * @param root 红黑树的根节点
+     * @return 链表的头节点
+     */
+    private Node<K, V> flatten(Node<K, V> root) {
+        Node<K, V> head = root;
+        while (head.left != null) {
+            head = head.left;
+        }
+        // 利用parent指针找后继, 不需要额外的栈或队列; 冲突链表的尾部接上后继节点
+        for (Node<K, V> node = head; node != null; ) {
+            Node<K, V> successor = successor(node);
+            Node<K, V> last = node;
+            while (last.next != null) {
+                last = last.next;
+            }
+            last.next = successor;
+            node = successor;
+        }
+        for (Node<K, V> node = head; node != null; node = node.next) {
+            node.left = node.right = node.parent = null;
+            node.color = RED;
+            node.tree = false;
+        }
+        return head;
+    }
+
+    /**
+     * 统计红黑树桶中的节点数量(包括冲突链表中的节点), 超过limit就不再继续统计
+     *
+     * @param node
+     * @param limit
+     * @return
+     */
+    private int treeSize(Node<K, V> node, int limit) {
+        if (node == null || limit <= 0) return 0;
+        int count = 0;
+        for (Node<K, V> e = node; e != null && count < limit; e = e.next) {
+            count++;
+        }
+        count += treeSize(node.left, limit - count);
+        return count + treeSize(node.right, limit - count);
+    }
+
+    /**
+     * 在红黑树桶中查找最多需要比较的次数: 往下走的节点数, 加上最后那个节点冲突链表的长度
+     *
+     * @param node
+     * @return
+     */
+    private int treeHeight(Node<K, V> node) {
+        if (node == null) return 0;
+        int group = 0;
+        for (Node<K, V> e = node; e != null; e = e.next) {
+            group++;
+        }
+        return Math.max(group, 1 + Math.max(treeHeight(node.left), treeHeight(node.right)));
+    }
+
+    /**
+     * 桶中的下一个节点: 链表桶沿着next; 红黑树桶按中序遍历, 每个红黑树节点之后是它的冲突链表
+     *
+     * @param node
+     * @return
+     */
+    private Node<K, V> nextInBin(Node<K, V> node) {
+        if (node.tree) return node.next != null ? node.next : successor(node);
+        // 冲突链表中的节点: 不是红黑树节点, parent指向所属的红黑树节点
+        if (node.parent != null) return node.next != null ? node.next : successor(node.parent);
+        return node.next;
+    }
+
+    /**
+     * 将之前哈希表中的节点, 挪动到红黑树桶中
      *
      * @param newNode
      */
@@ -302,6 +881,7 @@ public class HashMap<K, V> implements Map<K, V> {
         newNode.left = null;
         newNode.right = null;
         newNode.color = RED;
+        newNode.tree = true;
 
         // 哈希表中的索引
         int index = index(newNode);
@@ -315,32 +895,24 @@ public class HashMap<K, V> implements Map<K, V> {
         }
         Node<K, V> parent = root; // 这个是第一次比较的父节点
         Node<K, V> node = root;
-        int cmp = 0;
-        K k1 = newNode.key;
         int h1 = newNode.hash;
+        int cmp;
         do {
             parent = node; // 记录其每一次比较的父节点
-            K k2 = node.key;
             int h2 = node.hash;
-            // 先比较哈希值, 因为是挪动, 所以不用equals比较key, 肯定没有相同的key
-            if (h1 > h2) {
-                cmp = 1;
-            } else if (h1 < h2) {
-                cmp = -1;
-            } else if (k1 != null && k2 != null
-                    && k1.getClass() == k2.getClass()
-                    && k1 instanceof Comparable
-                    && (cmp = ((Comparable) k1).compareTo(k2)) != 0) {
-            } else {
-                cmp = System.identityHashCode(k1) - System.identityHashCode(k2);
-            }
-
+            // 因为是挪动, 所以不用equals比较key, 肯定没有相同的key
+            cmp = h1 > h2 ? 1 : h1 < h2 ? -1 : compareKeys(newNode.key, node.key);
             if (cmp > 0) {
-                // 插入的元素大于根节点的元素,插入到根节点的右边
                 node = node.right;
             } else if (cmp < 0) {
-                // 插入的元素小于根节点的元素,插入到根节点的左边
                 node = node.left;
+            } else {
+                // 不能区分大小, 挂到冲突链表中
+                newNode.tree = false;
+                newNode.parent = node;
+                newNode.next = node.next;
+                node.next = newNode;
+                return;
             }
         } while (node != null);
         // 看看插入到父节点的哪个位置
@@ -356,6 +928,11 @@ public class HashMap<K, V> implements Map<K, V> {
 
     protected V remove(Node<K, V> node) {
         if (node == null) return null;
+        // 链表桶, 直接从链表中删除; 冲突链表中的节点, 从冲突链表中删除
+        if (!node.tree) return node.parent == null ? removeFromChain(node) : removeFromGroup(node);
+        // 红黑树节点还有冲突链表, 让冲突链表中的第一个节点接替它在红黑树中的位置
+        if (node.next != null) return replaceInTree(node);
+
         Node<K, V> willNode = node; // 本来要删除的节点,由于红黑树中度为2的节点删除方式, 和链表中的删除方式不同,所以要做交换
 
         // node 不为空, 必然要删除结点, 先size--;
@@ -378,6 +955,12 @@ public class HashMap<K, V> implements Map<K, V> {
             node.key = predecessor.key;
             node.value = predecessor.value;
             node.hash = predecessor.hash;
+            // 前驱节点的冲突链表也一起挪过来
+            node.next = predecessor.next;
+            predecessor.next = null;
+            for (Node<K, V> e = node.next; e != null; e = e.next) {
+                e.parent = node;
+            }
             //3、删除前驱节点
             node = predecessor;
         }
@@ -415,11 +998,102 @@ public class HashMap<K, V> implements Map<K, V> {
             // 删除结点之后的处理
             afterRemove(node, null);
         }
+        untreeifyIfSmall(index);
         // 交给子类处理的
         afterChildRemove(willNode, node);
         return oldValue;
     }
 
+    /**
+     * 从红黑树节点的冲突链表中删除node
+     *
+     * @param node
+     * @return
+     */
+    private V removeFromGroup(Node<K, V> node) {
+        Node<K, V> prev = node.parent;
+        while (prev.next != node) {
+            prev = prev.next;
+        }
+        prev.next = node.next;
+        int index = index(node);
+        node.next = node.parent = null;
+        size--;
+        untreeifyIfSmall(index);
+        afterChildRemove(node, node);
+        return node.value;
+    }
+
+    /**
+     * 删除带有冲突链表的红黑树节点: 冲突链表中的第一个节点(属于同一组)原样接替它的位置和颜色, 红黑树不需要调整
+     *
+     * @param node
+     * @return
+     */
+    private V replaceInTree(Node<K, V> node) {
+        Node<K, V> heir = node.next;
+        heir.tree = true;
+        heir.color = node.color;
+        heir.left = node.left;
+        heir.right = node.right;
+        heir.parent = node.parent;
+        if (heir.left != null) heir.left.parent = heir;
+        if (heir.right != null) heir.right.parent = heir;
+        int index = index(node);
+        if (node.parent == null) {
+            table[index] = heir;
+        } else if (node == node.parent.left) {
+            node.parent.left = heir;
+        } else {
+            node.parent.right = heir;
+        }
+        for (Node<K, V> e = heir.next; e != null; e = e.next) {
+            e.parent = heir;
+        }
+        node.next = node.left = node.right = node.parent = null;
+        node.tree = false;
+        size--;
+        untreeifyIfSmall(index);
+        afterChildRemove(node, node);
+        return node.value;
+    }
+
+    /**
+     * 红黑树桶中的节点太少, 退化为链表
+     *
+     * @param index
+     */
+    private void untreeifyIfSmall(int index) {
+        Node<K, V> root = table[index];
+        if (root != null && root.tree && treeSize(root, untreeifyThreshold + 1) <= untreeifyThreshold) {
+            untreeify(index);
+        }
+    }
+
+    /**
+     * 从链表桶中删除node
+     *
+     * @param node
+     * @return
+     */
+    private V removeFromChain(Node<K, V> node) {
+        int index = index(node);
+        Node<K, V> prev = null;
+        for (Node<K, V> cur = table[index]; cur != node; cur = cur.next) {
+            prev = cur;
+        }
+        if (prev == null) {
+            table[index] = node.next;
+        } else {
+            prev.next = node.next;
+        }
+        node.next = null;
+        size--;
+        // 交给子类处理的
+        afterChildRemove(node, node);
+        return node.value;
+    }
+
     /**
      * 根据一个key, 找到对应的节点
      *
@@ -427,60 +1101,58 @@ public class HashMap<K, V> implements Map<K, V> {
      * @return
      */
     private Node<K, V> node(K key) {
-        Node<K, V> root = table[index(key)];
-        return root == null ? null : node(root, key);
+        Node<K, V> root = null;
+        // 正在渐进式扩容, key所在的旧桶还没有迁移, 就在旧桶中查找
+        if (oldTable != null) root = oldTable[hash(key) & (oldTable.length - 1)];
+        if (root == null) root = table[index(key)];
+        if (root == null) {
+            if (stats != null) stats.compared(0);
+            return null;
+        }
+        if (root.tree) return node(root, key);
+        // 链表桶
+        int h = hash(key);
+        int probes = 0;
+        for (Node<K, V> node = root; node != null; node = node.next) {
+            probes++;
+            if (node.hash == h && Objects.equals(key, node.key)) {
+                if (stats != null) stats.compared(probes);
+                return node;
+            }
+        }
+        if (stats != null) stats.compared(probes);
+        return null;
     }
 
     private Node<K, V> node(Node<K, V> node, K k1) {
         //int h1 = k1 == null ? 0 : k1.hashCode();
         int h1 = hash(k1);
-        // 存储查找结果
-        Node<K, V> result = null;
-        int cmp = 0;
-        // 递归去左右子树查找
+        int probes = 0;
         while (node != null) {
-            K k2 = node.key;
+            probes++;
             int h2 = node.hash;
-            // 先比较哈希值
-            if (h1 > h2) {
+            // 先比较哈希值, 哈希值相同再按compareKeys比较
+            int cmp = h1 > h2 ? 1 : h1 < h2 ? -1 : compareKeys(k1, node.key);
+            if (cmp > 0) {
                 node = node.right;
-            } else if (h1 < h2) {
+            } else if (cmp < 0) {
                 node = node.left;
-                // 哈希值相同, 看看k1,k2是否相同,如果相同,则表示找到
-            } else if (Objects.equals(k1, k2)) {
-                return node;
-                // 哈希值相同, equals不同, 看看是否具备可比较性
-            } else if (k1 != null && k2 != null
-                    && k1.getClass() == k2.getClass()
-                    && k1 instanceof Comparable
-                    && (cmp = ((Comparable) k1).compareTo(k2)) != 0) {
-                // 具备可比较性
-                //cmp = ((Comparable) k1).compareTo(k2); // 和put相同,compareTo相同不应该确定key就相同,应该继续向下搜索节点的key
-                if (cmp > 0) {
-                    node = node.right;
-                } else if (cmp < 0) {
-                    node = node.left;
-                }
-//                else {
-//                    return node;
-//                }
-                // 哈希值相同,equals不同, 不具备可比较性
-            } else if (node.right != null && (result = node(node.right, k1)) != null) {
-                return result;
             } else {
-                node = node.left; // 优化下面的6行代码, 减少一次递归调用
+                // 和k1比较结果为0的key都在这个节点的冲突链表中
+                for (Node<K, V> e = node; e != null; e = e.next, probes++) {
+                    if (Objects.equals(k1, e.key)) {
+                        if (stats != null) stats.compared(probes);
+                        return e;
+                    }
+                }
+                probes--;
+                break;
             }
-//            } else if (node.left != null && (result = node(node.left, k1)) != null) {
-//                return result;
-//            } else {
-//                // 没找到
-//                return null;
-//            }
         }
+        if (stats != null) stats.compared(probes);
         return null;
     }
 
-
     /**
      * 计算key的索引(在哈希表(数组)的哪个索引位置)
      *
@@ -506,10 +1178,140 @@ public class HashMap<K, V> implements Map<K, V> {
      */
     private int hash(K key) {
         if (key == null) return 0;
+        if (hashSeed != 0) return seededHash(key);
         int hash = key.hashCode();
         return hash ^ (hash >>> 16);
     }
 
+    /**
+     * 带种子的哈希函数: 字符串用MurmurHash3按内容计算, 其他key把hashCode和种子混合后再充分扰动
+     * (不能绕开hashCode, 否则equals相同而类型不同的key(比如SubKey1、SubKey2)会得到不同的哈希值)
+     *
+     * @param key
+     * @return
+     */
+    private int seededHash(K key) {
+        if (key instanceof String) return stringHash((String) key, hashSeed);
+        return mix(key.hashCode() ^ hashSeed);
+    }
+
+    private static int stringHash(String s, int seed) {
+        int h = seed;
+        int length = s.length();
+        int i = 0;
+        // 每次处理2个char(32位)
+        for (; i + 1 < length; i += 2) {
+            h ^= mixK(s.charAt(i) | (s.charAt(i + 1) << 16));
+            h = Integer.rotateLeft(h, 13) * 5 + 0xe6546b64;
+        }
+        if (i < length) h ^= mixK(s.charAt(i));
+        return mix(h ^ (length << 1));
+    }
+
+    private static int mixK(int k) {
+        return Integer.rotateLeft(k * 0xcc9e2d51, 15) * 0x1b873593;
+    }
+
+    /**
+     * MurmurHash3的fmix32, 输入的每一位都会影响输出的每一位
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 生成随机种子, 用新的哈希函数重新计算所有节点的哈希值, 并重新放入同样大小的哈希表
+     */
+    private void reseed() {
+        finishMigration();
+        do {
+            hashSeed = ThreadLocalRandom.current().nextInt();
+        } while (hashSeed == 0);
+        Node<K, V>[] oldTab = table;
+        table = new Node[oldTab.length];
+        int mask = table.length - 1;
+        for (int i = 0; i < oldTab.length; i++) {
+            if (oldTab[i] == null) continue;
+            Node<K, V> node = oldTab[i].tree ? flatten(oldTab[i]) : oldTab[i];
+            while (node != null) {
+                Node<K, V> next = node.next;
+                node.hash = hash(node.key);
+                int index = node.hash & mask;
+                node.next = table[index];
+                table[index] = node;
+                node = next;
+            }
+        }
+        // 换了种子之后仍然太长的桶(hashCode本身就相同), 转换为红黑树
+        treeifyLongBuckets();
+    }
+
+    /**
+     * 链表桶中的节点数量是否超过treeifyThreshold
+     */
+    private boolean isLongBucket(int index) {
+        Node<K, V> root = table[index];
+        if (root == null || root.tree) return false;
+        int count = 0;
+        for (Node<K, V> node = root; node != null && count <= treeifyThreshold; node = node.next) {
+            count++;
+        }
+        return count > treeifyThreshold;
+    }
+
+    private boolean hasLongBucket() {
+        for (int i = 0; i < table.length; i++) {
+            if (isLongBucket(i)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 节点数量超过treeifyThreshold的链表桶都转换为红黑树
+     */
+    private void treeifyLongBuckets() {
+        for (int i = 0; i < table.length; i++) {
+            if (isLongBucket(i)) treeify(i);
+        }
+    }
+
+    /**
+     * 哈希值相同的两个key在红黑树中的顺序
+     * 实现了Comparable的key先按类名排序, 同一个类的再用compareTo比较, 查找仍然是O(logn);
+     * 没有实现Comparable的key之间都相等, 排在最前面. 比较结果为0的key在同一个红黑树节点的冲突链表中, 用equals查找,
+     * 所以没有实现Comparable的key可以和其他类型的key equals(比如SubKey1和SubKey2), 实现了Comparable的key不行
+     *
+     * @param k1
+     * @param k2
+     * @return
+     */
+    private static int compareKeys(Object k1, Object k2) {
+        boolean comparable1 = k1 instanceof Comparable;
+        boolean comparable2 = k2 instanceof Comparable;
+        if (!comparable1 || !comparable2) {
+            return comparable1 == comparable2 ? 0 : comparable1 ? 1 : -1;
+        }
+        Class<?> class1 = k1.getClass();
+        Class<?> class2 = k2.getClass();
+        if (class1 != class2) {
+            int result = class1.getName().compareTo(class2.getName());
+            // 不同类加载器加载的同名类
+            return result != 0 ? result : Integer.compare(System.identityHashCode(class1), System.identityHashCode(class2));
+        }
+        return ((Comparable) k1).compareTo(k2);
+    }
+
+    /**
+     * 两个节点是否属于红黑树中的同一个节点(它自己和它的冲突链表)
+     */
+    private static boolean sameGroup(Node<?, ?> n1, Node<?, ?> n2) {
+        return n1.hash == n2.hash && compareKeys(n1.key, n2.key) == 0;
+    }
+
     /**
      * 根据传入的node,计算它在数组中的哪个索引位置(即使它不是根节点)
      *
@@ -795,6 +1597,31 @@ public class HashMap<K, V> implements Map<K, V> {
         return node.parent;
     }
 
+    /**
+     * 根据传入的节点, 返回该节点的后继节点 (中序遍历)
+     *
+     * @param node
+     * @return
+     */
+    private Node<K, V> successor(Node<K, V> node) {
+        if (node == null) return node;
+
+        // 后继节点在右子树当中(node.right.left.left.left...)
+        Node<K, V> p = node.right;
+        if (p != null) {
+            while (p.left != null) {
+                p = p.left;
+            }
+            return p;
+        }
+
+        // 从父节点、祖父节点中寻找后继节点
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
     /**
      * 将node染成color色
      *
@@ -858,6 +1685,276 @@ public class HashMap<K, V> implements Map<K, V> {
         return colorOf(node) == RED;
     }
 
+    /**
+     * 按桶的顺序遍历: 链表桶沿着next, 红黑树桶利用parent指针找中序遍历的后继, 不需要栈或队列
+     */
+    private class HashCursor implements Cursor<K, V> {
+        // 下一个要访问的桶
+        private int index;
+        // 下一个要访问的节点
+        private Node<K, V> next;
+        private Node<K, V> current;
+
+        HashCursor() {
+            reset();
+        }
+
+        @Override
+        public boolean next() {
+            if (next == null) return false;
+            current = next;
+            next = nextInBin(current);
+            if (next == null) next = nextBin();
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return current().key;
+        }
+
+        @Override
+        public V value() {
+            return current().value;
+        }
+
+        @Override
+        public void remove() {
+            /*
+             * 删除度为2的红黑树节点时, 实际删除的是它的前驱节点(已经访问过), 下一个节点不受影响;
+             * 红黑树退化为链表时, 链表也是按照中序遍历的顺序串起来的
+             */
+            HashMap.this.remove(current());
+            current = null;
+        }
+
+        @Override
+        public void reset() {
+            // 遍历所有的桶本身就是O(n)的, 顺便把没有迁移完的桶都迁移了
+            finishMigration();
+            index = 0;
+            current = null;
+            next = nextBin();
+        }
+
+        private Node<K, V> current() {
+            if (current == null) throw new IllegalStateException("no current entry");
+            return current;
+        }
+
+        /**
+         * 下一个非空桶中的第一个节点
+         */
+        private Node<K, V> nextBin() {
+            while (index < table.length) {
+                Node<K, V> node = table[index++];
+                if (node == null) continue;
+                if (node.tree) {
+                    while (node.left != null) {
+                        node = node.left;
+                    }
+                }
+                return node;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 遍历[index, fence)范围内的桶, 拆分时把前一半的桶分出去
+     */
+    private class HashSpliterator implements Spliterator<java.util.Map.Entry<K, V>> {
+        private final Node<K, V>[] tab;
+        // 下一个要访问的桶
+        private int index;
+        private final int fence;
+        // 剩余节点数量的估计值, 哈希值分布均匀时和桶的数量成正比
+        private int est;
+        // 是否覆盖了整个哈希表, 只有这时est才是精确值
+        private boolean sized;
+        // 正在访问的桶中, 下一个要访问的节点
+        private Node<K, V> next;
+
+        HashSpliterator(Node<K, V>[] tab, int index, int fence, int est, boolean sized) {
+            this.tab = tab;
+            this.index = index;
+            this.fence = fence;
+            this.est = est;
+            this.sized = sized;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super java.util.Map.Entry<K, V>> action) {
+            if (action == null) throw new NullPointerException();
+            if (next == null && (next = nextBin()) == null) return false;
+            Node<K, V> node = next;
+            next = nextInBin(node);
+            action.accept(new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super java.util.Map.Entry<K, V>> action) {
+            if (action == null) throw new NullPointerException();
+            for (Node<K, V> node = next != null ? next : nextBin(); node != null; ) {
+                action.accept(new AbstractMap.SimpleImmutableEntry<>(node.key, node.value));
+                node = nextInBin(node);
+                if (node == null) node = nextBin();
+            }
+            next = null;
+        }
+
+        @Override
+        public Spliterator<java.util.Map.Entry<K, V>> trySplit() {
+            int mid = (index + fence) >>> 1;
+            // 正在遍历某个桶, 或者只剩一个桶了, 不再拆分
+            if (next != null || index >= mid) return null;
+            int lo = index;
+            // 按桶的数量比例分配估计值
+            int prefix = (int) ((long) est * (mid - lo) / (fence - lo));
+            est -= prefix;
+            sized = false;
+            index = mid;
+            return new HashSpliterator(tab, lo, mid, prefix, false);
+        }
+
+        @Override
+        public long estimateSize() {
+            return est;
+        }
+
+        @Override
+        public int characteristics() {
+            return (sized ? Spliterator.SIZED : 0) | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        /**
+         * 下一个非空桶中的第一个节点
+         */
+        private Node<K, V> nextBin() {
+            while (index < fence) {
+                Node<K, V> node = tab[index++];
+                if (node == null) continue;
+                if (node.tree) {
+                    while (node.left != null) {
+                        node = node.left;
+                    }
+                }
+                return node;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 开启统计后才创建的计数器
+     */
+    private static class StatsCounter {
+        static final int HISTOGRAM_SIZE = 16;
+        // 比较次数的分布, 下标是比较次数的二进制位数: 0, 1, 2~3, 4~7...
+        final long[] comparisons = new long[HISTOGRAM_SIZE];
+        long resizeCount;
+        long resizeNanos;
+
+        void compared(int probes) {
+            comparisons[Math.min(32 - Integer.numberOfLeadingZeros(probes), HISTOGRAM_SIZE - 1)]++;
+        }
+    }
+
+    /**
+     * 一次扫描哈希表得到的桶的结构
+     */
+    private static class BucketScan {
+        int occupied;
+        int treeBuckets;
+        int maxHeight;
+        long totalHeight;
+
+        double averageHeight() {
+            return occupied == 0 ? 0 : (double) totalHeight / occupied;
+        }
+    }
+
+    /**
+     * 注册到MBeanServer中的MBean
+     * 比较次数、扩容次数和耗时直接读取计数器; 只有桶的占用率、高度相关的属性需要扫描哈希表
+     */
+    private class StatsMBean implements HashMapStatsMXBean {
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public int getCapacity() {
+            return table.length;
+        }
+
+        @Override
+        public double getOccupiedBucketRatio() {
+            return (double) scanBuckets().occupied / table.length;
+        }
+
+        @Override
+        public int getTreeBuckets() {
+            return scanBuckets().treeBuckets;
+        }
+
+        @Override
+        public int getMaxBucketHeight() {
+            return scanBuckets().maxHeight;
+        }
+
+        @Override
+        public double getAverageBucketHeight() {
+            return scanBuckets().averageHeight();
+        }
+
+        @Override
+        public long[] getComparisonHistogram() {
+            StatsCounter counter = stats;
+            return counter == null ? new long[StatsCounter.HISTOGRAM_SIZE] : counter.comparisons.clone();
+        }
+
+        @Override
+        public long getOperations() {
+            StatsCounter counter = stats;
+            if (counter == null) return 0;
+            long operations = 0;
+            for (long count : counter.comparisons) {
+                operations += count;
+            }
+            return operations;
+        }
+
+        @Override
+        public long getResizeCount() {
+            StatsCounter counter = stats;
+            return counter == null ? 0 : counter.resizeCount;
+        }
+
+        @Override
+        public long getResizeNanos() {
+            StatsCounter counter = stats;
+            return counter == null ? 0 : counter.resizeNanos;
+        }
+
+        @Override
+        public boolean isStatsEnabled() {
+            return HashMap.this.isStatsEnabled();
+        }
+
+        @Override
+        public void setStatsEnabled(boolean enabled) {
+            HashMap.this.setStatsEnabled(enabled);
+        }
+
+        @Override
+        public void resetStats() {
+            if (stats != null) stats = new StatsCounter();
+        }
+    }
+
     protected static class Node<K, V> {
         int hash;
         K key;
@@ -866,6 +1963,10 @@ public class HashMap<K, V> implements Map<K, V> {
         Node<K, V> left;
         Node<K, V> right;
         Node<K, V> parent;
+        // 链表桶中的下一个节点
+        Node<K, V> next;
+        // 是否在红黑树桶中
+        boolean tree;
 
         public Node(K key, V value, Node<K, V> parent) {
             this.key = key;
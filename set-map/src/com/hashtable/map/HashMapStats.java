@@ -0,0 +1,120 @@
+package com.hashtable.map;
+
+import java.util.Arrays;
+
+/**
+ * Description: HashMap某一时刻的统计信息(快照), 创建之后不会再变化
+ * <p>
+ * 桶的结构(占用率、高度)在创建快照时扫描整个哈希表得到; 比较次数、扩容次数和耗时只有开启统计之后才会累计.
+ * 桶的高度指的是在这个桶中查找一个key最多需要比较的次数: 链表桶就是链表的长度,
+ * 红黑树桶是从根节点往下走的节点数加上最后那个节点冲突链表的长度.
+ *
+ * @author guizy
+ * @date 2026/10/18 16:00
+ */
+public class HashMapStats {
+
+    private final int size;
+    private final int capacity;
+    private final int occupiedBuckets;
+    private final int treeBuckets;
+    private final int maxBucketHeight;
+    private final double averageBucketHeight;
+    private final long[] comparisonHistogram;
+    private final long resizeCount;
+    private final long resizeNanos;
+
+    HashMapStats(int size, int capacity, int occupiedBuckets, int treeBuckets, int maxBucketHeight,
+                 double averageBucketHeight, long[] comparisonHistogram, long resizeCount, long resizeNanos) {
+        this.size = size;
+        this.capacity = capacity;
+        this.occupiedBuckets = occupiedBuckets;
+        this.treeBuckets = treeBuckets;
+        this.maxBucketHeight = maxBucketHeight;
+        this.averageBucketHeight = averageBucketHeight;
+        this.comparisonHistogram = comparisonHistogram;
+        this.resizeCount = resizeCount;
+        this.resizeNanos = resizeNanos;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getOccupiedBuckets() {
+        return occupiedBuckets;
+    }
+
+    /**
+     * 非空的桶占所有桶的比例
+     */
+    public double getOccupiedBucketRatio() {
+        return capacity == 0 ? 0 : (double) occupiedBuckets / capacity;
+    }
+
+    /**
+     * 转换成红黑树的桶的数量
+     */
+    public int getTreeBuckets() {
+        return treeBuckets;
+    }
+
+    public int getMaxBucketHeight() {
+        return maxBucketHeight;
+    }
+
+    /**
+     * 非空桶的平均高度
+     */
+    public double getAverageBucketHeight() {
+        return averageBucketHeight;
+    }
+
+    /**
+     * 每次查找、添加时比较key的次数的分布: 第0个元素是比较0次(空桶)的次数, 第i个元素是比较[2^(i-1), 2^i)次的次数
+     */
+    public long[] getComparisonHistogram() {
+        return comparisonHistogram.clone();
+    }
+
+    /**
+     * 统计到的查找、添加总次数
+     */
+    public long getOperations() {
+        long operations = 0;
+        for (long count : comparisonHistogram) {
+            operations += count;
+        }
+        return operations;
+    }
+
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    /**
+     * 扩容(包括渐进式扩容中每一步迁移)的总耗时
+     */
+    public long getResizeNanos() {
+        return resizeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "HashMapStats{" +
+                "size=" + size +
+                ", capacity=" + capacity +
+                ", occupiedBucketRatio=" + String.format("%.3f", getOccupiedBucketRatio()) +
+                ", treeBuckets=" + treeBuckets +
+                ", maxBucketHeight=" + maxBucketHeight +
+                ", averageBucketHeight=" + String.format("%.3f", averageBucketHeight) +
+                ", comparisonHistogram=" + Arrays.toString(comparisonHistogram) +
+                ", resizeCount=" + resizeCount +
+                ", resizeMillis=" + resizeNanos / 1000_000.0 +
+                '}';
+    }
+}
@@ -0,0 +1,43 @@
+package com.hashtable.map;
+
+/**
+ * Description: 通过JMX查看HashMap的统计信息, 由HashMap.registerStatsMBean注册
+ * 比较次数、扩容次数和耗时直接读取计数器; 桶的占用率、高度相关的属性每次读取都要扫描整个哈希表
+ *
+ * @author guizy
+ * @date 2026/10/18 16:00
+ */
+public interface HashMapStatsMXBean {
+
+    int getSize();
+
+    int getCapacity();
+
+    double getOccupiedBucketRatio();
+
+    int getTreeBuckets();
+
+    int getMaxBucketHeight();
+
+    double getAverageBucketHeight();
+
+    long[] getComparisonHistogram();
+
+    /**
+     * 统计到的查找、添加总次数
+     */
+    long getOperations();
+
+    long getResizeCount();
+
+    long getResizeNanos();
+
+    boolean isStatsEnabled();
+
+    void setStatsEnabled(boolean enabled);
+
+    /**
+     * 清空累计的比较次数、扩容次数和耗时
+     */
+    void resetStats();
+}
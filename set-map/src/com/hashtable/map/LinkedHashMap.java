@@ -4,6 +4,9 @@ import java.util.Objects;
 
 /**
  * Description: 实现LinkedHashMap
+ * <p>
+ * 默认按添加顺序遍历; 开启访问顺序(accessOrder)后, get命中、put覆盖都会把节点挪到链表尾部, first就是最久没有访问的节点.
+ * 每次put之后会检查淘汰策略(最大数量、最大权重、removeEldestEntry), 从first开始淘汰, 可以直接当作LRU缓存使用.
  *
  * @author guizy1
  * @date 2020/12/24 11:02
@@ -12,11 +15,162 @@ public class LinkedHashMap<K, V> extends HashMap<K, V> {
     private LinkedNode<K, V> first;
     private LinkedNode<K, V> last;
 
+    // true: 按访问顺序; false: 按添加顺序
+    private final boolean accessOrder;
+    // 最多存放多少个键值对, 0表示不限制
+    private int maxEntries;
+    // 所有键值对的权重之和最大是多少, weigher为null表示不限制
+    private long maxWeight;
+    private Weigher<K, V> weigher;
+    private long totalWeight;
+
+    public LinkedHashMap() {
+        this.accessOrder = false;
+    }
+
+    public LinkedHashMap(int expectedSize) {
+        super(expectedSize);
+        this.accessOrder = false;
+    }
+
+    public LinkedHashMap(int expectedSize, float loadFactor) {
+        this(expectedSize, loadFactor, false);
+    }
+
+    /**
+     * @param expectedSize 预计存放的键值对数量
+     * @param loadFactor   装载因子
+     * @param accessOrder  true: 按访问顺序(LRU); false: 按添加顺序
+     */
+    public LinkedHashMap(int expectedSize, float loadFactor, boolean accessOrder) {
+        super(expectedSize, loadFactor);
+        this.accessOrder = accessOrder;
+    }
+
+    /**
+     * 最多存放maxEntries个键值对, 超过了就从最老的开始淘汰
+     *
+     * @param maxEntries 0表示不限制
+     */
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        evict();
+    }
+
+    /**
+     * 所有键值对的权重之和最大为maxWeight, 超过了就从最老的开始淘汰;
+     * 单个键值对的权重就超过maxWeight的话, 它自己也会被淘汰
+     *
+     * @param maxWeight
+     * @param weigher   计算键值对的权重, 为null表示不限制
+     */
+    public void setMaxWeight(long maxWeight, Weigher<K, V> weigher) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("maxWeight must not be negative");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        // 重新计算所有键值对的权重
+        totalWeight = 0;
+        for (LinkedNode<K, V> node = first; node != null; node = node.after) {
+            node.weight = weigh(node);
+            totalWeight += node.weight;
+        }
+        evict();
+    }
+
+    public long totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * 最老的key(链表头部): 添加顺序下是最早添加的, 访问顺序下是最久没有访问的
+     *
+     * @return Map为空时返回null
+     */
+    public K eldestKey() {
+        return first == null ? null : first.key;
+    }
+
+    /**
+     * 每次put之后调用, 返回true就淘汰最老的键值对(first); 子类可以重写, 实现自己的淘汰策略
+     *
+     * @param key   最老的key
+     * @param value 最老的value
+     * @return 是否淘汰
+     */
+    protected boolean removeEldestEntry(K key, V value) {
+        return false;
+    }
+
+    /**
+     * 计算键值对的权重
+     */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
     @Override
     public void clear() {
         super.clear();
         first = null;
         last = null;
+        totalWeight = 0;
+    }
+
+    @Override
+    protected void afterNodeAccess(Node<K, V> node) {
+        LinkedNode<K, V> linkedNode = (LinkedNode<K, V>) node;
+        // value可能变了, 重新计算权重
+        if (weigher != null) {
+            int weight = weigh(linkedNode);
+            totalWeight += weight - linkedNode.weight;
+            linkedNode.weight = weight;
+        }
+        if (!accessOrder || linkedNode == last) return;
+        // 挪到链表尾部
+        LinkedNode<K, V> prev = linkedNode.before;
+        LinkedNode<K, V> next = linkedNode.after;
+        if (prev == null) {
+            first = next;
+        } else {
+            prev.after = next;
+        }
+        next.before = prev;
+        linkedNode.before = last;
+        linkedNode.after = null;
+        last.after = linkedNode;
+        last = linkedNode;
+    }
+
+    @Override
+    protected void afterPutEntry() {
+        evict();
+    }
+
+    /**
+     * 超出限制的话, 从最老的键值对开始淘汰
+     */
+    private void evict() {
+        while (first != null && ((maxEntries > 0 && size() > maxEntries)
+                || (weigher != null && totalWeight > maxWeight))) {
+            // 按key删除, 渐进式扩容时会先迁移key所在的旧桶
+            remove(first.key);
+        }
+        if (first != null && removeEldestEntry(first.key, first.value)) {
+            remove(first.key);
+        }
+    }
+
+    private int weigh(LinkedNode<K, V> node) {
+        int weight = weigher.weigh(node.key, node.value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight must not be negative");
+        }
+        return weight;
     }
 
     @Override
@@ -25,50 +179,56 @@ public class LinkedHashMap<K, V> extends HashMap<K, V> {
         LinkedNode<K, V> node2 = (LinkedNode<K, V>) removeNode;
 
         if (node1 != node2) {
+            // node1的键值对已经被node2的覆盖, 权重也跟着交换
+            int weight = node1.weight;
+            node1.weight = node2.weight;
+            node2.weight = weight;
+
             // 交换linkedWillNode和linkedRemovedNode在链表中的位置
-            // 交换prev
-            LinkedNode<K, V> tmp = node1.prev;
-            node1.prev = node2.prev;
-            node2.prev = tmp;
-            if (node1.prev == null) {
+            // 交换before
+            LinkedNode<K, V> tmp = node1.before;
+            node1.before = node2.before;
+            node2.before = tmp;
+            if (node1.before == null) {
                 first = node1;
             } else {
-                node1.prev.next = node1;
+                node1.before.after = node1;
             }
-            if (node2.prev == null) {
+            if (node2.before == null) {
                 first = node2;
             } else {
-                node2.prev.next = node2;
+                node2.before.after = node2;
             }
 
-            // 交换next
-            tmp = node1.next;
-            node1.next = node2.next;
-            node2.next = tmp;
-            if (node1.next == null) {
+            // 交换after
+            tmp = node1.after;
+            node1.after = node2.after;
+            node2.after = tmp;
+            if (node1.after == null) {
                 last = node1;
             } else {
-                node1.next.prev = node1;
+                node1.after.before = node1;
             }
-            if (node2.next == null) {
+            if (node2.after == null) {
                 last = node2;
             } else {
-                node2.next.prev = node2;
+                node2.after.before = node2;
             }
         }
 
-        LinkedNode<K, V> prev = node2.prev;
-        LinkedNode<K, V> next = node2.next;
+        totalWeight -= node2.weight;
+        LinkedNode<K, V> prev = node2.before;
+        LinkedNode<K, V> next = node2.after;
         if (prev == null) {
             first = next;
         } else {
-            prev.next = next;
+            prev.after = next;
         }
 
         if (next == null) {
             last = prev;
         } else {
-            next.prev = prev;
+            next.before = prev;
         }
     }
 
@@ -76,8 +236,8 @@ public class LinkedHashMap<K, V> extends HashMap<K, V> {
     public boolean containsValue(V value) {
         LinkedNode<K, V> node = first;
         while (node != null) {
-            if (Objects.equals(value, node.value)) return false;
-            node = node.next;
+            if (Objects.equals(value, node.value)) return true;
+            node = node.after;
         }
         return false;
     }
@@ -88,26 +248,99 @@ public class LinkedHashMap<K, V> extends HashMap<K, V> {
         LinkedNode<K, V> node = first;
         while (node != null) {
             if (visitor.visit(node.key, node.value)) return;
-            node = node.next;
+            node = node.after;
+        }
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        return new LinkedCursor();
+    }
+
+    /**
+     * 按照链表顺序(添加顺序或访问顺序)遍历; 访问顺序下, 遍历过程中get会改变顺序
+     */
+    private class LinkedCursor implements Cursor<K, V> {
+        private LinkedNode<K, V> next;
+        private LinkedNode<K, V> current;
+
+        LinkedCursor() {
+            reset();
+        }
+
+        @Override
+        public boolean next() {
+            if (next == null) return false;
+            current = next;
+            next = current.after;
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return current().key;
+        }
+
+        @Override
+        public V value() {
+            return current().value;
+        }
+
+        @Override
+        public void remove() {
+            LinkedNode<K, V> node = current();
+            LinkedHashMap.this.remove(node);
+            /*
+             * 删除度为2的红黑树节点时, 实际删除的是它的前驱节点, 两个节点会交换在链表中的位置(afterChildRemove);
+             * 如果被删除的前驱节点刚好是下一个要访问的节点, 它的键值对已经挪到了current中, 下一个就访问current
+             */
+            if (next != null && !linked(next)) next = node;
+            current = null;
+        }
+
+        @Override
+        public void reset() {
+            // 删除节点时需要根据哈希值定位到table中的桶, 所以先把渐进式扩容迁移完
+            finishMigration();
+            next = first;
+            current = null;
+        }
+
+        private LinkedNode<K, V> current() {
+            if (current == null) throw new IllegalStateException("no current entry");
+            return current;
         }
     }
 
+    /**
+     * 节点是否还在链表中
+     */
+    private boolean linked(LinkedNode<K, V> node) {
+        return node.before == null ? first == node : node.before.after == node;
+    }
+
     @Override
     protected Node<K, V> createNode(K key, V value, Node<K, V> parent) {
         LinkedNode<K, V> node = new LinkedNode<>(key, value, parent);
+        if (weigher != null) {
+            node.weight = weigh(node);
+            totalWeight += node.weight;
+        }
         if (first == null) {
             first = last = node;
         } else {
-            last.next = node;
-            node.prev = last;
+            last.after = node;
+            node.before = last;
             last = node;
         }
         return node;
     }
 
     private static class LinkedNode<K, V> extends Node<K, V> {
-        private LinkedNode<K, V> prev;
-        private LinkedNode<K, V> next;
+        private LinkedNode<K, V> before;
+        private LinkedNode<K, V> after;
+        // 开启了最大权重限制时, 这个键值对的权重(int刚好能放进对象对齐的空隙中, 不会增加节点的大小)
+        private int weight;
 
         public LinkedNode(K key, V value, Node<K, V> parent) {
             super(key, value, parent);
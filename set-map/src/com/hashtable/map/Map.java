@@ -25,9 +25,27 @@ public interface Map<K, V> {
 
     void traversal(Visitor<K, V> visitor); //元素遍历
 
+    Cursor<K, V> cursor(); //游标遍历, 可以随时停止, 可以在遍历过程中删除
+
     public static abstract class Visitor<K, V> {
         boolean stop;
 
         public abstract boolean visit(K key, V value);
     }
+
+    /**
+     * 游标: 整个遍历过程只使用这一个游标对象, 不会为每个元素创建对象; reset之后可以重复使用
+     * 遍历过程中只能通过游标的remove删除元素, 不能直接修改Map
+     */
+    public interface Cursor<K, V> {
+        boolean next(); //移动到下一个元素, 没有下一个元素返回false
+
+        K key();
+
+        V value();
+
+        void remove(); //删除当前元素
+
+        void reset(); //回到起点, 重新遍历
+    }
 }
@@ -0,0 +1,620 @@
+package com.hashtable.map;
+
+import java.util.Objects;
+
+/**
+ * Description: 不可变的HashMap, 使用哈希数组映射前缀树(HAMT, Hash Array Mapped Trie)实现
+ * <p>
+ * 哈希值每5位一层, 每个节点最多32个分支; 节点中用一个int位图(bitmap)记录哪些分支存在, 数组中只存放存在的分支,
+ * 分支在数组中的下标 = 位图中比它低的1的个数(Integer.bitCount). 每个分支要么是一个键值对, 要么是下一层的节点;
+ * 哈希值完全相同的key放在冲突节点(CollisionNode)中.
+ * <p>
+ * with/without不会修改原来的Map, 只复制从根节点到修改位置这一条路径上的节点(最多7个), 其余节点新旧版本共用(结构共享).
+ * 所以拿到一个版本就是拿到了一个一致的快照, 读取不需要加锁; 写入方把新版本发布到volatile变量或AtomicReference即可.
+ * <p>
+ * 批量修改时使用asTransient()得到Transient: 它创建的节点带有自己的edit标记, 再次修改这些节点时直接原地修改, 不用再复制,
+ * 修改完调用persistent()得到新的不可变版本.
+ *
+ * @author guizy
+ * @date 2026/10/18 20:30
+ */
+@SuppressWarnings("all")
+public final class PersistentHashMap<K, V> implements Map<K, V> {
+
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(0, null);
+    // 数组中key的位置存放SUBNODE, 表示value的位置存放的是下一层节点
+    private static final Object SUBNODE = new Object();
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // 7层位图节点 + 1层冲突节点
+    private static final int MAX_DEPTH = 8;
+
+    private final int size;
+    private final Node root;
+
+    private PersistentHashMap(int size, Node root) {
+        this.size = size;
+        this.root = root;
+    }
+
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 添加(覆盖)键值对, 返回新版本, 原来的版本不变
+     */
+    public PersistentHashMap<K, V> with(K key, V value) {
+        Result result = new Result();
+        Node newRoot = (root == null ? BitmapNode.EMPTY : root).put(null, 0, hash(key), key, value, result);
+        if (newRoot == root) return this;
+        return new PersistentHashMap<>(result.added ? size + 1 : size, newRoot);
+    }
+
+    /**
+     * 删除键值对, 返回新版本, 原来的版本不变
+     */
+    public PersistentHashMap<K, V> without(K key) {
+        if (root == null) return this;
+        Result result = new Result();
+        Node newRoot = root.remove(null, 0, hash(key), key, result);
+        if (!result.removed) return this;
+        return new PersistentHashMap<>(size - 1, newRoot);
+    }
+
+    /**
+     * 基于这个版本开始批量修改
+     */
+    public Transient<K, V> asTransient() {
+        return new Transient<>(size, root);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public V get(K key) {
+        return root == null ? null : (V) root.find(0, hash(key), key, null);
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return root != null && root.find(0, hash(key), key, SUBNODE) != SUBNODE;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        return containsValue(root, value);
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        traversal(root, visitor);
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        return new TrieCursor(root) {
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException("PersistentHashMap is immutable");
+            }
+        };
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("PersistentHashMap is immutable");
+    }
+
+    @Override
+    public V put(K key, V value) {
+        throw new UnsupportedOperationException("PersistentHashMap is immutable, use with()");
+    }
+
+    @Override
+    public V remove(K key) {
+        throw new UnsupportedOperationException("PersistentHashMap is immutable, use without()");
+    }
+
+    /**
+     * 可以原地修改的版本, 只能在一个线程中使用; persistent()之后就不能再修改了
+     */
+    public static final class Transient<K, V> implements Map<K, V> {
+        // 这个Transient创建的节点都带有edit标记, 可以原地修改; 为null表示已经调用过persistent()
+        private Object edit = new Object();
+        private int size;
+        private Node root;
+
+        private Transient(int size, Node root) {
+            this.size = size;
+            this.root = root;
+        }
+
+        /**
+         * 结束修改, 返回不可变的版本
+         */
+        public PersistentHashMap<K, V> persistent() {
+            ensureEditable();
+            edit = null;
+            return size == 0 ? EMPTY : new PersistentHashMap<>(size, root);
+        }
+
+        @Override
+        public int size() {
+            ensureEditable();
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public void clear() {
+            ensureEditable();
+            size = 0;
+            root = null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            ensureEditable();
+            Result result = new Result();
+            root = (root == null ? BitmapNode.EMPTY : root).put(edit, 0, hash(key), key, value, result);
+            if (result.added) size++;
+            return (V) result.oldValue;
+        }
+
+        @Override
+        public V get(K key) {
+            ensureEditable();
+            return root == null ? null : (V) root.find(0, hash(key), key, null);
+        }
+
+        @Override
+        public V remove(K key) {
+            ensureEditable();
+            if (root == null) return null;
+            Result result = new Result();
+            root = root.remove(edit, 0, hash(key), key, result);
+            if (!result.removed) return null;
+            size--;
+            return (V) result.oldValue;
+        }
+
+        @Override
+        public boolean containsKey(K key) {
+            ensureEditable();
+            return root != null && root.find(0, hash(key), key, SUBNODE) != SUBNODE;
+        }
+
+        @Override
+        public boolean containsValue(V value) {
+            ensureEditable();
+            return PersistentHashMap.containsValue(root, value);
+        }
+
+        @Override
+        public void traversal(Visitor<K, V> visitor) {
+            ensureEditable();
+            PersistentHashMap.traversal(root, visitor);
+        }
+
+        /**
+         * 换一个新的edit标记, 之前的节点都不能再原地修改了, 游标遍历的是当前版本的快照;
+         * 通过游标删除时会复制路径上的节点, 不会影响正在遍历的节点
+         */
+        @Override
+        public Cursor<K, V> cursor() {
+            ensureEditable();
+            edit = new Object();
+            return new TrieCursor(root) {
+                @Override
+                public void remove() {
+                    Transient.this.remove((K) key());
+                }
+            };
+        }
+
+        private void ensureEditable() {
+            if (edit == null) throw new IllegalStateException("transient used after persistent()");
+        }
+    }
+
+    /**
+     * 修改的结果
+     */
+    private static class Result {
+        boolean added;
+        boolean removed;
+        Object oldValue;
+    }
+
+    private static abstract class Node {
+        // 创建这个节点的Transient的edit标记, 不可变的节点为null
+        final Object edit;
+
+        Node(Object edit) {
+            this.edit = edit;
+        }
+
+        /**
+         * @return 找不到返回notFound
+         */
+        abstract Object find(int shift, int hash, Object key, Object notFound);
+
+        abstract Node put(Object edit, int shift, int hash, Object key, Object value, Result result);
+
+        /**
+         * @return 删除之后节点为空返回null
+         */
+        abstract Node remove(Object edit, int shift, int hash, Object key, Result result);
+
+        /**
+         * 键值对和子节点交替存放的数组
+         */
+        abstract Object[] array();
+
+        /**
+         * array()中有效的长度
+         */
+        abstract int length();
+
+        /**
+         * 只剩下一个键值对(没有子节点)时, 可以直接放到父节点中
+         */
+        boolean isSingleEntry() {
+            return length() == 2 && array()[0] != SUBNODE;
+        }
+
+        boolean editable(Object edit) {
+            return edit != null && this.edit == edit;
+        }
+    }
+
+    /**
+     * 位图节点
+     */
+    private static final class BitmapNode extends Node {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        int bitmap;
+        Object[] array;
+
+        BitmapNode(Object edit, int bitmap, Object[] array) {
+            super(edit);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return notFound;
+            int i = index(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == SUBNODE) return ((Node) v).find(shift + BITS, hash, key, notFound);
+            return Objects.equals(key, k) ? v : notFound;
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, Object key, Object value, Result result) {
+            int bit = bitpos(hash, shift);
+            int i = index(bit);
+            if ((bitmap & bit) != 0) {
+                Object k = array[i];
+                Object v = array[i + 1];
+                if (k == SUBNODE) {
+                    Node node = ((Node) v).put(edit, shift + BITS, hash, key, value, result);
+                    return node == v ? this : set(edit, i + 1, node);
+                }
+                if (Objects.equals(key, k)) {
+                    result.oldValue = v;
+                    return v == value ? this : set(edit, i + 1, value);
+                }
+                // 分支被另一个key占用, 两个key一起放到下一层
+                result.added = true;
+                Node node = createNode(edit, shift + BITS, hash(k), k, v, hash, key, value);
+                BitmapNode editable = ensureEditable(edit);
+                editable.array[i] = SUBNODE;
+                editable.array[i + 1] = node;
+                return editable;
+            }
+
+            result.added = true;
+            int length = length();
+            Object[] newArray = new Object[length + 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            newArray[i] = key;
+            newArray[i + 1] = value;
+            System.arraycopy(array, i, newArray, i + 2, length - i);
+            if (editable(edit)) {
+                array = newArray;
+                bitmap |= bit;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap | bit, newArray);
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, Object key, Result result) {
+            int bit = bitpos(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int i = index(bit);
+            Object k = array[i];
+            Object v = array[i + 1];
+            if (k == SUBNODE) {
+                Node node = ((Node) v).remove(edit, shift + BITS, hash, key, result);
+                if (node == v) return this;
+                if (node == null) return removePair(edit, bit, i);
+                // 子节点只剩一个键值对, 收回到这一层, 保证树的形状只取决于其中的key
+                if (node.isSingleEntry()) {
+                    BitmapNode editable = ensureEditable(edit);
+                    editable.array[i] = node.array()[0];
+                    editable.array[i + 1] = node.array()[1];
+                    return editable;
+                }
+                return set(edit, i + 1, node);
+            }
+            if (!Objects.equals(key, k)) return this;
+            result.removed = true;
+            result.oldValue = v;
+            return removePair(edit, bit, i);
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+
+        @Override
+        int length() {
+            return Integer.bitCount(bitmap) << 1;
+        }
+
+        private Node removePair(Object edit, int bit, int i) {
+            if (bitmap == bit) return null;
+            int length = length();
+            Object[] newArray = new Object[length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, length - i - 2);
+            if (editable(edit)) {
+                array = newArray;
+                bitmap ^= bit;
+                return this;
+            }
+            return new BitmapNode(edit, bitmap ^ bit, newArray);
+        }
+
+        private BitmapNode set(Object edit, int i, Object value) {
+            BitmapNode editable = ensureEditable(edit);
+            editable.array[i] = value;
+            return editable;
+        }
+
+        /**
+         * 可以原地修改就返回自己, 否则返回一个副本
+         */
+        private BitmapNode ensureEditable(Object edit) {
+            if (editable(edit)) return this;
+            return new BitmapNode(edit, bitmap, array.clone());
+        }
+
+        /**
+         * 分支在数组中的下标
+         */
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) << 1;
+        }
+    }
+
+    /**
+     * 哈希值完全相同的key, 线性查找
+     */
+    private static final class CollisionNode extends Node {
+        final int hash;
+        Object[] array;
+
+        CollisionNode(Object edit, int hash, Object[] array) {
+            super(edit);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key, Object notFound) {
+            int i = indexOf(key);
+            return i < 0 ? notFound : array[i + 1];
+        }
+
+        @Override
+        Node put(Object edit, int shift, int hash, Object key, Object value, Result result) {
+            if (hash != this.hash) {
+                // 哈希值不同, 在这一层套一个位图节点
+                Node node = new BitmapNode(edit, bitpos(this.hash, shift), new Object[]{SUBNODE, this});
+                return node.put(edit, shift, hash, key, value, result);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                result.oldValue = array[i + 1];
+                if (array[i + 1] == value) return this;
+                Object[] newArray = editable(edit) ? array : array.clone();
+                newArray[i + 1] = value;
+                return editable(edit) ? this : new CollisionNode(edit, hash, newArray);
+            }
+            result.added = true;
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            if (editable(edit)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(edit, hash, newArray);
+        }
+
+        @Override
+        Node remove(Object edit, int shift, int hash, Object key, Result result) {
+            int i = indexOf(key);
+            if (i < 0) return this;
+            result.removed = true;
+            result.oldValue = array[i + 1];
+            if (array.length == 2) return null;
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, i);
+            System.arraycopy(array, i + 2, newArray, i, array.length - i - 2);
+            if (editable(edit)) {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(edit, hash, newArray);
+        }
+
+        @Override
+        Object[] array() {
+            return array;
+        }
+
+        @Override
+        int length() {
+            return array.length;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (Objects.equals(key, array[i])) return i;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * 两个key放到shift层的新节点中
+     */
+    private static Node createNode(Object edit, int shift, int h1, Object k1, Object v1, int h2, Object k2, Object v2) {
+        if (h1 == h2) return new CollisionNode(edit, h1, new Object[]{k1, v1, k2, v2});
+        Result result = new Result();
+        return BitmapNode.EMPTY.put(edit, shift, h1, k1, v1, result).put(edit, shift, h2, k2, v2, result);
+    }
+
+    /**
+     * 深度优先遍历; 节点数组不会被修改(Transient创建游标时会更换edit标记), 所以只需要记录每一层的数组和下标
+     */
+    private static abstract class TrieCursor implements Cursor {
+        private final Node root;
+        private final Object[][] arrays = new Object[MAX_DEPTH][];
+        private final int[] indexes = new int[MAX_DEPTH];
+        private final int[] lengths = new int[MAX_DEPTH];
+        private int depth;
+        private Object key;
+        private Object value;
+        private boolean hasCurrent;
+
+        TrieCursor(Node root) {
+            this.root = root;
+            reset();
+        }
+
+        @Override
+        public boolean next() {
+            while (depth >= 0) {
+                int i = indexes[depth];
+                if (i >= lengths[depth]) {
+                    depth--;
+                    continue;
+                }
+                Object[] array = arrays[depth];
+                indexes[depth] = i + 2;
+                if (array[i] == SUBNODE) {
+                    push((Node) array[i + 1]);
+                    continue;
+                }
+                key = array[i];
+                value = array[i + 1];
+                hasCurrent = true;
+                return true;
+            }
+            key = null;
+            value = null;
+            hasCurrent = false;
+            return false;
+        }
+
+        @Override
+        public Object key() {
+            if (!hasCurrent) throw new IllegalStateException("no current entry");
+            return key;
+        }
+
+        @Override
+        public Object value() {
+            if (!hasCurrent) throw new IllegalStateException("no current entry");
+            return value;
+        }
+
+        @Override
+        public void reset() {
+            depth = -1;
+            hasCurrent = false;
+            if (root != null) push(root);
+        }
+
+        private void push(Node node) {
+            depth++;
+            arrays[depth] = node.array();
+            lengths[depth] = node.length();
+            indexes[depth] = 0;
+        }
+    }
+
+    private static boolean containsValue(Node root, Object value) {
+        Cursor cursor = new TrieCursor(root) {
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        while (cursor.next()) {
+            if (Objects.equals(value, cursor.value())) return true;
+        }
+        return false;
+    }
+
+    private static void traversal(Node root, Visitor visitor) {
+        if (visitor == null) return;
+        Cursor cursor = new TrieCursor(root) {
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        while (cursor.next()) {
+            // 返回为true, 就停止遍历
+            if (visitor.visit(cursor.key(), cursor.value())) return;
+        }
+    }
+
+    private static int bitpos(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * 扰动计算哈希值
+     */
+    private static int hash(Object key) {
+        if (key == null) return 0;
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,319 @@
+package com.hashtable.map;
+
+import java.util.Objects;
+
+/**
+ * Description: 使用开放定址法(线性探测 + Robin Hood)实现的HashMap
+ * <p>
+ * 和HashMap不同, 这里没有Node节点, key、value、hash分别存放在3个平行数组中, 同一个索引就是一个键值对.
+ * 发生冲突时向后线性探测; 插入时如果当前槽位元素的探测距离比待插入元素小(更"富"), 就把槽位让给待插入元素("劫富济贫"),
+ * 这样所有元素的探测距离都比较平均, 查找时一旦探测距离超过了槽位元素的探测距离, 就可以确定key不存在.
+ * 删除时不使用墓碑标记, 而是把后面的元素依次向前挪一位(backward shift), 表中永远没有"已删除"的槽位.
+ *
+ * @author guizy
+ * @date 2026/10/18 10:00
+ */
+@SuppressWarnings("all")
+public class RobinHoodHashMap<K, V> implements Map<K, V> {
+
+    private static final int DEFAULT_CAPACITY = 1 << 4;
+    // 装载因子, 开放定址法对装载因子比较敏感, 超过75%就扩容
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    // hashes数组中0表示空槽位, 所以存储的哈希值最高位统一置为1, 保证不为0
+    private static final int OCCUPIED = 0x80000000;
+
+    private int size;
+    // 3个平行数组, 同一个索引位置就是一个键值对
+    private int[] hashes;
+    private Object[] keys;
+    private Object[] values;
+
+    public RobinHoodHashMap() {
+        hashes = new int[DEFAULT_CAPACITY];
+        keys = new Object[DEFAULT_CAPACITY];
+        values = new Object[DEFAULT_CAPACITY];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) return;
+        size = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = 0;
+            keys[i] = null;
+            values[i] = null;
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        resize();
+
+        int mask = hashes.length - 1;
+        int h = hash(key);
+        int index = h & mask;
+        int dist = 0; // 当前携带元素的探测距离
+        for (; ; ) {
+            int h2 = hashes[index];
+            // 空槽位, 直接放入
+            if (h2 == 0) {
+                hashes[index] = h;
+                keys[index] = key;
+                values[index] = value;
+                size++;
+                return null;
+            }
+            // 找到相同的key, 覆盖
+            if (h2 == h && Objects.equals(key, keys[index])) {
+                V oldValue = (V) values[index];
+                keys[index] = key;
+                values[index] = value;
+                return oldValue;
+            }
+            // 槽位元素比较"富"(探测距离更小), 根据Robin Hood规则, key不可能在后面出现了, 抢占这个槽位
+            int dist2 = distance(h2, index, mask);
+            if (dist2 < dist) {
+                insert(h, key, value, index, dist);
+                size++;
+                return null;
+            }
+            index = (index + 1) & mask;
+            dist++;
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        int index = index(key);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    @Override
+    public V remove(K key) {
+        int index = index(key);
+        return index < 0 ? null : removeAt(index);
+    }
+
+    /**
+     * 删除index位置的元素
+     *
+     * @param index
+     * @return 被删除的value
+     */
+    private V removeAt(int index) {
+        V oldValue = (V) values[index];
+        size--;
+
+        // 后移删除(backward shift): 把后面探测距离大于0的元素依次往前挪一位
+        int mask = hashes.length - 1;
+        int next = (index + 1) & mask;
+        while (hashes[next] != 0 && distance(hashes[next], next, mask) > 0) {
+            hashes[index] = hashes[next];
+            keys[index] = keys[next];
+            values[index] = values[next];
+            index = next;
+            next = (next + 1) & mask;
+        }
+        hashes[index] = 0;
+        keys[index] = null;
+        values[index] = null;
+        return oldValue;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return index(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        if (size == 0) return false;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] != 0 && Objects.equals(value, values[i])) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (size == 0 || visitor == null) return;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] == 0) continue;
+            // 返回为true, 就停止遍历
+            if (visitor.visit((K) keys[i], (V) values[i])) return;
+        }
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        return new RobinHoodCursor();
+    }
+
+    /**
+     * 从一个空槽位的后面开始, 绕一圈遍历所有的槽位
+     * 后移删除只会在一个簇(连续的非空槽位)内部挪动元素, 簇不会跨过这个空槽位, 所以不会重复或者遗漏元素
+     */
+    private class RobinHoodCursor implements Cursor<K, V> {
+        private int start;
+        // 已经检查过的槽位数量
+        private int count;
+        private int current;
+
+        RobinHoodCursor() {
+            reset();
+        }
+
+        @Override
+        public boolean next() {
+            int mask = hashes.length - 1;
+            while (count < hashes.length) {
+                int index = (start + 1 + count++) & mask;
+                if (hashes[index] != 0) {
+                    current = index;
+                    return true;
+                }
+            }
+            current = -1;
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return (K) keys[current()];
+        }
+
+        @Override
+        public V value() {
+            return (V) values[current()];
+        }
+
+        @Override
+        public void remove() {
+            removeAt(current());
+            // 后面的元素往前挪到了current位置, 需要重新检查这个槽位
+            count--;
+            current = -1;
+        }
+
+        @Override
+        public void reset() {
+            // 装载因子小于1, 肯定有空槽位
+            start = 0;
+            while (hashes[start] != 0) {
+                start++;
+            }
+            count = 0;
+            current = -1;
+        }
+
+        private int current() {
+            if (current < 0) throw new IllegalStateException("no current entry");
+            return current;
+        }
+    }
+
+    /**
+     * 从index位置开始, 用Robin Hood规则插入一个肯定不存在的元素
+     *
+     * @param h     元素的哈希值
+     * @param key
+     * @param value
+     * @param index 开始插入的位置
+     * @param dist  元素在index位置时的探测距离
+     */
+    private void insert(int h, Object key, Object value, int index, int dist) {
+        int mask = hashes.length - 1;
+        for (; ; ) {
+            int h2 = hashes[index];
+            if (h2 == 0) {
+                hashes[index] = h;
+                keys[index] = key;
+                values[index] = value;
+                return;
+            }
+            int dist2 = distance(h2, index, mask);
+            if (dist2 < dist) {
+                // 交换, 然后继续为被挤出来的元素寻找位置
+                Object k2 = keys[index];
+                Object v2 = values[index];
+                hashes[index] = h;
+                keys[index] = key;
+                values[index] = value;
+                h = h2;
+                key = k2;
+                value = v2;
+                dist = dist2;
+            }
+            index = (index + 1) & mask;
+            dist++;
+        }
+    }
+
+    /**
+     * 根据key找到所在的槽位
+     *
+     * @param key
+     * @return 槽位的索引, 不存在返回-1
+     */
+    private int index(K key) {
+        int mask = hashes.length - 1;
+        int h = hash(key);
+        int index = h & mask;
+        for (int dist = 0; ; dist++) {
+            int h2 = hashes[index];
+            // 遇到空槽位, 或者探测距离已经超过槽位元素的探测距离, 说明key不存在
+            if (h2 == 0 || dist > distance(h2, index, mask)) return -1;
+            if (h2 == h && Objects.equals(key, keys[index])) return index;
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * 哈希值为h的元素存放在index位置时, 距离它理想位置的探测距离
+     */
+    private int distance(int h, int index, int mask) {
+        return (index - (h & mask)) & mask;
+    }
+
+    /**
+     * 扩容
+     */
+    private void resize() {
+        if (size < hashes.length * DEFAULT_LOAD_FACTOR) return;
+        int[] oldHashes = hashes;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int capacity = oldHashes.length << 1;
+        hashes = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] == 0) continue;
+            // 挪动过来的元素肯定没有相同的key, 不用equals比较
+            insert(oldHashes[i], oldKeys[i], oldValues[i], oldHashes[i] & mask, 0);
+        }
+    }
+
+    /**
+     * 扰动计算哈希值, 并把最高位置为1(0表示空槽位)
+     *
+     * @param key
+     * @return
+     */
+    private int hash(K key) {
+        if (key == null) return OCCUPIED;
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) | OCCUPIED;
+    }
+}
@@ -0,0 +1,319 @@
+package com.hashtable.map;
+
+import java.util.Objects;
+
+/**
+ * Description: Swiss Table风格的HashMap
+ * <p>
+ * 每个槽位对应一个控制字节(control byte): 最高位为1表示空(EMPTY)或已删除(DELETED), 最高位为0表示已占用,
+ * 低7位存放哈希值的一个片段(h2). 槽位按16个一组(group), 查找时先用哈希值的高位(h1)定位到组,
+ * 再一次性比较整组16个控制字节, 只有h2相同的槽位才需要去比较key; 组内存在EMPTY就说明key不存在.
+ * <p>
+ * 控制字节8个一组打包在long中, 用位运算(SWAR, 一个寄存器内的SIMD)同时比较8个字节, 一个组就是2个long,
+ * 不需要依赖jdk.incubator.vector模块.
+ *
+ * @author guizy
+ * @date 2026/10/18 11:00
+ */
+@SuppressWarnings("all")
+public class SwissHashMap<K, V> implements Map<K, V> {
+
+    // 一个组中的槽位个数
+    private static final int GROUP_WIDTH = 16;
+    private static final int DEFAULT_CAPACITY = GROUP_WIDTH;
+    // 最多使用7/8的槽位, 多出来的1/8保证每次探测都能遇到EMPTY
+    private static final float DEFAULT_LOAD_FACTOR = 0.875f;
+
+    // 控制字节
+    private static final long EMPTY = 0x80;
+    private static final long DELETED = 0xFE;
+
+    private static final long LSBS = 0x0101010101010101L;
+    private static final long MSBS = 0x8080808080808080L;
+
+    private int size;
+    // 还能使用多少个EMPTY槽位, 为0时扩容(或者清理DELETED)
+    private int growthLeft;
+    // 控制字节, 每个long存放8个槽位的控制字节
+    private long[] ctrl;
+    private Object[] keys;
+    private Object[] values;
+
+    public SwissHashMap() {
+        init(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0 && growthLeft == maxLoad(keys.length)) return;
+        init(keys.length);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int h = hash(key);
+        int index = find(key, h);
+        if (index >= 0) {
+            V oldValue = (V) values[index];
+            keys[index] = key;
+            values[index] = value;
+            return oldValue;
+        }
+
+        index = findInsertSlot(h);
+        if (growthLeft == 0 && ctrlAt(index) == EMPTY) {
+            resize();
+            index = findInsertSlot(h);
+        }
+        if (ctrlAt(index) == EMPTY) growthLeft--;
+        setCtrl(index, h & 0x7F);
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        int index = find(key, hash(key));
+        return index < 0 ? null : (V) values[index];
+    }
+
+    @Override
+    public V remove(K key) {
+        int index = find(key, hash(key));
+        return index < 0 ? null : removeAt(index);
+    }
+
+    /**
+     * 删除index位置的元素
+     *
+     * @param index
+     * @return 被删除的value
+     */
+    private V removeAt(int index) {
+        V oldValue = (V) values[index];
+        keys[index] = null;
+        values[index] = null;
+        size--;
+
+        // 组内还有EMPTY, 说明之前的探测不会越过这个组, 可以直接置为EMPTY; 否则只能置为DELETED(墓碑)
+        int group = index & ~(GROUP_WIDTH - 1);
+        if (matchEmpty(group) != 0) {
+            setCtrl(index, EMPTY);
+            growthLeft++;
+        } else {
+            setCtrl(index, DELETED);
+        }
+        return oldValue;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return find(key, hash(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        if (size == 0) return false;
+        for (int i = 0; i < keys.length; i++) {
+            if (isFull(i) && Objects.equals(value, values[i])) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (size == 0 || visitor == null) return;
+        for (int i = 0; i < keys.length; i++) {
+            if (!isFull(i)) continue;
+            if (visitor.visit((K) keys[i], (V) values[i])) return;
+        }
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        return new SwissCursor();
+    }
+
+    /**
+     * 按顺序遍历所有的槽位; 删除只修改控制字节, 不会挪动元素
+     */
+    private class SwissCursor implements Cursor<K, V> {
+        private int index;
+        private int current = -1;
+
+        @Override
+        public boolean next() {
+            while (index < keys.length) {
+                if (isFull(index)) {
+                    current = index++;
+                    return true;
+                }
+                index++;
+            }
+            current = -1;
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return (K) keys[current()];
+        }
+
+        @Override
+        public V value() {
+            return (V) values[current()];
+        }
+
+        @Override
+        public void remove() {
+            removeAt(current());
+            current = -1;
+        }
+
+        @Override
+        public void reset() {
+            index = 0;
+            current = -1;
+        }
+
+        private int current() {
+            if (current < 0) throw new IllegalStateException("no current entry");
+            return current;
+        }
+    }
+
+    /**
+     * 查找key所在的槽位
+     *
+     * @return 槽位的索引, 不存在返回-1
+     */
+    private int find(K key, int h) {
+        int groupMask = keys.length / GROUP_WIDTH - 1;
+        int group = (h >>> 7) & groupMask;
+        long pattern = LSBS * (h & 0x7F);
+        // 三角数探测: 依次跳过1、2、3...个组, 组数为2的幂时可以遍历到所有组
+        for (int step = 1; ; step++) {
+            int base = group * GROUP_WIDTH;
+            // 一次比较整组的控制字节, 得到所有h2相同的槽位
+            for (int i = 0; i < GROUP_WIDTH; i += 8) {
+                long match = matchByte(ctrl[(base + i) >>> 3], pattern);
+                while (match != 0) {
+                    int index = base + i + (Long.numberOfTrailingZeros(match) >>> 3);
+                    if (Objects.equals(key, keys[index])) return index;
+                    match &= match - 1;
+                }
+            }
+            if (matchEmpty(base) != 0) return -1;
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * 沿着探测序列找到第一个EMPTY或者DELETED槽位
+     */
+    private int findInsertSlot(int h) {
+        int groupMask = keys.length / GROUP_WIDTH - 1;
+        int group = (h >>> 7) & groupMask;
+        for (int step = 1; ; step++) {
+            int base = group * GROUP_WIDTH;
+            for (int i = 0; i < GROUP_WIDTH; i += 8) {
+                // 最高位为1的就是EMPTY或DELETED
+                long match = ctrl[(base + i) >>> 3] & MSBS;
+                if (match != 0) return base + i + (Long.numberOfTrailingZeros(match) >>> 3);
+            }
+            group = (group + step) & groupMask;
+        }
+    }
+
+    /**
+     * 找出word中等于pattern的字节, 对应字节的最高位为1
+     * (只可能在真正匹配的字节后面出现误报, 调用者会再比较key, 不影响正确性)
+     */
+    private static long matchByte(long word, long pattern) {
+        long x = word ^ pattern;
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * 组中是否有EMPTY槽位: EMPTY(0x80)最高位为1且次高位为0, DELETED(0xFE)次高位为1
+     */
+    private long matchEmpty(int base) {
+        long w1 = ctrl[base >>> 3];
+        long w2 = ctrl[(base >>> 3) + 1];
+        return (w1 & ~(w1 << 1) & MSBS) | (w2 & ~(w2 << 1) & MSBS);
+    }
+
+    private boolean isFull(int index) {
+        return (ctrlAt(index) & 0x80) == 0;
+    }
+
+    private long ctrlAt(int index) {
+        return (ctrl[index >>> 3] >>> ((index & 7) << 3)) & 0xFF;
+    }
+
+    private void setCtrl(int index, long b) {
+        int shift = (index & 7) << 3;
+        long word = ctrl[index >>> 3];
+        ctrl[index >>> 3] = (word & ~(0xFFL << shift)) | (b << shift);
+    }
+
+    /**
+     * 扩容; 如果DELETED比较多, 原容量重新整理一遍即可
+     */
+    private void resize() {
+        long[] oldCtrl = ctrl;
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldSize = size;
+        int capacity = oldSize >= maxLoad(oldKeys.length) / 2 ? oldKeys.length << 1 : oldKeys.length;
+        init(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ((((oldCtrl[i >>> 3] >>> ((i & 7) << 3)) & 0x80)) != 0) continue;
+            // 挪动过来的元素肯定没有相同的key, 直接放到第一个空槽位
+            int h = hash((K) oldKeys[i]);
+            int index = findInsertSlot(h);
+            setCtrl(index, h & 0x7F);
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+            growthLeft--;
+        }
+        size = oldSize;
+    }
+
+    private void init(int capacity) {
+        ctrl = new long[capacity >>> 3];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        // 所有控制字节都是EMPTY
+        for (int i = 0; i < ctrl.length; i++) {
+            ctrl[i] = MSBS;
+        }
+        size = 0;
+        growthLeft = maxLoad(capacity);
+    }
+
+    private int maxLoad(int capacity) {
+        return (int) (capacity * DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * 计算哈希值; 乘以黄金分割常数让高位、低位都充分混合, 低7位作为h2, 其余作为h1
+     */
+    private int hash(K key) {
+        if (key == null) return 0;
+        int hash = key.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
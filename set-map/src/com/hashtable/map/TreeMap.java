@@ -153,6 +153,64 @@ public class TreeMap<K, V> implements Map<K, V> {
         traversal(node.right, visitor);
     }
 
+    @Override
+    public Cursor<K, V> cursor() {
+        return new TreeCursor();
+    }
+
+    /**
+     * 中序遍历, 每次通过后继节点找到下一个节点
+     */
+    private class TreeCursor implements Cursor<K, V> {
+        private Node<K, V> next;
+        private Node<K, V> current;
+
+        TreeCursor() {
+            reset();
+        }
+
+        @Override
+        public boolean next() {
+            if (next == null) return false;
+            current = next;
+            next = successor(current);
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return current().key;
+        }
+
+        @Override
+        public V value() {
+            return current().value;
+        }
+
+        @Override
+        public void remove() {
+            // 删除度为2的节点时, 被删除的是已经访问过的前驱节点, 后继节点next不受影响
+            TreeMap.this.remove(current());
+            current = null;
+        }
+
+        @Override
+        public void reset() {
+            next = root;
+            if (next != null) {
+                while (next.left != null) {
+                    next = next.left;
+                }
+            }
+            current = null;
+        }
+
+        private Node<K, V> current() {
+            if (current == null) throw new IllegalStateException("no current entry");
+            return current;
+        }
+    }
+
     private boolean valEquals(V v1, V v2) {
         // 如果v1==null,说明为true, 走v2==null, v2等于null的话, 说明v1和v2相等, v2不等于空的话, 返回false
         // 如果v1!=null, 直接判断v1.equals(v2)是否相等
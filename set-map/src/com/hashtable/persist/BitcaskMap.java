@@ -0,0 +1,1001 @@
+package com.hashtable.persist;
+
+import com.hashtable.map.HashMap;
+import com.hashtable.map.Map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Description: Bitcask风格的日志结构存储
+ * <p>
+ * 所有的put/remove都追加写入当前的活动数据文件(<id>.data), 写满maxFileSize之后换一个新的文件, 旧文件不再修改;
+ * 内存中的keydir(HashMap)记录每个key最新的记录在哪个文件、哪个位置、有多长, 读取时一次定位读就可以取出整条记录.
+ * 记录: crc32(4) seq(8) keySize(4) valueSize(4) key value, 删除记录的valueSize为-1. seq是全局递增的序号,
+ * 合并之后新文件中记录的顺序和写入顺序不同, 重建keydir时按seq判断哪条记录更新.
+ * <p>
+ * 合并(merge): 把除活动文件之外的所有文件中仍然有效的记录复制到新文件中, 同时为新文件生成提示文件(<id>.hint,
+ * 每个key一条: seq offset size key, 不包含value), 然后删除旧文件; 启动时有提示文件的数据文件只需要读提示文件就能重建keydir.
+ * 失效的字节超过mergeRatio时, 在后台线程中自动合并. 合并时先写merge.commit(要删除的旧文件), 再把新文件改名生效,
+ * 中途崩溃的话, 启动时根据merge.commit完成合并, 或者丢弃没有完成的新文件.
+ * <p>
+ * 读写锁: 读操作可以并发, 写操作和合并时更新keydir互斥. 记录只有在sync或者close之后才保证在磁盘上.
+ *
+ * @author guizy
+ * @date 2026/10/19 00:00
+ */
+@SuppressWarnings("all")
+public class BitcaskMap<K, V> implements Map<K, V>, Closeable {
+    // crc seq keySize valueSize
+    private static final int RECORD_HEADER_SIZE = 20;
+    // seq offset size keySize
+    private static final int HINT_HEADER_SIZE = 24;
+    private static final int TOMBSTONE = -1;
+    private static final long DEFAULT_MAX_FILE_SIZE = 64L << 20;
+    private static final double DEFAULT_MERGE_RATIO = 0.5;
+    private static final String DATA = ".data";
+    private static final String HINT = ".hint";
+    // 合并中还没有生效的文件的后缀
+    private static final String MERGING = ".merge";
+    private static final String COMMIT = "merge.commit";
+
+    /**
+     * keydir中的一项: key最新的记录的位置
+     */
+    private static class Entry {
+        int fileId;
+        long offset;
+        // 整条记录的字节数, 重建keydir时-1表示已经删除
+        int size;
+        long seq;
+
+        Entry(int fileId, long offset, int size, long seq) {
+            this.fileId = fileId;
+            this.offset = offset;
+            this.size = size;
+            this.seq = seq;
+        }
+    }
+
+    private final File dir;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final HashMap<K, Entry> keydir = new HashMap<>();
+    private final HashMap<Integer, FileChannel> files = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(1 << 12);
+    private FileChannel active;
+    private int activeId;
+    private long activeSize;
+    private int nextFileId;
+    private long nextSeq;
+    // 所有数据文件的总字节数, 其中有效记录的字节数
+    private long totalBytes;
+    private long liveBytes;
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+    private double mergeRatio = DEFAULT_MERGE_RATIO;
+    private boolean merging;
+    private final Condition mergeDone = lock.writeLock().newCondition();
+    private IOException mergeFailure;
+    private boolean closed;
+
+    /**
+     * 打开目录中的数据文件, 重建keydir
+     */
+    public BitcaskMap(File dir, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        if (keyCodec == null || valueCodec == null) {
+            throw new IllegalArgumentException("codecs must not be null");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create directory: " + dir);
+        }
+        this.dir = dir;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        try {
+            recoverMerge();
+            load();
+            // 每次启动都写一个新的活动文件, 不往旧文件(可能已经有提示文件)后面追加
+            activeId = nextFileId++;
+            active = open(activeId, DATA);
+            files.put(activeId, active);
+        } catch (IOException | RuntimeException e) {
+            closeFiles();
+            throw e;
+        }
+    }
+
+    /**
+     * 数据文件超过bytes字节就换一个新的活动文件
+     */
+    public void setMaxFileSize(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("maxFileSize must be positive");
+        }
+        lock.writeLock().lock();
+        try {
+            this.maxFileSize = bytes;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 失效的字节占总字节数的比例超过ratio, 换活动文件时自动在后台合并; 0表示不自动合并
+     */
+    public void setMergeRatio(double ratio) {
+        if (ratio < 0 || ratio > 1) {
+            throw new IllegalArgumentException("mergeRatio must be in [0, 1]");
+        }
+        lock.writeLock().lock();
+        try {
+            this.mergeRatio = ratio;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 所有数据文件的总字节数
+     */
+    public long diskSize() {
+        lock.readLock().lock();
+        try {
+            return totalBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 数据文件的数量
+     */
+    public int fileCount() {
+        lock.readLock().lock();
+        try {
+            return files.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keydir.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * 为每个key追加一条删除记录, 旧记录在下一次合并时回收
+     */
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Cursor<K, Entry> cursor = keydir.cursor();
+            while (cursor.next()) {
+                liveBytes -= cursor.value().size;
+                appendRecord(cursor.key(), null);
+                cursor.remove();
+            }
+            rotateIfFull();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key and value must not be null");
+        }
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Entry old = keydir.get(key);
+            V oldValue = old == null ? null : readValue(old);
+            long offset = activeSize;
+            long seq = nextSeq;
+            int size = appendRecord(key, value);
+            Entry entry = new Entry(activeId, offset, size, seq);
+            keydir.put(key, entry);
+            liveBytes += size - (old == null ? 0 : old.size);
+            rotateIfFull();
+            return oldValue;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) return null;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Entry entry = keydir.get(key);
+            return entry == null ? null : readValue(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        if (key == null) return null;
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            Entry old = keydir.get(key);
+            if (old == null) return null;
+            V oldValue = readValue(old);
+            appendRecord(key, null);
+            keydir.remove(key);
+            liveBytes -= old.size;
+            rotateIfFull();
+            return oldValue;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        if (key == null) return false;
+        lock.readLock().lock();
+        try {
+            return keydir.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 需要读出所有的value, 很慢
+     */
+    @Override
+    public boolean containsValue(V value) {
+        if (value == null) return false;
+        boolean[] found = new boolean[1];
+        traversal(new Visitor<K, V>() {
+            @Override
+            public boolean visit(K key, V v) {
+                found[0] = Objects.equals(value, v);
+                return found[0];
+            }
+        });
+        return found[0];
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Cursor<K, Entry> cursor = keydir.cursor();
+            while (cursor.next()) {
+                // 返回为true, 就停止遍历
+                if (visitor.visit(cursor.key(), readValue(cursor.value()))) return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 遍历过程中其他线程不能修改Map
+     */
+    @Override
+    public Cursor<K, V> cursor() {
+        Cursor<K, Entry> cursor = keydir.cursor();
+        return new Cursor<K, V>() {
+            @Override
+            public boolean next() {
+                return cursor.next();
+            }
+
+            @Override
+            public K key() {
+                return cursor.key();
+            }
+
+            @Override
+            public V value() {
+                lock.readLock().lock();
+                try {
+                    return readValue(cursor.value());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public void remove() {
+                lock.writeLock().lock();
+                try {
+                    ensureOpen();
+                    liveBytes -= cursor.value().size;
+                    appendRecord(cursor.key(), null);
+                    cursor.remove();
+                    rotateIfFull();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            @Override
+            public void reset() {
+                cursor.reset();
+            }
+        };
+    }
+
+    /**
+     * 把活动文件刷到磁盘
+     */
+    public void sync() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            active.force(false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 等正在进行的合并停下来, 刷盘, 关闭所有文件
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            // 合并发现closed之后会放弃, 等它放弃完
+            while (merging) {
+                mergeDone.awaitUninterruptibly();
+            }
+            active.force(false);
+            if (activeSize == 0) {
+                active.close();
+                files.remove(activeId);
+                Files.deleteIfExists(file(activeId, DATA).toPath());
+            }
+        } finally {
+            closeFiles();
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ------------------------------------写入-------------------------------------------
+
+    /**
+     * 追加一条记录到活动文件, 调用者持有写锁
+     *
+     * @param value 为null表示删除记录
+     * @return 记录的字节数
+     */
+    private int appendRecord(K key, V value) throws IOException {
+        int keySize = keyCodec.size(key);
+        int valueSize = value == null ? TOMBSTONE : valueCodec.size(value);
+        int size = RECORD_HEADER_SIZE + keySize + Math.max(valueSize, 0);
+        if (writeBuffer.capacity() < size) {
+            writeBuffer = ByteBuffer.allocate(Math.max(size, writeBuffer.capacity() << 1));
+        }
+        ByteBuffer buffer = writeBuffer;
+        buffer.clear();
+        buffer.position(4);
+        buffer.putLong(nextSeq++).putInt(keySize).putInt(valueSize);
+        keyCodec.write(buffer, key);
+        if (value != null) valueCodec.write(buffer, value);
+        crc.reset();
+        crc.update(buffer.array(), 4, size - 4);
+        buffer.putInt(0, (int) crc.getValue());
+        buffer.flip();
+        writeFully(active, buffer, activeSize);
+        activeSize += size;
+        totalBytes += size;
+        return size;
+    }
+
+    /**
+     * 活动文件写满了就换一个新的, 失效的字节太多就开始后台合并
+     */
+    private void rotateIfFull() throws IOException {
+        if (activeSize < maxFileSize) return;
+        rotate();
+        if (!merging && mergeRatio > 0 && totalBytes - liveBytes >= totalBytes * mergeRatio) {
+            merging = true;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        doMerge();
+                    } catch (IOException e) {
+                        // 下一次调用merge()时抛出
+                        mergeFailure = e;
+                    }
+                }
+            }, "bitcask-merge");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 换一个新的活动文件, 调用者持有写锁
+     */
+    private void rotate() throws IOException {
+        if (activeSize == 0) return;
+        active.force(false);
+        activeId = nextFileId++;
+        active = open(activeId, DATA);
+        activeSize = 0;
+        files.put(activeId, active);
+    }
+
+    // ------------------------------------读取-------------------------------------------
+
+    /**
+     * 一次定位读取整条记录, 校验crc之后解码value, 调用者持有读锁或者写锁
+     */
+    private V readValue(Entry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.size);
+        readFully(files.get(entry.fileId), buffer, entry.offset);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, entry.size - 4);
+        if ((int) crc.getValue() != buffer.getInt(0)) {
+            throw new IOException("checksum mismatch in file " + entry.fileId + " at " + entry.offset);
+        }
+        buffer.position(RECORD_HEADER_SIZE + buffer.getInt(12));
+        return valueCodec.read(buffer);
+    }
+
+    // ------------------------------------合并-------------------------------------------
+
+    /**
+     * 立即合并(在当前线程中), 已经有合并在进行就直接返回
+     *
+     * @return 是否进行了合并
+     */
+    public boolean merge() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            if (mergeFailure != null) {
+                IOException e = mergeFailure;
+                mergeFailure = null;
+                throw e;
+            }
+            if (merging) return false;
+            merging = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        doMerge();
+        return true;
+    }
+
+    /**
+     * 1.换一个新的活动文件, 除它之外的所有文件都参与合并
+     * 2.顺序读取旧文件, 记录在keydir中仍然有效(keydir指向这条记录)就复制到新文件(.merge)中, 同时写提示文件;
+     * 复制之后在写锁中确认keydir仍然指向旧位置, 再改为指向新位置, 期间被覆盖或者删除的key不改
+     * 3.新文件刷盘之后写merge.commit, 再把新文件改名生效, 最后删除旧文件和merge.commit
+     */
+    private void doMerge() throws IOException {
+        int[] inputs;
+        lock.writeLock().lock();
+        try {
+            rotate();
+            inputs = new int[files.size() - 1];
+            int n = 0;
+            Cursor<Integer, FileChannel> cursor = files.cursor();
+            while (cursor.next()) {
+                if (cursor.key() != activeId) inputs[n++] = cursor.key();
+            }
+            Arrays.sort(inputs);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        MergeOutput output = null;
+        ArrayList<MergeOutput> outputs = new ArrayList<>();
+        boolean committed = false;
+        try {
+            // 已经复制、还没有在keydir中更新的记录: key、旧位置、新位置
+            ArrayList<K> keys = new ArrayList<>();
+            ArrayList<Long> offsets = new ArrayList<>();
+            ArrayList<Entry> moved = new ArrayList<>();
+            for (int fileId : inputs) {
+                RecordScanner scanner = new RecordScanner(channel(fileId));
+                while (scanner.next()) {
+                    if (scanner.valueSize == TOMBSTONE) continue;
+                    K key = keyCodec.read(scanner.key());
+                    if (!isLive(key, fileId, scanner.offset)) continue;
+                    if (output == null || output.size >= maxFileSize) {
+                        output = newOutput();
+                        outputs.add(output);
+                    }
+                    keys.add(key);
+                    offsets.add(scanner.offset);
+                    moved.add(output.append(scanner));
+                    // 一批记录复制完, 再统一更新keydir, 减少加写锁的次数
+                    if (keys.size() == 1024) {
+                        relocate(keys, offsets, moved, fileId);
+                    }
+                }
+                relocate(keys, offsets, moved, fileId);
+            }
+            for (MergeOutput out : outputs) {
+                out.finish();
+            }
+            commitMerge(inputs, outputs);
+            committed = true;
+        } finally {
+            if (!committed) {
+                // 没有完成的合并, 新文件作废; keydir指向新文件的项已经在磁盘上, 只是还没有改名
+                abortMerge(outputs);
+            }
+            lock.writeLock().lock();
+            try {
+                merging = false;
+                mergeDone.signalAll();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * keydir是否仍然指向这条记录
+     */
+    private boolean isLive(K key, int fileId, long offset) throws IOException {
+        lock.readLock().lock();
+        try {
+            if (closed) throw new IOException("BitcaskMap closed during merge");
+            Entry entry = keydir.get(key);
+            return entry != null && entry.fileId == fileId && entry.offset == offset;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把已经复制到新文件的一批记录在keydir中改为指向新位置
+     */
+    private void relocate(ArrayList<K> keys, ArrayList<Long> offsets, ArrayList<Entry> moved, int fileId) {
+        if (keys.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                Entry entry = keydir.get(keys.get(i));
+                // 复制之后被覆盖或者删除了, 新文件中的这条记录是失效的
+                if (entry == null || entry.fileId != fileId || entry.offset != offsets.get(i)) continue;
+                entry.fileId = moved.get(i).fileId;
+                entry.offset = moved.get(i).offset;
+            }
+        } finally {
+            keys.clear();
+            offsets.clear();
+            moved.clear();
+            lock.writeLock().unlock();
+        }
+    }
+
+    private MergeOutput newOutput() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) throw new IOException("BitcaskMap closed during merge");
+            MergeOutput output = new MergeOutput(nextFileId++);
+            files.put(output.fileId, output.data);
+            return output;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void commitMerge(int[] inputs, ArrayList<MergeOutput> outputs) throws IOException {
+        // merge.commit: 要删除的旧文件id
+        StringBuilder commit = new StringBuilder();
+        for (int fileId : inputs) {
+            commit.append(fileId).append('\n');
+        }
+        File tmp = new File(dir, COMMIT + ".tmp");
+        Files.write(tmp.toPath(), commit.toString().getBytes());
+        Files.move(tmp.toPath(), new File(dir, COMMIT).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        for (MergeOutput output : outputs) {
+            output.rename();
+        }
+        lock.writeLock().lock();
+        try {
+            for (int fileId : inputs) {
+                FileChannel channel = files.remove(fileId);
+                totalBytes -= channel.size();
+                channel.close();
+                Files.deleteIfExists(file(fileId, DATA).toPath());
+                Files.deleteIfExists(file(fileId, HINT).toPath());
+            }
+            for (MergeOutput output : outputs) {
+                totalBytes += output.size;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Files.delete(new File(dir, COMMIT).toPath());
+    }
+
+    private void abortMerge(ArrayList<MergeOutput> outputs) throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (MergeOutput output : outputs) {
+                // 把keydir中指向新文件的项改回去是做不到的(旧位置没有记下来), 所以新文件继续使用, 只是不写提示文件
+                output.abandonHint();
+                totalBytes += output.size;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 合并生成的一个新数据文件和它的提示文件
+     */
+    private class MergeOutput {
+        final int fileId;
+        final FileChannel data;
+        final FileChannel hint;
+        final CRC32 hintCrc = new CRC32();
+        ByteBuffer hintBuffer = ByteBuffer.allocate(1 << 16);
+        long size;
+        long hintSize;
+
+        MergeOutput(int fileId) throws IOException {
+            this.fileId = fileId;
+            this.data = open(fileId, DATA + MERGING);
+            this.hint = open(fileId, HINT + MERGING);
+        }
+
+        /**
+         * 原样复制记录(seq不变), 提示文件中记下key和新位置
+         *
+         * @return 记录的新位置
+         */
+        Entry append(RecordScanner scanner) throws IOException {
+            ByteBuffer record = scanner.record();
+            int length = record.remaining();
+            writeFully(data, record, size);
+            Entry moved = new Entry(fileId, size, length, scanner.seq);
+            int keySize = scanner.keySize;
+            if (hintBuffer.remaining() < HINT_HEADER_SIZE + keySize) {
+                flushHint();
+                if (hintBuffer.capacity() < HINT_HEADER_SIZE + keySize) {
+                    hintBuffer = ByteBuffer.allocate(HINT_HEADER_SIZE + keySize);
+                }
+            }
+            hintBuffer.putLong(scanner.seq).putLong(size).putInt(length).putInt(keySize);
+            hintBuffer.put(scanner.key());
+            size += length;
+            return moved;
+        }
+
+        private void flushHint() throws IOException {
+            hintBuffer.flip();
+            hintCrc.update(hintBuffer.duplicate());
+            int length = hintBuffer.remaining();
+            writeFully(hint, hintBuffer, hintSize);
+            hintSize += length;
+            hintBuffer.clear();
+        }
+
+        /**
+         * 提示文件最后写入crc32, 两个文件都刷到磁盘
+         */
+        void finish() throws IOException {
+            flushHint();
+            hintBuffer.putInt((int) hintCrc.getValue()).flip();
+            writeFully(hint, hintBuffer, hintSize);
+            data.force(false);
+            hint.force(false);
+            hint.close();
+        }
+
+        void rename() throws IOException {
+            Files.move(file(fileId, HINT + MERGING).toPath(), file(fileId, HINT).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(file(fileId, DATA + MERGING).toPath(), file(fileId, DATA).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        void abandonHint() throws IOException {
+            hint.close();
+            Files.deleteIfExists(file(fileId, HINT + MERGING).toPath());
+            File merging = file(fileId, DATA + MERGING);
+            if (merging.exists()) {
+                data.force(false);
+                Files.move(merging.toPath(), file(fileId, DATA).toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    // ------------------------------------启动-------------------------------------------
+
+    /**
+     * 上次合并写了merge.commit但是没有完成: 新文件改名生效, 删除旧文件; 没有merge.commit的新文件直接删除
+     */
+    private void recoverMerge() throws IOException {
+        File commit = new File(dir, COMMIT);
+        boolean committed = commit.exists();
+        File[] list = dir.listFiles();
+        for (File file : list) {
+            String name = file.getName();
+            if (!name.endsWith(MERGING)) continue;
+            if (committed) {
+                String target = name.substring(0, name.length() - MERGING.length());
+                Files.move(file.toPath(), new File(dir, target).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.delete(file.toPath());
+            }
+        }
+        if (committed) {
+            for (String line : Files.readAllLines(commit.toPath())) {
+                if (line.isEmpty()) continue;
+                int fileId = Integer.parseInt(line);
+                Files.deleteIfExists(file(fileId, DATA).toPath());
+                Files.deleteIfExists(file(fileId, HINT).toPath());
+            }
+            Files.delete(commit.toPath());
+        }
+        Files.deleteIfExists(new File(dir, COMMIT + ".tmp").toPath());
+    }
+
+    /**
+     * 按文件id顺序重建keydir: 有提示文件就读提示文件, 否则扫描数据文件; 同一个key保留seq最大的记录,
+     * 删除记录也先放在keydir中(size为-1), 防止之后读到的seq更小的旧记录把key加回来, 最后统一去掉
+     */
+    private void load() throws IOException {
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (String name : dir.list()) {
+            if (!name.endsWith(DATA)) continue;
+            try {
+                ids.add(Integer.parseInt(name.substring(0, name.length() - DATA.length())));
+            } catch (NumberFormatException e) {
+                // 不是数据文件
+            }
+        }
+        ids.sort(null);
+        for (int fileId : ids) {
+            FileChannel channel = open(fileId, DATA);
+            files.put(fileId, channel);
+            totalBytes += channel.size();
+            nextFileId = Math.max(nextFileId, fileId + 1);
+            if (!loadHint(fileId)) {
+                RecordScanner scanner = new RecordScanner(channel);
+                while (scanner.next()) {
+                    K key = keyCodec.read(scanner.key());
+                    int size = scanner.valueSize == TOMBSTONE ? TOMBSTONE : scanner.length;
+                    loadEntry(key, fileId, scanner.offset, size, scanner.seq);
+                }
+            }
+        }
+        Cursor<K, Entry> cursor = keydir.cursor();
+        while (cursor.next()) {
+            Entry entry = cursor.value();
+            if (entry.size == TOMBSTONE) {
+                cursor.remove();
+            } else {
+                liveBytes += entry.size;
+            }
+        }
+    }
+
+    private void loadEntry(K key, int fileId, long offset, int size, long seq) {
+        nextSeq = Math.max(nextSeq, seq + 1);
+        Entry entry = keydir.get(key);
+        if (entry == null) {
+            keydir.put(key, new Entry(fileId, offset, size, seq));
+        } else if (entry.seq < seq) {
+            entry.fileId = fileId;
+            entry.offset = offset;
+            entry.size = size;
+            entry.seq = seq;
+        }
+    }
+
+    /**
+     * 读取提示文件, 整个文件的crc校验不通过就返回false, 改为扫描数据文件
+     */
+    private boolean loadHint(int fileId) throws IOException {
+        File file = file(fileId, HINT);
+        if (!file.exists()) return false;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 4 || size > Integer.MAX_VALUE) return false;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer entries = buffer.duplicate();
+            entries.limit((int) size - 4);
+            CRC32 crc = new CRC32();
+            crc.update(entries.duplicate());
+            if ((int) crc.getValue() != buffer.getInt((int) size - 4)) return false;
+            while (entries.hasRemaining()) {
+                long seq = entries.getLong();
+                long offset = entries.getLong();
+                int length = entries.getInt();
+                int keySize = entries.getInt();
+                ByteBuffer key = entries.slice();
+                key.limit(keySize);
+                entries.position(entries.position() + keySize);
+                loadEntry(keyCodec.read(key), fileId, offset, length, seq);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 顺序读取一个数据文件中的记录, 遇到不完整或者crc校验不通过的记录就结束
+     */
+    private class RecordScanner {
+        private final FileChannel channel;
+        private final long fileSize;
+        private final CRC32 crc = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        // buffer[0]在文件中的位置
+        private long bufferStart;
+        private int start;
+        long offset;
+        long seq;
+        int keySize;
+        int valueSize;
+        int length;
+
+        RecordScanner(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            buffer.limit(0);
+        }
+
+        boolean next() throws IOException {
+            buffer.position(start + length);
+            start = buffer.position();
+            length = 0;
+            if (!ensure(RECORD_HEADER_SIZE)) return false;
+            int keySize = buffer.getInt(start + 12);
+            int valueSize = buffer.getInt(start + 16);
+            long end = bufferStart + start + RECORD_HEADER_SIZE + (long) keySize + Math.max(valueSize, 0);
+            if (keySize < 0 || valueSize < TOMBSTONE || end > fileSize) return false;
+            int length = (int) (end - bufferStart - start);
+            if (!ensure(length)) return false;
+            crc.reset();
+            crc.update(buffer.array(), start + 4, length - 4);
+            if ((int) crc.getValue() != buffer.getInt(start)) return false;
+            this.offset = bufferStart + start;
+            this.seq = buffer.getLong(start + 4);
+            this.keySize = keySize;
+            this.valueSize = valueSize;
+            this.length = length;
+            return true;
+        }
+
+        ByteBuffer key() {
+            ByteBuffer key = buffer.duplicate();
+            key.limit(start + RECORD_HEADER_SIZE + keySize).position(start + RECORD_HEADER_SIZE);
+            return key.slice();
+        }
+
+        ByteBuffer record() {
+            ByteBuffer record = buffer.duplicate();
+            record.limit(start + length).position(start);
+            return record.slice();
+        }
+
+        /**
+         * 保证从start开始至少有n个字节, 不够就把剩下的字节挪到开头再读
+         */
+        private boolean ensure(int n) throws IOException {
+            if (buffer.limit() - start >= n) return true;
+            buffer.position(start);
+            if (buffer.capacity() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(n);
+                bigger.put(buffer);
+                buffer = bigger;
+            } else {
+                buffer.compact();
+            }
+            bufferStart += start;
+            start = 0;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, bufferStart + buffer.position()) <= 0) break;
+            }
+            buffer.flip();
+            return buffer.limit() >= n;
+        }
+    }
+
+    // ------------------------------------工具-------------------------------------------
+
+    private File file(int fileId, String suffix) {
+        return new File(dir, fileId + suffix);
+    }
+
+    private FileChannel open(int fileId, String suffix) throws IOException {
+        return FileChannel.open(file(fileId, suffix).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private FileChannel channel(int fileId) {
+        lock.readLock().lock();
+        try {
+            return files.get(fileId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把buffer中剩下的字节写到文件的position位置
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long start = position - buffer.position();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, start + buffer.position());
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of data file");
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("BitcaskMap is closed");
+    }
+
+    private void closeFiles() throws IOException {
+        Cursor<Integer, FileChannel> cursor = files.cursor();
+        while (cursor.next()) {
+            cursor.value().close();
+        }
+        files.clear();
+    }
+}
@@ -0,0 +1,108 @@
+package com.hashtable.persist;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Description: key、value的二进制编解码
+ *
+ * @author guizy
+ * @date 2026/10/18 21:30
+ */
+public interface Codec<T> {
+
+    /**
+     * 编码之后的字节数
+     */
+    int size(T value);
+
+    /**
+     * 编码到buffer中, buffer中至少还有size(value)个字节的空间
+     */
+    void write(ByteBuffer buffer, T value);
+
+    /**
+     * 从buffer的当前位置解码
+     */
+    T read(ByteBuffer buffer);
+
+    Codec<Integer> INT = new Codec<Integer>() {
+        @Override
+        public int size(Integer value) {
+            return 4;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, Integer value) {
+            buffer.putInt(value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    };
+
+    Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public int size(Long value) {
+            return 8;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, Long value) {
+            buffer.putLong(value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    };
+
+    /**
+     * UTF-8编码, 前面4个字节是长度
+     */
+    Codec<String> STRING = new Codec<String>() {
+        @Override
+        public int size(String value) {
+            return 4 + utf8Length(value);
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+
+        @Override
+        public String read(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * 不创建byte[]计算UTF-8编码的长度
+         */
+        private int utf8Length(String value) {
+            int length = 0;
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    length++;
+                } else if (c < 0x800) {
+                    length += 2;
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                        && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    length += 4;
+                    i++;
+                } else {
+                    length += 3;
+                }
+            }
+            return length;
+        }
+    };
+}
@@ -0,0 +1,455 @@
+package com.hashtable.persist;
+
+import com.hashtable.map.Map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Description: 带预写日志(WAL, Write-Ahead Log)的Map, 重启之后可以恢复数据
+ * <p>
+ * 每次put/remove/clear先修改内存中的Map, 再把操作记录追加到日志文件, 日志刷到磁盘(fsync)之后才返回.
+ * 日志记录: length(4) crc32(4) type(1) key value, 最后一条记录写了一半(崩溃)时, crc校验不通过, 恢复时丢弃并截断.
+ * <p>
+ * 组提交(group commit): 多个线程同时写入时, 记录先放到内存缓冲区中, 由其中一个线程(leader)把缓冲区一次性写入日志并fsync,
+ * 其他线程等待; 一次fsync确认一批记录, 而不是每条记录fsync一次.
+ * <p>
+ * 检查点(checkpoint): 日志超过checkpointBytes之后, 用MapSnapshot把整个Map保存为快照, 然后清空日志,
+ * 恢复时先加载快照再重放日志, 重放的时间不会无限增长. 快照保存之后、清空日志之前崩溃的话, 日志中的操作会在快照上再重放一次,
+ * put/remove重复执行的结果不变.
+ *
+ * @author guizy
+ * @date 2026/10/18 22:30
+ */
+@SuppressWarnings("all")
+public class DurableMap<K, V> implements Map<K, V>, Closeable {
+
+    public enum SyncMode {
+        // 每个操作单独fsync
+        PER_OPERATION,
+        // 同时到达的操作合并成一次fsync
+        GROUP_COMMIT
+    }
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte CLEAR = 3;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final long DEFAULT_CHECKPOINT_BYTES = 64L << 20;
+
+    private final Map<K, V> map;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final SyncMode syncMode;
+    private final File logFile;
+    private final File checkpointFile;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private final Object lock = new Object();
+
+    // 还没有写入日志的记录
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    // leader写日志时使用的缓冲区, 和pending交替使用
+    private ByteBuffer flushing = ByteBuffer.allocate(1 << 16);
+    private boolean flushInProgress;
+    // 最后一条记录的序号, 已经刷到磁盘的记录的序号
+    private long lastSeq;
+    private long durableSeq;
+    private long logSize;
+    private long checkpointBytes = DEFAULT_CHECKPOINT_BYTES;
+    private IOException failure;
+    private boolean closed;
+
+    /**
+     * 打开目录中的日志, 加载检查点, 重放日志
+     *
+     * @param dir        存放日志和检查点的目录
+     * @param map        内存中的Map, 应该是空的
+     * @param keyCodec
+     * @param valueCodec
+     * @param syncMode   fsync的方式
+     */
+    public DurableMap(File dir, Map<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec, SyncMode syncMode) throws IOException {
+        if (map == null || keyCodec == null || valueCodec == null || syncMode == null) {
+            throw new IllegalArgumentException("map, codecs and syncMode must not be null");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create directory: " + dir);
+        }
+        this.map = map;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.syncMode = syncMode;
+        this.logFile = new File(dir, "wal.log");
+        this.checkpointFile = new File(dir, "checkpoint.bin");
+        if (checkpointFile.exists()) {
+            MapSnapshot.load(checkpointFile, map, keyCodec, valueCodec);
+        }
+        channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        logSize = replay();
+        // 丢弃最后写了一半的记录
+        channel.truncate(logSize);
+        channel.position(logSize);
+    }
+
+    /**
+     * 日志超过bytes字节就做一次检查点
+     */
+    public void setCheckpointBytes(long bytes) {
+        if (bytes <= 0) {
+            throw new IllegalArgumentException("checkpointBytes must be positive");
+        }
+        synchronized (lock) {
+            this.checkpointBytes = bytes;
+        }
+    }
+
+    /**
+     * 日志文件当前的大小
+     */
+    public long logSize() {
+        synchronized (lock) {
+            return logSize;
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (lock) {
+            return map.size();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        synchronized (lock) {
+            return map.isEmpty();
+        }
+    }
+
+    @Override
+    public void clear() {
+        long seq;
+        synchronized (lock) {
+            ensureOpen();
+            map.clear();
+            seq = append(CLEAR, null, null);
+        }
+        commit(seq);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key and value must not be null");
+        }
+        V oldValue;
+        long seq;
+        synchronized (lock) {
+            ensureOpen();
+            oldValue = map.put(key, value);
+            seq = append(PUT, key, value);
+        }
+        commit(seq);
+        return oldValue;
+    }
+
+    @Override
+    public V get(K key) {
+        synchronized (lock) {
+            return map.get(key);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        V oldValue;
+        long seq;
+        synchronized (lock) {
+            ensureOpen();
+            if (!map.containsKey(key)) return null;
+            oldValue = map.remove(key);
+            seq = append(REMOVE, key, null);
+        }
+        commit(seq);
+        return oldValue;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        synchronized (lock) {
+            return map.containsKey(key);
+        }
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        synchronized (lock) {
+            return map.containsValue(value);
+        }
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        synchronized (lock) {
+            map.traversal(visitor);
+        }
+    }
+
+    /**
+     * 遍历过程中其他线程不能修改Map
+     */
+    @Override
+    public Cursor<K, V> cursor() {
+        Cursor<K, V> cursor = map.cursor();
+        return new Cursor<K, V>() {
+            @Override
+            public boolean next() {
+                synchronized (lock) {
+                    return cursor.next();
+                }
+            }
+
+            @Override
+            public K key() {
+                return cursor.key();
+            }
+
+            @Override
+            public V value() {
+                return cursor.value();
+            }
+
+            @Override
+            public void remove() {
+                long seq;
+                synchronized (lock) {
+                    ensureOpen();
+                    K key = cursor.key();
+                    cursor.remove();
+                    seq = append(REMOVE, key, null);
+                }
+                commit(seq);
+            }
+
+            @Override
+            public void reset() {
+                synchronized (lock) {
+                    cursor.reset();
+                }
+            }
+        };
+    }
+
+    /**
+     * 把Map保存为快照, 然后清空日志
+     */
+    public void checkpoint() throws IOException {
+        synchronized (lock) {
+            ensureOpen();
+            // 等正在进行的组提交完成
+            while (flushInProgress) {
+                waitLock();
+            }
+            // 快照包含了所有的操作, 缓冲区中的记录不需要再写了
+            MapSnapshot.save(map, checkpointFile, keyCodec, valueCodec);
+            pending.clear();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+            logSize = 0;
+            durableSeq = lastSeq;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) return;
+            while (flushInProgress) {
+                waitLock();
+            }
+            if (pending.position() > 0) {
+                writeBatch(pending);
+                durableSeq = lastSeq;
+            }
+            closed = true;
+            lock.notifyAll();
+            channel.close();
+        }
+    }
+
+    /**
+     * 把记录追加到缓冲区, 调用者持有lock
+     *
+     * @return 记录的序号
+     */
+    private long append(byte type, K key, V value) {
+        int size = 1 + (key == null ? 0 : keyCodec.size(key)) + (value == null ? 0 : valueCodec.size(value));
+        ensurePending(RECORD_HEADER_SIZE + size);
+        int start = pending.position();
+        pending.position(start + RECORD_HEADER_SIZE);
+        pending.put(type);
+        if (key != null) keyCodec.write(pending, key);
+        if (value != null) valueCodec.write(pending, value);
+        int length = pending.position() - start - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(pending.array(), start + RECORD_HEADER_SIZE, length);
+        pending.putInt(start, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        return ++lastSeq;
+    }
+
+    private void ensurePending(int size) {
+        if (pending.remaining() >= size) return;
+        int capacity = pending.capacity();
+        while (capacity - pending.position() < size) {
+            capacity <<= 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        pending.flip();
+        buffer.put(pending);
+        pending = buffer;
+    }
+
+    /**
+     * 等待序号为seq的记录刷到磁盘
+     */
+    private void commit(long seq) {
+        try {
+            if (syncMode == SyncMode.PER_OPERATION) {
+                synchronized (lock) {
+                    if (durableSeq < seq) {
+                        writeBatch(pending);
+                        durableSeq = lastSeq;
+                    }
+                    maybeCheckpoint();
+                }
+                return;
+            }
+            groupCommit(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 没有其他线程在写日志, 自己就成为leader, 把缓冲区中所有的记录(包括其他线程的)写入日志并fsync;
+     * 否则等待leader完成, 如果自己的记录不在那一批中, 再竞争成为下一个leader
+     */
+    private void groupCommit(long seq) throws IOException {
+        ByteBuffer batch;
+        long upTo;
+        synchronized (lock) {
+            while (durableSeq < seq && flushInProgress) {
+                waitLock();
+            }
+            if (failure != null) throw failure;
+            if (durableSeq >= seq) return;
+            flushInProgress = true;
+            // 交换缓冲区, leader写日志时其他线程可以继续追加记录
+            batch = pending;
+            pending = flushing;
+            flushing = batch;
+            upTo = lastSeq;
+        }
+        IOException error = null;
+        try {
+            writeBatch(batch);
+        } catch (IOException e) {
+            error = e;
+        }
+        synchronized (lock) {
+            flushInProgress = false;
+            if (error != null) {
+                failure = error;
+            } else if (upTo > durableSeq) {
+                durableSeq = upTo;
+            }
+            lock.notifyAll();
+            if (error != null) throw error;
+            maybeCheckpoint();
+        }
+    }
+
+    /**
+     * 写入缓冲区中的记录并fsync, 写完清空缓冲区
+     */
+    private void writeBatch(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int bytes = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        buffer.clear();
+        synchronized (lock) {
+            logSize += bytes;
+        }
+    }
+
+    /**
+     * 调用者持有lock
+     */
+    private void maybeCheckpoint() throws IOException {
+        if (logSize >= checkpointBytes && !flushInProgress && !closed) checkpoint();
+    }
+
+    /**
+     * 重放日志
+     *
+     * @return 完整的记录的总长度
+     */
+    private long replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) return 0;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) return start;
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != expected) return start;
+            byte type = record.get();
+            if (type == PUT) {
+                K key = keyCodec.read(record);
+                map.put(key, valueCodec.read(record));
+            } else if (type == REMOVE) {
+                map.remove(keyCodec.read(record));
+            } else if (type == CLEAR) {
+                map.clear();
+            } else {
+                throw new IOException("unknown record type " + type + " at " + start);
+            }
+            buffer.position(start + RECORD_HEADER_SIZE + length);
+        }
+        return buffer.position();
+    }
+
+    private void waitLock() {
+        try {
+            lock.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for commit", e);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("DurableMap is closed");
+    }
+}
@@ -0,0 +1,335 @@
+package com.hashtable.persist;
+
+import com.hashtable.map.HashMap;
+import com.hashtable.map.Map;
+import com.map.map.TreeMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.zip.CRC32;
+
+/**
+ * Description: Map的二进制快照, 用FileChannel顺序写入, 用内存映射(MappedByteBuffer)加载
+ * <p>
+ * 文件格式(大端):
+ * 文件头: magic(4) version(4) kind(1: 0无序, 1按key升序) count(8)
+ * 然后是若干个数据块: length(4) entries(4) 键值对...(length个字节) crc32(4)
+ * 每个键值对就是key、value依次用Codec编码, 键值对不会跨越数据块, 所以可以按数据块分段映射超过2GB的文件.
+ * <p>
+ * 加载HashMap时按count预先分配好容量, 键值对直接挂到桶中, 不会扩容也不用查找重复的key; 加载TreeMap时键值对已经排好序, 直接构建平衡的红黑树, 不需要比较和旋转.
+ * 先写到临时文件, 写完再改名, 中途失败不会破坏已有的快照.
+ *
+ * @author guizy
+ * @date 2026/10/18 21:30
+ */
+@SuppressWarnings("all")
+public class MapSnapshot {
+    private static final int MAGIC = 0x534D4150; // "SMAP"
+    private static final int VERSION = 1;
+    private static final byte UNORDERED = 0;
+    private static final byte SORTED = 1;
+    private static final int HEADER_SIZE = 17;
+    // 数据块的length、entries
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int BLOCK_SIZE = 1 << 20;
+    // 一次映射的最大长度
+    private static final long WINDOW_SIZE = 1 << 30;
+
+    /**
+     * 保存哈希表(com.hashtable.map中的Map), 按遍历顺序写入
+     */
+    public static <K, V> void save(Map<K, V> map, File file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        try (Writer<K, V> writer = new Writer<>(file, UNORDERED, map.size(), keyCodec, valueCodec)) {
+            Map.Cursor<K, V> cursor = map.cursor();
+            while (cursor.next()) {
+                writer.write(cursor.key(), cursor.value());
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * 保存TreeMap, 中序遍历, 写入的键值对按key升序排列
+     */
+    public static <K, V> void save(TreeMap<K, V> map, File file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        try (Writer<K, V> writer = new Writer<>(file, SORTED, map.size(), keyCodec, valueCodec)) {
+            try {
+                map.traversal(new com.map.map.Map.Visitor<K, V>() {
+                    @Override
+                    public boolean visit(K key, V value) {
+                        try {
+                            writer.write(key, value);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        return false;
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * 加载为HashMap, 容量按照键值对的数量预先分配
+     * 快照中的key没有重复, 解码完直接填充哈希表(buildFromDistinct), 不走put的扩容检查和查找
+     */
+    public static <K, V> HashMap<K, V> loadHashMap(File file, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        try (Reader reader = new Reader(file)) {
+            K[] keys = (K[]) new Object[reader.count];
+            V[] values = (V[]) new Object[reader.count];
+            int size = 0;
+            ByteBuffer block;
+            while ((block = reader.nextBlock()) != null) {
+                for (int i = reader.blockEntries; i > 0; i--) {
+                    keys[size] = keyCodec.read(block);
+                    values[size++] = valueCodec.read(block);
+                }
+            }
+            HashMap<K, V> map = new HashMap<>(reader.count);
+            map.buildFromDistinct(keys, values);
+            return map;
+        }
+    }
+
+    /**
+     * 把快照中的键值对逐个添加到map中
+     */
+    public static <K, V> void load(File file, Map<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        try (Reader reader = new Reader(file)) {
+            load(reader, map, keyCodec, valueCodec);
+        }
+    }
+
+    private static <K, V> void load(Reader reader, Map<K, V> map, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        ByteBuffer block;
+        while ((block = reader.nextBlock()) != null) {
+            for (int i = reader.blockEntries; i > 0; i--) {
+                map.put(keyCodec.read(block), valueCodec.read(block));
+            }
+        }
+    }
+
+    /**
+     * 加载为TreeMap, 快照必须是由TreeMap保存的(按key升序)
+     */
+    public static <K, V> TreeMap<K, V> loadTreeMap(File file, Codec<K> keyCodec, Codec<V> valueCodec,
+                                                   Comparator<K> comparator) throws IOException {
+        try (Reader reader = new Reader(file)) {
+            if (reader.kind != SORTED) {
+                throw new IOException("snapshot is not sorted: " + file);
+            }
+            K[] keys = (K[]) new Object[reader.count];
+            V[] values = (V[]) new Object[reader.count];
+            int size = 0;
+            ByteBuffer block;
+            while ((block = reader.nextBlock()) != null) {
+                for (int i = reader.blockEntries; i > 0; i--) {
+                    keys[size] = keyCodec.read(block);
+                    values[size++] = valueCodec.read(block);
+                }
+            }
+            TreeMap<K, V> map = new TreeMap<>(comparator);
+            map.buildFromSorted(keys, values);
+            return map;
+        }
+    }
+
+    /**
+     * 顺序写入数据块
+     */
+    private static class Writer<K, V> implements AutoCloseable {
+        private final File file;
+        private final File tmpFile;
+        private final FileChannel channel;
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+        private final CRC32 crc = new CRC32();
+        private final long count;
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        private int blockEntries;
+        private long written;
+        private boolean committed;
+
+        Writer(File file, byte kind, long count, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+            this.file = file;
+            this.tmpFile = new File(file.getPath() + ".tmp");
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            this.count = count;
+            this.channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).put(kind).putLong(count).flip();
+            writeFully(header);
+            buffer.position(BLOCK_HEADER_SIZE);
+        }
+
+        void write(K key, V value) throws IOException {
+            if (key == null || value == null) {
+                throw new IllegalArgumentException("snapshot does not support null keys or values");
+            }
+            // 数据块最后还要写4个字节的crc
+            int size = keyCodec.size(key) + valueCodec.size(value);
+            if (buffer.remaining() < size + 4) {
+                flushBlock();
+                // 一个键值对就超过了数据块的大小, 这个数据块单独分配
+                if (buffer.remaining() < size + 4) {
+                    buffer = ByteBuffer.allocateDirect(BLOCK_HEADER_SIZE + size + 4);
+                    buffer.position(BLOCK_HEADER_SIZE);
+                }
+            }
+            keyCodec.write(buffer, key);
+            valueCodec.write(buffer, value);
+            blockEntries++;
+            written++;
+        }
+
+        /**
+         * 写完所有的数据块, 刷到磁盘, 再替换原来的文件
+         */
+        void commit() throws IOException {
+            if (written != count) {
+                throw new IllegalStateException("map was modified while saving");
+            }
+            flushBlock();
+            channel.force(true);
+            channel.close();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        private void flushBlock() throws IOException {
+            if (blockEntries == 0) return;
+            int length = buffer.position() - BLOCK_HEADER_SIZE;
+            buffer.putInt(0, length);
+            buffer.putInt(4, blockEntries);
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(BLOCK_HEADER_SIZE).limit(BLOCK_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload);
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            writeFully(buffer);
+            if (buffer.capacity() > BLOCK_SIZE) buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+            buffer.clear();
+            buffer.position(BLOCK_HEADER_SIZE);
+            blockEntries = 0;
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (committed) return;
+            channel.close();
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * 按数据块读取, 每次映射一段不超过WINDOW_SIZE的区域, 数据块不会跨越两次映射
+     */
+    private static class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final long fileSize;
+        private final CRC32 crc = new CRC32();
+        final byte kind;
+        final int count;
+        // 当前数据块中键值对的数量
+        int blockEntries;
+        private int loaded;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private long position;
+
+        Reader(File file) throws IOException {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                fileSize = channel.size();
+                ByteBuffer header = map(0, HEADER_SIZE);
+                if (header.getInt() != MAGIC) {
+                    throw new IOException("not a map snapshot: " + file);
+                }
+                int version = header.getInt();
+                if (version != VERSION) {
+                    throw new IOException("unsupported snapshot version: " + version);
+                }
+                kind = header.get();
+                long count = header.getLong();
+                if (count < 0 || count > Integer.MAX_VALUE) {
+                    throw new IOException("bad entry count: " + count);
+                }
+                this.count = (int) count;
+                position = HEADER_SIZE;
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * 下一个数据块, 校验过crc, 返回的buffer只包含键值对部分
+         *
+         * @return 没有数据块了返回null
+         */
+        ByteBuffer nextBlock() throws IOException {
+            if (loaded == count) return null;
+            ByteBuffer buffer = map(position, BLOCK_HEADER_SIZE);
+            int length = buffer.getInt();
+            blockEntries = buffer.getInt();
+            if (length < 0 || blockEntries <= 0 || blockEntries > count - loaded) {
+                throw new IOException("corrupted block at " + position);
+            }
+            buffer = map(position, BLOCK_HEADER_SIZE + length + 4);
+            buffer.position(BLOCK_HEADER_SIZE + length);
+            int expected = buffer.getInt();
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(BLOCK_HEADER_SIZE).limit(BLOCK_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("checksum mismatch in block at " + position);
+            }
+            position += BLOCK_HEADER_SIZE + length + 4;
+            loaded += blockEntries;
+            return payload.slice();
+        }
+
+        /**
+         * [start, start + length)区域, 不在当前映射中就重新映射
+         */
+        private ByteBuffer map(long start, int length) throws IOException {
+            if (start + length > fileSize) {
+                throw new IOException("truncated snapshot");
+            }
+            if (window == null || start < windowStart || start + length > windowStart + window.capacity()) {
+                long size = Math.max(length, Math.min(WINDOW_SIZE, fileSize - start));
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                windowStart = start;
+            }
+            ByteBuffer buffer = window.duplicate();
+            buffer.position((int) (start - windowStart)).limit((int) (start - windowStart) + length);
+            return buffer.slice();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
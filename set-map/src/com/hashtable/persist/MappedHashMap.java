@@ -0,0 +1,820 @@
+package com.hashtable.persist;
+
+import com.hashtable.map.Map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Description: 哈希表放在内存映射文件中的Map, 适合堆内存放不下的大量定长key
+ * <p>
+ * 哈希表(索引)使用开放定址法(线性探测), 每个槽位的宽度固定: hash(8) offset(8) valueSize(4) key(keySize),
+ * hash为0表示空槽位; value是变长的, 追加写入数据文件, 槽位中只记录它在数据文件中的位置和长度.
+ * <p>
+ * 索引由若干个段(index.0, index.1, ...)组成, 每个段是一个单独的文件: 第0段有initialCapacity个槽位,
+ * 之后每一段的槽位数量等于前面所有段的总和, 扩容时只需要新映射一段, 容量翻倍, 然后在原地重新分布旧槽位中的元素,
+ * 不需要把整个索引复制一份. 单次映射不能超过2GB, 大的段按CHUNK_BYTES分成多次映射.
+ * <p>
+ * 数据文件(data.bin)中的记录: crc32(4) valueSize(4) key value, 删除时追加一条valueSize为-1的记录,
+ * 所以数据文件本身就是完整的操作日志. flush把数据文件和索引刷到磁盘(MappedByteBuffer.force), 然后在index.meta中标记索引是完整的;
+ * 打开时如果没有这个标记(上次没有flush就崩溃了), 就丢弃索引, 扫描数据文件重建.
+ * 修改过的value在数据文件中的旧记录不会回收. 和HashMap一样, 不是线程安全的.
+ *
+ * @author guizy
+ * @date 2026/10/18 23:00
+ */
+@SuppressWarnings("all")
+public class MappedHashMap<K, V> implements Map<K, V>, Closeable {
+    private static final int MAGIC = 0x4D484D50; // "MHMP"
+    private static final int VERSION = 1;
+    private static final int META_SIZE = 37;
+    private static final int DEFAULT_INITIAL_CAPACITY = 1 << 10;
+    private static final float DEFAULT_LOAD_FACTOR = 0.75f;
+    // 最高位表示槽位非空, 次高位表示扩容过程中还没有重新放置的元素
+    private static final long OCCUPIED = 0x8000000000000000L;
+    private static final long MOVING = 0x4000000000000000L;
+    private static final long HASH_MASK = ~(OCCUPIED | MOVING);
+    private static final int HASH = 0;
+    private static final int OFFSET = 8;
+    private static final int VALUE_SIZE = 16;
+    private static final int KEY = 20;
+    // crc、valueSize
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int TOMBSTONE = -1;
+    // 一次映射的最大字节数
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    private final File dir;
+    private final int keySize;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int slotSize;
+    // 一次映射中槽位数量的位数
+    private final int chunkShift;
+    private final FileChannel data;
+    private final FileChannel meta;
+    private final CRC32 crc = new CRC32();
+    // 编码key用的缓冲区
+    private final ByteBuffer keyBuffer;
+    // 第0段槽位数量的位数
+    private int initialShift;
+    // segments[段][映射]
+    private final ArrayList<MappedByteBuffer[]> segments = new ArrayList<>();
+    private final ArrayList<FileChannel> segmentChannels = new ArrayList<>();
+    private long capacity;
+    private long size;
+    private long dataSize;
+    // 索引被修改过, 还没有flush
+    private boolean dirty;
+    private boolean closed;
+
+    /**
+     * @param dir        存放索引和数据文件的目录, 目录中已经有数据就打开它
+     * @param keySize    key编码之后的字节数, 所有的key必须一样长
+     * @param keyCodec
+     * @param valueCodec
+     */
+    public MappedHashMap(File dir, int keySize, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        this(dir, keySize, keyCodec, valueCodec, 0);
+    }
+
+    /**
+     * @param expectedSize 预计的键值对数量, 新建索引时按这个数量分配第0段, 避免逐步扩容
+     */
+    public MappedHashMap(File dir, int keySize, Codec<K> keyCodec, Codec<V> valueCodec, long expectedSize) throws IOException {
+        if (keySize <= 0 || keyCodec == null || valueCodec == null || expectedSize < 0) {
+            throw new IllegalArgumentException("keySize must be positive and codecs must not be null");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create directory: " + dir);
+        }
+        this.dir = dir;
+        this.keySize = keySize;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.slotSize = KEY + keySize;
+        this.chunkShift = 63 - Long.numberOfLeadingZeros(CHUNK_BYTES / slotSize);
+        this.keyBuffer = ByteBuffer.allocate(keySize);
+        this.initialShift = shiftFor(expectedSize);
+        data = FileChannel.open(new File(dir, "data.bin").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        meta = FileChannel.open(new File(dir, "index.meta").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (!openIndex()) {
+                rebuild();
+            }
+        } catch (IOException | RuntimeException e) {
+            closeChannels();
+            throw e;
+        }
+    }
+
+    /**
+     * 索引的槽位数量
+     */
+    public long capacity() {
+        return capacity;
+    }
+
+    /**
+     * 数据文件的大小
+     */
+    public long dataSize() {
+        return dataSize;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 键值对的数量, 可以超过int的范围
+     */
+    public long longSize() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        ensureOpen();
+        try {
+            markDirty();
+            data.truncate(0);
+            dataSize = 0;
+            size = 0;
+            // 每一段都清零, 不缩小容量
+            for (long i = 0; i < capacity; i++) {
+                setHash(i, 0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        ensureOpen();
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key and value must not be null");
+        }
+        try {
+            markDirty();
+            long h = hash(encodeKey(key));
+            long slot = find(h, keyBuffer);
+            V oldValue = null;
+            if (slot >= 0) {
+                oldValue = readValue(slot);
+            } else {
+                slot = insert(h, keyBuffer);
+            }
+            int valueSize = valueCodec.size(value);
+            setValue(slot, append(valueSize, keyBuffer, value), valueSize);
+            return oldValue;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        ensureOpen();
+        if (key == null) return null;
+        long slot = find(hash(encodeKey(key)), keyBuffer);
+        try {
+            return slot < 0 ? null : readValue(slot);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        ensureOpen();
+        if (key == null) return null;
+        long slot = find(hash(encodeKey(key)), keyBuffer);
+        if (slot < 0) return null;
+        try {
+            V oldValue = readValue(slot);
+            markDirty();
+            append(TOMBSTONE, keyBuffer, null);
+            removeAt(slot);
+            return oldValue;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        ensureOpen();
+        return key != null && find(hash(encodeKey(key)), keyBuffer) >= 0;
+    }
+
+    /**
+     * 需要读出所有的value, 很慢
+     */
+    @Override
+    public boolean containsValue(V value) {
+        ensureOpen();
+        if (value == null) return false;
+        Cursor<K, V> cursor = cursor();
+        while (cursor.next()) {
+            if (Objects.equals(value, cursor.value())) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        ensureOpen();
+        if (size == 0 || visitor == null) return;
+        try {
+            for (long i = 0; i < capacity; i++) {
+                if (hashAt(i) == 0) continue;
+                // 返回为true, 就停止遍历
+                if (visitor.visit(readKey(i), readValue(i))) return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Cursor<K, V> cursor() {
+        ensureOpen();
+        return new MappedCursor();
+    }
+
+    /**
+     * 从一个空槽位的后面开始, 绕一圈遍历所有的槽位
+     * 后移删除只会在一个簇(连续的非空槽位)内部把元素往前挪, 簇不会跨过这个空槽位, 所以不会重复或者遗漏元素
+     */
+    private class MappedCursor implements Cursor<K, V> {
+        private long start;
+        // 已经检查过的槽位数量
+        private long count;
+        private long current;
+
+        MappedCursor() {
+            reset();
+        }
+
+        @Override
+        public boolean next() {
+            while (count < capacity) {
+                long slot = (start + 1 + count++) & (capacity - 1);
+                if (hashAt(slot) != 0) {
+                    current = slot;
+                    return true;
+                }
+            }
+            current = -1;
+            return false;
+        }
+
+        @Override
+        public K key() {
+            return readKey(current());
+        }
+
+        @Override
+        public V value() {
+            try {
+                return readValue(current());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            long slot = current();
+            try {
+                markDirty();
+                ByteBuffer buffer = buffer(slot);
+                int position = position(slot);
+                keyBuffer.clear();
+                for (int i = 0; i < keySize; i++) {
+                    keyBuffer.put(buffer.get(position + KEY + i));
+                }
+                keyBuffer.flip();
+                append(TOMBSTONE, keyBuffer, null);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            removeAt(slot);
+            // 后面的元素可能挪到了current位置, 需要重新检查这个槽位
+            count--;
+            current = -1;
+        }
+
+        @Override
+        public void reset() {
+            // 装载因子小于1, 肯定有空槽位
+            start = 0;
+            while (hashAt(start) != 0) {
+                start++;
+            }
+            count = 0;
+            current = -1;
+        }
+
+        private long current() {
+            if (current < 0) throw new IllegalStateException("no current entry");
+            return current;
+        }
+    }
+
+    /**
+     * 把数据文件和索引刷到磁盘, 然后标记索引是完整的
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        if (!dirty) return;
+        data.force(false);
+        for (MappedByteBuffer[] segment : segments) {
+            for (MappedByteBuffer buffer : segment) {
+                buffer.force();
+            }
+        }
+        writeMeta(true);
+        dirty = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            flush();
+        } finally {
+            closed = true;
+            segments.clear();
+            closeChannels();
+        }
+    }
+
+    // ------------------------------------索引-------------------------------------------
+
+    /**
+     * 找到key所在的槽位, key已经编码在keyBuffer中
+     *
+     * @return 不存在返回-1
+     */
+    private long find(long h, ByteBuffer key) {
+        long mask = capacity - 1;
+        for (long slot = h & mask; ; slot = (slot + 1) & mask) {
+            long h2 = hashAt(slot);
+            if (h2 == 0) return -1;
+            if (h2 == h && keyEquals(slot, key)) return slot;
+        }
+    }
+
+    /**
+     * 放入一个不存在的key, 需要的话先扩容
+     *
+     * @return 从h对应的位置开始的第一个空槽位
+     */
+    private long insert(long h, ByteBuffer key) throws IOException {
+        if (size + 1 > (long) (capacity * DEFAULT_LOAD_FACTOR)) {
+            resize();
+        }
+        long mask = capacity - 1;
+        long slot = h & mask;
+        while (hashAt(slot) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        setHash(slot, h);
+        writeKey(slot, key);
+        size++;
+        return slot;
+    }
+
+    private void setValue(long slot, long offset, int valueSize) {
+        ByteBuffer buffer = buffer(slot);
+        int position = position(slot);
+        buffer.putLong(position + OFFSET, offset);
+        buffer.putInt(position + VALUE_SIZE, valueSize);
+    }
+
+    /**
+     * 删除slot位置的元素, 后移删除(backward shift): 后面同一个簇中的元素, 如果它的理想位置不在(slot, next]之间,
+     * 就挪到空出来的位置上, 表中永远没有"已删除"的槽位
+     */
+    private void removeAt(long slot) {
+        long mask = capacity - 1;
+        long next = slot;
+        for (; ; ) {
+            next = (next + 1) & mask;
+            long h = hashAt(next);
+            if (h == 0) break;
+            long home = h & mask;
+            // home在循环区间(slot, next]中, 元素不能往前挪到slot
+            if (slot <= next ? (slot < home && home <= next) : (slot < home || home <= next)) continue;
+            copySlot(next, slot);
+            slot = next;
+        }
+        setHash(slot, 0);
+        size--;
+    }
+
+    /**
+     * 扩容: 新映射一段, 容量翻倍, 然后在原地重新放置旧槽位中的元素
+     * 1.把所有旧元素标记为MOVING
+     * 2.依次取出MOVING元素, 从它的理想位置开始探测, 遇到空槽位就放入; 遇到MOVING槽位就和它交换,
+     * 再为换出来的元素继续探测. 已经放好的元素的探测路径上只有已经放好的元素, 不会因为之后取出MOVING元素而断开
+     */
+    private void resize() throws IOException {
+        long oldCapacity = capacity;
+        addSegment();
+        for (long i = 0; i < oldCapacity; i++) {
+            long h = hashAt(i);
+            if (h != 0) setHash(i, h | MOVING);
+        }
+        long mask = capacity - 1;
+        byte[] slot = new byte[slotSize];
+        byte[] other = new byte[slotSize];
+        for (long i = 0; i < oldCapacity; i++) {
+            if ((hashAt(i) & MOVING) == 0) continue;
+            readSlot(i, slot);
+            setHash(i, 0);
+            long h = ByteBuffer.wrap(slot).getLong(HASH) & ~MOVING;
+            for (long j = h & mask; ; j = (j + 1) & mask) {
+                long h2 = hashAt(j);
+                if (h2 == 0) {
+                    writeSlot(j, slot, h);
+                    break;
+                }
+                if ((h2 & MOVING) != 0) {
+                    readSlot(j, other);
+                    writeSlot(j, slot, h);
+                    byte[] tmp = slot;
+                    slot = other;
+                    other = tmp;
+                    h = h2 & ~MOVING;
+                    j = (h & mask) - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * 映射新的一段, 它的槽位数量等于已有的容量(第0段除外)
+     */
+    private void addSegment() throws IOException {
+        int n = segments.size();
+        long slots = n == 0 ? 1L << initialShift : capacity;
+        FileChannel channel = FileChannel.open(new File(dir, "index." + n).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long bytes = slots * slotSize;
+            if (channel.size() != bytes) {
+                // 新建的段全部是0(空槽位)
+                channel.truncate(0);
+                channel.write(ByteBuffer.allocate(1), bytes - 1);
+            }
+            long chunkSlots = 1L << chunkShift;
+            int chunks = (int) ((slots + chunkSlots - 1) >>> chunkShift);
+            MappedByteBuffer[] buffers = new MappedByteBuffer[chunks];
+            for (int c = 0; c < chunks; c++) {
+                long start = (long) c << chunkShift;
+                long length = Math.min(chunkSlots, slots - start) * slotSize;
+                buffers[c] = channel.map(FileChannel.MapMode.READ_WRITE, start * slotSize, length);
+            }
+            segments.add(buffers);
+            segmentChannels.add(channel);
+            capacity += slots;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 槽位所在的映射: 第n段(n >= 1)从initialCapacity << (n - 1)开始
+     */
+    private ByteBuffer buffer(long slot) {
+        long index = slot >>> initialShift;
+        if (index == 0) return segments.get(0)[(int) (slot >>> chunkShift)];
+        int n = 64 - Long.numberOfLeadingZeros(index);
+        long offset = slot - (1L << (initialShift + n - 1));
+        return segments.get(n)[(int) (offset >>> chunkShift)];
+    }
+
+    /**
+     * 槽位在映射中的字节位置
+     */
+    private int position(long slot) {
+        long offset = slot;
+        if ((slot >>> initialShift) != 0) {
+            offset = slot - Long.highestOneBit(slot);
+        }
+        return (int) (offset & ((1L << chunkShift) - 1)) * slotSize;
+    }
+
+    private long hashAt(long slot) {
+        return buffer(slot).getLong(position(slot) + HASH);
+    }
+
+    private void setHash(long slot, long h) {
+        buffer(slot).putLong(position(slot) + HASH, h);
+    }
+
+    private void writeKey(long slot, ByteBuffer key) {
+        ByteBuffer buffer = buffer(slot);
+        int position = position(slot) + KEY;
+        for (int i = 0; i < keySize; i++) {
+            buffer.put(position + i, key.get(i));
+        }
+    }
+
+    private boolean keyEquals(long slot, ByteBuffer key) {
+        ByteBuffer buffer = buffer(slot);
+        int position = position(slot) + KEY;
+        int i = 0;
+        for (; i + 8 <= keySize; i += 8) {
+            if (buffer.getLong(position + i) != key.getLong(i)) return false;
+        }
+        for (; i < keySize; i++) {
+            if (buffer.get(position + i) != key.get(i)) return false;
+        }
+        return true;
+    }
+
+    private void copySlot(long from, long to) {
+        byte[] bytes = new byte[slotSize];
+        readSlot(from, bytes);
+        writeSlot(to, bytes, ByteBuffer.wrap(bytes).getLong(HASH));
+    }
+
+    private void readSlot(long slot, byte[] bytes) {
+        ByteBuffer buffer = buffer(slot).duplicate();
+        buffer.position(position(slot));
+        buffer.get(bytes);
+    }
+
+    /**
+     * 写入整个槽位, 哈希值换成h
+     */
+    private void writeSlot(long slot, byte[] bytes, long h) {
+        ByteBuffer buffer = buffer(slot).duplicate();
+        int position = position(slot);
+        buffer.position(position);
+        buffer.put(bytes);
+        buffer.putLong(position + HASH, h);
+    }
+
+    private K readKey(long slot) {
+        ByteBuffer buffer = buffer(slot).duplicate();
+        int position = position(slot) + KEY;
+        buffer.position(position).limit(position + keySize);
+        return keyCodec.read(buffer.slice());
+    }
+
+    // ------------------------------------数据文件-------------------------------------------
+
+    private V readValue(long slot) throws IOException {
+        ByteBuffer buffer = buffer(slot);
+        int position = position(slot);
+        long offset = buffer.getLong(position + OFFSET);
+        int valueSize = buffer.getInt(position + VALUE_SIZE);
+        ByteBuffer value = ByteBuffer.allocate(valueSize);
+        readFully(value, offset + RECORD_HEADER_SIZE + keySize);
+        value.flip();
+        return valueCodec.read(value);
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param valueSize value的字节数, 删除记录是TOMBSTONE
+     * @return 记录在数据文件中的位置
+     */
+    private long append(int valueSize, ByteBuffer key, V value) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + keySize + Math.max(valueSize, 0));
+        record.position(4);
+        record.putInt(valueSize);
+        record.put(key.duplicate().clear());
+        if (value != null) valueCodec.write(record, value);
+        crc.reset();
+        crc.update(record.array(), 4, record.position() - 4);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+        long offset = dataSize;
+        while (record.hasRemaining()) {
+            data.write(record, offset + record.position());
+        }
+        dataSize = offset + record.limit();
+        return offset;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("unexpected end of data file");
+            }
+        }
+    }
+
+    /**
+     * 删除索引, 扫描数据文件重建, 最后写了一半或者校验不通过的记录被截断
+     */
+    private void rebuild() throws IOException {
+        for (int n = 0; ; n++) {
+            File file = new File(dir, "index." + n);
+            if (!file.exists()) break;
+            if (!file.delete()) throw new IOException("cannot delete " + file);
+        }
+        addSegment();
+        long fileSize = data.size();
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        // buffer开头在数据文件中的位置
+        long position = 0;
+        long valid = 0;
+        boolean corrupted = false;
+        while (!corrupted) {
+            buffer.clear();
+            while (buffer.hasRemaining() && data.read(buffer, position + buffer.position()) > 0) {
+            }
+            buffer.flip();
+            int consumed = 0;
+            boolean grown = false;
+            while (buffer.remaining() >= RECORD_HEADER_SIZE + keySize) {
+                int start = buffer.position();
+                int expected = buffer.getInt(start);
+                int valueSize = buffer.getInt(start + 4);
+                long end = position + start + RECORD_HEADER_SIZE + keySize + Math.max(valueSize, 0);
+                if (valueSize < TOMBSTONE || end > fileSize) {
+                    corrupted = true;
+                    break;
+                }
+                int length = (int) (end - position - start);
+                if (length > buffer.remaining()) {
+                    // 记录比缓冲区还大, 换一个大的缓冲区从这条记录开始重新读
+                    if (length > buffer.capacity()) {
+                        buffer = ByteBuffer.allocate(length);
+                        grown = true;
+                    }
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.array(), start + 4, length - 4);
+                if ((int) crc.getValue() != expected) {
+                    corrupted = true;
+                    break;
+                }
+                keyBuffer.clear();
+                keyBuffer.put(buffer.array(), start + RECORD_HEADER_SIZE, keySize);
+                replay(position + start, valueSize);
+                buffer.position(start + length);
+                consumed = start + length;
+                valid = end;
+            }
+            if (consumed == 0 && !grown) break;
+            position += consumed;
+        }
+        data.truncate(valid);
+        dataSize = valid;
+        dirty = true;
+        flush();
+    }
+
+    /**
+     * 重建索引时重放一条记录, key已经在keyBuffer中
+     */
+    private void replay(long offset, int valueSize) throws IOException {
+        long h = hash(keyBuffer);
+        long slot = find(h, keyBuffer);
+        if (valueSize == TOMBSTONE) {
+            if (slot >= 0) removeAt(slot);
+            return;
+        }
+        if (slot < 0) {
+            slot = insert(h, keyBuffer);
+        }
+        setValue(slot, offset, valueSize);
+    }
+
+    // ------------------------------------元数据-------------------------------------------
+
+    /**
+     * index.meta: magic(4) version(4) keySize(4) initialShift(4) segments(4) size(8) dataSize(8) clean(1)
+     *
+     * @return 索引是完整的, 可以直接使用
+     */
+    private boolean openIndex() throws IOException {
+        if (meta.size() < META_SIZE) return false;
+        ByteBuffer buffer = ByteBuffer.allocate(META_SIZE);
+        while (buffer.hasRemaining()) {
+            meta.read(buffer, buffer.position());
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a mapped hash map: " + dir);
+        }
+        int storedKeySize = buffer.getInt();
+        if (storedKeySize != keySize) {
+            throw new IllegalArgumentException("keySize is " + storedKeySize + ", not " + keySize);
+        }
+        initialShift = buffer.getInt();
+        int segmentCount = buffer.getInt();
+        long storedSize = buffer.getLong();
+        long storedDataSize = buffer.getLong();
+        if (buffer.get() != 1 || storedDataSize != data.size()) return false;
+        for (int n = 0; n < segmentCount; n++) {
+            addSegment();
+        }
+        size = storedSize;
+        dataSize = storedDataSize;
+        return true;
+    }
+
+    private void writeMeta(boolean clean) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(META_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(keySize).putInt(initialShift).putInt(segments.size())
+                .putLong(size).putLong(dataSize).put((byte) (clean ? 1 : 0)).flip();
+        while (buffer.hasRemaining()) {
+            meta.write(buffer, buffer.position());
+        }
+        meta.force(false);
+    }
+
+    /**
+     * 第一次修改之前, 在index.meta中标记索引不完整
+     */
+    private void markDirty() throws IOException {
+        if (dirty) return;
+        writeMeta(false);
+        dirty = true;
+    }
+
+    // ------------------------------------工具-------------------------------------------
+
+    /**
+     * 把key编码到keyBuffer中
+     */
+    private ByteBuffer encodeKey(K key) {
+        if (keyCodec.size(key) != keySize) {
+            throw new IllegalArgumentException("key must be encoded to " + keySize + " bytes: " + key);
+        }
+        keyBuffer.clear();
+        keyCodec.write(keyBuffer, key);
+        keyBuffer.flip();
+        return keyBuffer;
+    }
+
+    /**
+     * 根据编码之后的key计算哈希值(不能用hashCode, 它在不同的JVM进程中可能不同), 最高位置为1
+     */
+    private long hash(ByteBuffer key) {
+        long h = 0x9E3779B97F4A7C15L;
+        int i = 0;
+        for (; i + 8 <= keySize; i += 8) {
+            h = (h ^ key.getLong(i)) * 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 32;
+        }
+        for (; i < keySize; i++) {
+            h = (h ^ key.get(i)) * 0xC4CEB9FE1A85EC53L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (h & HASH_MASK) | OCCUPIED;
+    }
+
+    /**
+     * 第0段槽位数量的位数, 容量是2的幂, 装载因子不超过DEFAULT_LOAD_FACTOR
+     */
+    private static int shiftFor(long expectedSize) {
+        long slots = Math.max(DEFAULT_INITIAL_CAPACITY, (long) Math.ceil(expectedSize / (double) DEFAULT_LOAD_FACTOR));
+        return 64 - Long.numberOfLeadingZeros(slots - 1);
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("MappedHashMap is closed");
+    }
+
+    private void closeChannels() throws IOException {
+        for (FileChannel channel : segmentChannels) {
+            channel.close();
+        }
+        segmentChannels.clear();
+        data.close();
+        meta.close();
+    }
+}
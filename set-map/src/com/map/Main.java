@@ -1,13 +1,24 @@
 package com.map;
 
+import com.hashtable.persist.Codec;
+import com.map.bplustree.BPlusTreeMap;
 import com.map.file.FileInfo;
 import com.map.file.Files;
+import com.map.lsm.LsmTree;
+import com.map.map.BTreeMap;
 import com.map.map.Map;
 import com.map.map.TreeMap;
+import com.map.set.BTreeSet;
 import com.map.set.Set;
 import com.map.set.TreeSet;
+import com.map.util.Times;
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
 /**
  * Description: 测试自己实现的TreeMap
  *
@@ -16,6 +27,345 @@ import org.junit.Test;
  */
 public class Main {
 
+    // 测试B树实现的BTreeMap和BTreeSet
+    @Test
+    public void testBTreeMap() {
+        // 每个节点最多4个key, 很快就会分裂、合并
+        BTreeMap<Integer, String> map = new BTreeMap<>(4, null);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, "v" + i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            map.remove(i);
+        }
+        System.out.println(map.put(1, "one") + " " + map.put(2, "two") + " " + map.remove(3) + " " + map.remove(4));
+        System.out.println(map.size() + " " + map.get(1) + " " + map.get(2) + " " + map.containsKey(3)
+                + " " + map.containsValue("v999"));
+
+        // [100, 110)
+        map.traversal(100, 110, new Map.Visitor<Integer, String>() {
+            @Override
+            public boolean visit(Integer key, String value) {
+                System.out.print(key + "_" + value + " ");
+                return false;
+            }
+        });
+        System.out.println();
+
+        Set<Integer> set = new BTreeSet<>();
+        set.add(1);
+        set.add(7);
+        set.add(3);
+        set.add(7);
+        set.add(0);
+        set.remove(3);
+        set.traversal(new Set.Visitor<Integer>() {
+            @Override
+            public boolean visit(Integer element) {
+                System.out.print(element + " ");
+                return false;
+            }
+        });
+        System.out.println();
+    }
+
+    // 对比红黑树TreeMap和不同节点大小的BTreeMap: 数据量从1K到10M, 每种数据量随机查找1M次
+    @Test
+    public void testBTreeMapBenchmark() {
+        int gets = 1_000_000;
+        for (int count = 1_000; count <= 10_000_000; count *= 10) {
+            Random random = new Random(count);
+            Integer[] keys = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt();
+            }
+            Map<Integer, Integer>[] maps = new Map[]{
+                    new TreeMap<>(), new BTreeMap<>(16, null), new BTreeMap<>(32, null), new BTreeMap<>(64, null)};
+            String[] names = {"TreeMap", "BTreeMap(16)", "BTreeMap(32)", "BTreeMap(64)"};
+            for (int m = 0; m < maps.length; m++) {
+                Map<Integer, Integer> map = maps[m];
+                for (Integer key : keys) {
+                    map.put(key, key);
+                }
+                int[] order = new int[gets];
+                for (int i = 0; i < gets; i++) {
+                    order[i] = random.nextInt(count);
+                }
+                Times.test(names[m] + " get " + gets + ", size = " + count, new Times.Task() {
+                    @Override
+                    public void execute() {
+                        for (int index : order) {
+                            map.get(keys[index]);
+                        }
+                    }
+                });
+                // 释放上一个map再创建下一个, 减少GC的影响
+                maps[m] = null;
+            }
+        }
+    }
+
+    // 测试磁盘B+树: 增删改查、范围查询、重新打开、没有正常关闭
+    @Test
+    public void testBPlusTreeMap() throws IOException {
+        File file = File.createTempFile("bplustree", ".bin");
+        file.delete();
+        // 页很小, 缓冲池只有8页, 很快就会分裂和淘汰
+        BPlusTreeMap<Integer, String> map = new BPlusTreeMap<>(file, Codec.INT, Codec.STRING, null, 512, 8);
+        for (int i = 0; i < 10000; i++) {
+            map.put(i, "v" + i);
+        }
+        for (int i = 0; i < 10000; i += 2) {
+            map.remove(i);
+        }
+        System.out.println(map.put(1, "one") + " " + map.put(2, null) + " " + map.remove(3) + " " + map.remove(4));
+        System.out.println(map.get(1) + " " + map.get(2) + " " + map.containsKey(2) + " " + map.get(9999));
+        System.out.println("size = " + map.size() + ", pages = " + map.pageCount()
+                + ", reads = " + map.pageReads() + ", writes = " + map.pageWrites());
+
+        // [100, 110)
+        map.traversal(100, 110, new Map.Visitor<Integer, String>() {
+            @Override
+            public boolean visit(Integer key, String value) {
+                System.out.print(key + "_" + value + " ");
+                return false;
+            }
+        });
+        System.out.println();
+
+        map.close();
+        map = new BPlusTreeMap<>(file, Codec.INT, Codec.STRING, null);
+        System.out.println("after reopen: " + map.get(1) + " " + map.get(5) + " " + map.size());
+
+        // 修改之后还没有close的时候打开, 相当于崩溃之后重新打开
+        map.put(1, "crash");
+        try {
+            new BPlusTreeMap<>(file, Codec.INT, Codec.STRING, null);
+        } catch (IOException e) {
+            System.out.println(e.getMessage());
+        }
+        map.close();
+        file.delete();
+    }
+
+    // 对比磁盘B+树和TreeMap: B+树只用4MB的缓冲池, 查找时平均每次读取的页
+    @Test
+    public void testBPlusTreeMapBenchmark() throws IOException {
+        int count = 2_000_000;
+        File file = File.createTempFile("bplustree", ".bin");
+        file.delete();
+        BPlusTreeMap<Long, Long> tree = new BPlusTreeMap<>(file, Codec.LONG, Codec.LONG, null, 4096, 1024);
+        TreeMap<Long, Long> map = new TreeMap<>();
+        Random random = new Random(1);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = random.nextLong();
+        }
+
+        Times.test("TreeMap put " + count, new Times.Task() {
+            @Override
+            public void execute() {
+                for (long key : keys) {
+                    map.put(key, key);
+                }
+            }
+        });
+        Times.test("BPlusTreeMap put " + count, new Times.Task() {
+            @Override
+            public void execute() {
+                for (long key : keys) {
+                    tree.put(key, key);
+                }
+            }
+        });
+        System.out.println("pages = " + tree.pageCount() + ", file = " + (file.length() >> 20) + "MB");
+
+        int gets = 200_000;
+        Times.test("TreeMap get " + gets, new Times.Task() {
+            @Override
+            public void execute() {
+                for (int i = 0; i < gets; i++) {
+                    map.get(keys[random.nextInt(count)]);
+                }
+            }
+        });
+        long reads = tree.pageReads();
+        Times.test("BPlusTreeMap get " + gets, new Times.Task() {
+            @Override
+            public void execute() {
+                for (int i = 0; i < gets; i++) {
+                    tree.get(keys[random.nextInt(count)]);
+                }
+            }
+        });
+        System.out.println("page reads per get = " + (double) (tree.pageReads() - reads) / gets);
+
+        long[] sum = new long[1];
+        Times.test("BPlusTreeMap range scan", new Times.Task() {
+            @Override
+            public void execute() {
+                tree.traversal(0L, null, new Map.Visitor<Long, Long>() {
+                    @Override
+                    public boolean visit(Long key, Long value) {
+                        sum[0]++;
+                        return false;
+                    }
+                });
+            }
+        });
+        System.out.println("keys >= 0: " + sum[0]);
+        tree.close();
+        file.delete();
+    }
+
+    /**
+     * 递归删除测试用的临时目录
+     */
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    // 测试LSM树: 增删改查、范围查询、重新打开、分层合并
+    @Test
+    public void testLsmTree() throws IOException {
+        File dir = java.nio.file.Files.createTempDirectory("lsm").toFile();
+        try {
+            // memtable很小, 写入很快就会生成SSTable并触发合并
+            LsmTree<Integer, String> tree = new LsmTree<>(dir, Codec.INT, Codec.STRING, null, 4096, 4);
+            for (int i = 0; i < 10000; i++) {
+                tree.put(i, "v" + i);
+            }
+            for (int i = 0; i < 10000; i += 2) {
+                tree.remove(i);
+            }
+            tree.put(1, "one");
+            System.out.println(tree.get(1) + " " + tree.get(2) + " " + tree.get(9999) + " " + tree.containsKey(10000));
+            System.out.println("size = " + tree.size() + ", tables = " + tree.tableCount());
+
+            // [100, 110)
+            tree.traversal(100, 110, new Map.Visitor<Integer, String>() {
+                @Override
+                public boolean visit(Integer key, String value) {
+                    System.out.print(key + "_" + value + " ");
+                    return false;
+                }
+            });
+            System.out.println();
+
+            tree.close();
+            tree = new LsmTree<>(dir, Codec.INT, Codec.STRING, null, 4096, 4);
+            System.out.println("after reopen: " + tree.get(1) + " " + tree.get(2) + " " + tree.size());
+            tree.clear();
+            System.out.println(tree.isEmpty() + " " + tree.tableCount());
+            tree.close();
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // 对比LSM树和TreeMap: 写入吞吐量、查找时每次读取的数据块(读放大)
+    @Test
+    public void testLsmTreeBenchmark() throws IOException {
+        int count = 1_000_000;
+        String padding = new String(new char[100]).replace('\0', 'x');
+        File dir = java.nio.file.Files.createTempDirectory("lsm").toFile();
+        try {
+            LsmTree<Long, String>[] trees = new LsmTree[]{new LsmTree<>(dir, Codec.LONG, Codec.STRING, null)};
+            TreeMap<Long, String> map = new TreeMap<>();
+            Random random = new Random(1);
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextLong();
+            }
+
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            long before = runtime.totalMemory() - runtime.freeMemory();
+            Times.test("TreeMap put " + count, new Times.Task() {
+                @Override
+                public void execute() {
+                    for (long key : keys) {
+                        map.put(key, padding + key);
+                    }
+                }
+            });
+            System.gc();
+            System.out.println("TreeMap heap = " + ((runtime.totalMemory() - runtime.freeMemory() - before) >> 20) + "MB");
+            Times.test("LsmTree put " + count, new Times.Task() {
+                @Override
+                public void execute() {
+                    for (long key : keys) {
+                        trees[0].put(key, padding + key);
+                    }
+                }
+            });
+            System.out.println("LsmTree tables = " + trees[0].tableCount());
+
+            int gets = 100_000;
+            Times.test("TreeMap get " + gets, new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < gets; i++) {
+                        map.get(keys[random.nextInt(count)]);
+                    }
+                }
+            });
+            long blocks = trees[0].blockReads();
+            Times.test("LsmTree get " + gets, new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < gets; i++) {
+                        trees[0].get(keys[random.nextInt(count)]);
+                    }
+                }
+            });
+            System.out.println("blocks per get (existing keys) = " + (double) (trees[0].blockReads() - blocks) / gets);
+            blocks = trees[0].blockReads();
+            Times.test("LsmTree get " + gets + " missing keys", new Times.Task() {
+                @Override
+                public void execute() {
+                    for (int i = 0; i < gets; i++) {
+                        trees[0].get(random.nextLong());
+                    }
+                }
+            });
+            System.out.println("blocks per get (missing keys) = " + (double) (trees[0].blockReads() - blocks) / gets);
+            trees[0].close();
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    // 测试用排好序的键值对直接构建TreeMap
+    @Test
+    public void test4() {
+        Integer[] keys = new Integer[1000];
+        String[] values = new String[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i * 2;
+            values[i] = "v" + i;
+        }
+        TreeMap<Integer, String> map = new TreeMap<>();
+        map.buildFromSorted(keys, values);
+        System.out.println(map.size() + " " + map.get(998) + " " + map.containsKey(999));
+        map.put(999, "new");
+        map.remove(0);
+        System.out.println(map.size() + " " + map.get(999));
+
+        // key没有排好序
+        try {
+            new TreeMap<Integer, String>().buildFromSorted(new Integer[]{2, 1}, new String[]{"a", "b"});
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
     // 测试TreeMap来实现TreeSet
     @Test
     public void test3() {
@@ -0,0 +1,546 @@
+package com.map.bplustree;
+
+import com.hashtable.persist.Codec;
+import com.map.map.Map;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Description: 存放在一个文件中的B+树, 有序映射, 数据量不受堆大小的限制
+ * <p>
+ * 文件由固定大小的页组成, 第0页是元数据: magic(4) pageSize(4) root(8) pageCount(8) size(8) clean(1).
+ * 其他的页是B+树的节点(布局见Page): 键值对都在叶子节点中, 叶子节点按key的顺序链接起来, 范围遍历只需要顺着链表读取;
+ * 内部节点的每个单元是 child(8) key, child中的key都 >= key, 比第一个key小的key在最左边的子节点(页头的link)中.
+ * 叶子节点的单元是 key flag(1) [value], flag为0表示value是null.
+ * <p>
+ * 所有的页都通过缓冲池(BufferPool)访问, 内存中最多缓存poolPages个页; 修改的页是脏页, 被淘汰或者flush时写回文件.
+ * 删除不合并节点, 空的叶子节点留在链表中, 页不回收; clear会截断文件.
+ * <p>
+ * 没有写前日志: 第一次修改时把元数据中的clean置为0, flush/close之后置为1; 打开时clean为0说明上次没有正常关闭,
+ * 文件可能不完整, 抛出异常. 不是线程安全的, 遍历的visitor中不能修改这个映射.
+ *
+ * @author guizy
+ * @date 2026/10/19 02:00
+ */
+@SuppressWarnings("all")
+public class BPlusTreeMap<K, V> implements Map<K, V>, Closeable {
+    private static final int MAGIC = 0x42505452; // "BPTR"
+    private static final int DEFAULT_PAGE_SIZE = 4096;
+    private static final int DEFAULT_POOL_PAGES = 1024;
+    private static final int META_SIZE = 33;
+    // 树的高度不会超过这个值
+    private static final int MAX_HEIGHT = 64;
+
+    private final FileChannel channel;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final Comparator<K> comparator;
+    private final int pageSize;
+    private final BufferPool pool;
+    private long root;
+    private long pageCount;
+    private long size;
+    // 元数据中的clean标记
+    private boolean clean;
+    private boolean closed;
+
+    public BPlusTreeMap(File file, Codec<K> keyCodec, Codec<V> valueCodec, Comparator<K> comparator) throws IOException {
+        this(file, keyCodec, valueCodec, comparator, DEFAULT_PAGE_SIZE, DEFAULT_POOL_PAGES);
+    }
+
+    /**
+     * @param comparator 为null时key必须实现Comparable
+     * @param pageSize   新文件的页大小, 512~32768; 已有的文件使用文件中记录的页大小
+     * @param poolPages  缓冲池缓存的页数, 至少8
+     */
+    public BPlusTreeMap(File file, Codec<K> keyCodec, Codec<V> valueCodec, Comparator<K> comparator,
+                        int pageSize, int poolPages) throws IOException {
+        if (keyCodec == null || valueCodec == null) {
+            throw new IllegalArgumentException("codecs must not be null");
+        }
+        if (pageSize < 512 || pageSize > 32768 || poolPages < 8) {
+            throw new IllegalArgumentException("pageSize must be in [512, 32768] and poolPages must be at least 8");
+        }
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.comparator = comparator;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                this.pageSize = pageSize;
+                pool = new BufferPool(channel, pageSize, poolPages);
+                reset();
+                flush();
+            } else {
+                ByteBuffer meta = ByteBuffer.allocate(META_SIZE);
+                while (meta.hasRemaining()) {
+                    if (channel.read(meta, meta.position()) < 0) throw new IOException("truncated meta page: " + file);
+                }
+                meta.flip();
+                if (meta.getInt() != MAGIC) throw new IOException("not a B+tree file: " + file);
+                this.pageSize = meta.getInt();
+                root = meta.getLong();
+                pageCount = meta.getLong();
+                size = meta.getLong();
+                clean = meta.get() == 1;
+                if (!clean) throw new IOException(file + " was not closed cleanly");
+                if (channel.size() < pageCount * this.pageSize) throw new IOException("truncated B+tree file: " + file);
+                pool = new BufferPool(channel, this.pageSize, poolPages);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 从文件读取页的次数
+     */
+    public long pageReads() {
+        return pool.reads();
+    }
+
+    /**
+     * 把脏页写回文件的次数
+     */
+    public long pageWrites() {
+        return pool.writes();
+    }
+
+    /**
+     * 文件中的页数(包括元数据页)
+     */
+    public long pageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        ensureOpen();
+        try {
+            pool.clear();
+            channel.truncate(pageSize);
+            reset();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        keyNotNullCheck(key);
+        ensureOpen();
+        byte[] cell = leafCell(key, value);
+        long[] pathPages = new long[MAX_HEIGHT];
+        int[] pathSlots = new int[MAX_HEIGHT];
+        try {
+            int depth = 0;
+            BufferPool.Frame frame = pool.pin(root);
+            // 从根节点向下找到叶子节点, 记录经过的内部节点和子节点的位置
+            while (Page.type(frame.buffer) == Page.INTERNAL) {
+                int slot = childSlot(frame.buffer, key);
+                pathPages[depth] = frame.pageId;
+                pathSlots[depth++] = slot;
+                long child = child(frame.buffer, slot);
+                pool.unpin(frame);
+                frame = pool.pin(child);
+            }
+
+            V old = null;
+            List<byte[]> cells = null;
+            BufferPool.Frame right = null;
+            byte[] separator = null;
+            try {
+                modified();
+                frame.dirty = true;
+                ByteBuffer leaf = frame.buffer;
+                int index = search(leaf, key);
+                if (index >= 0) {
+                    old = valueAt(leaf, index);
+                    Page.remove(leaf, index);
+                } else {
+                    index = -index - 1;
+                    size++;
+                }
+                if (Page.insert(leaf, index, cell)) return old;
+
+                // 叶子节点分裂: 后一半移到新的页中, 新的页接在链表中当前页的后面
+                cells = Page.cells(leaf);
+                cells.add(index, cell);
+                int split = Page.splitPoint(cells, pageSize);
+                right = pool.pinNew(pageCount++);
+                Page.rebuild(right.buffer, Page.LEAF, Page.link(leaf), cells.subList(split, cells.size()));
+                Page.rebuild(leaf, Page.LEAF, right.pageId, cells.subList(0, split));
+                // 右边页的第一个key复制到父节点中
+                separator = internalCell(right.pageId, cells.get(split), keyCodec.size(keyAt(right.buffer, 0)));
+            } finally {
+                pool.unpin(frame);
+                if (right != null) pool.unpin(right);
+            }
+            insertIntoParent(pathPages, pathSlots, depth, separator);
+            return old;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        keyNotNullCheck(key);
+        ensureOpen();
+        try {
+            BufferPool.Frame frame = findLeaf(key);
+            try {
+                int index = search(frame.buffer, key);
+                return index >= 0 ? valueAt(frame.buffer, index) : null;
+            } finally {
+                pool.unpin(frame);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V remove(K key) {
+        keyNotNullCheck(key);
+        ensureOpen();
+        try {
+            BufferPool.Frame frame = findLeaf(key);
+            try {
+                int index = search(frame.buffer, key);
+                if (index < 0) return null;
+                modified();
+                V old = valueAt(frame.buffer, index);
+                Page.remove(frame.buffer, index);
+                frame.dirty = true;
+                size--;
+                return old;
+            } finally {
+                pool.unpin(frame);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        keyNotNullCheck(key);
+        ensureOpen();
+        try {
+            BufferPool.Frame frame = findLeaf(key);
+            try {
+                return search(frame.buffer, key) >= 0;
+            } finally {
+                pool.unpin(frame);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        boolean[] found = new boolean[1];
+        traversal(null, null, new Visitor<K, V>() {
+            @Override
+            public boolean visit(K key, V v) {
+                found[0] = value == null ? v == null : value.equals(v);
+                return found[0];
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * 按key升序遍历, visitor返回true就停止遍历
+     */
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        traversal(null, null, visitor);
+    }
+
+    /**
+     * 按key升序遍历[fromKey, toKey)范围内的键值对, visitor返回true就停止遍历
+     * 找到fromKey所在的叶子节点, 之后顺着叶子节点的链表读取
+     *
+     * @param fromKey 为null表示没有下界
+     * @param toKey   为null表示没有上界
+     */
+    public void traversal(K fromKey, K toKey, Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        ensureOpen();
+        try {
+            BufferPool.Frame frame = findLeaf(fromKey);
+            try {
+                int index = 0;
+                if (fromKey != null) {
+                    index = search(frame.buffer, fromKey);
+                    if (index < 0) index = -index - 1;
+                }
+                while (true) {
+                    ByteBuffer leaf = frame.buffer;
+                    for (int count = Page.count(leaf); index < count; index++) {
+                        K key = keyAt(leaf, index);
+                        if (toKey != null && compare(key, toKey) >= 0) return;
+                        if (visitor.visit(key, valueAt(leaf, index))) return;
+                    }
+                    long next = Page.link(leaf);
+                    if (next == 0) return;
+                    BufferPool.Frame current = frame;
+                    frame = null;
+                    pool.unpin(current);
+                    frame = pool.pin(next);
+                    index = 0;
+                }
+            } finally {
+                if (frame != null) pool.unpin(frame);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 所有的脏页写回文件, 元数据标记为clean
+     */
+    public void flush() throws IOException {
+        ensureOpen();
+        pool.flush();
+        channel.force(false);
+        clean = true;
+        writeMeta();
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        try {
+            flush();
+        } finally {
+            closed = true;
+            channel.close();
+        }
+    }
+
+    // ------------------------------------节点操作-------------------------------------------
+
+    /**
+     * 把内部节点的单元插入到父节点中, 父节点满了就继续分裂, 一直到根节点
+     *
+     * @param cell  指向新分裂出来的右边节点的单元
+     * @param depth 分裂的节点在路径中的深度, 0表示根节点
+     */
+    private void insertIntoParent(long[] pathPages, int[] pathSlots, int depth, byte[] cell) throws IOException {
+        while (depth > 0) {
+            depth--;
+            BufferPool.Frame parent = pool.pin(pathPages[depth]);
+            BufferPool.Frame right = null;
+            try {
+                parent.dirty = true;
+                ByteBuffer page = parent.buffer;
+                int index = pathSlots[depth] + 1;
+                if (Page.insert(page, index, cell)) return;
+
+                // 内部节点分裂: 中间的单元移到父节点中, 它的子节点成为右边节点最左边的子节点
+                List<byte[]> cells = Page.cells(page);
+                cells.add(index, cell);
+                int split = Math.min(Page.splitPoint(cells, pageSize), cells.size() - 2);
+                byte[] middle = cells.get(split);
+                right = pool.pinNew(pageCount++);
+                Page.rebuild(right.buffer, Page.INTERNAL, ByteBuffer.wrap(middle).getLong(),
+                        cells.subList(split + 1, cells.size()));
+                Page.rebuild(page, Page.INTERNAL, Page.link(page), cells.subList(0, split));
+                ByteBuffer.wrap(middle).putLong(right.pageId);
+                cell = middle;
+            } finally {
+                pool.unpin(parent);
+                if (right != null) pool.unpin(right);
+            }
+        }
+        // 根节点分裂, 树长高一层
+        BufferPool.Frame newRoot = pool.pinNew(pageCount++);
+        try {
+            Page.init(newRoot.buffer, Page.INTERNAL, root);
+            Page.insert(newRoot.buffer, 0, cell);
+            root = newRoot.pageId;
+        } finally {
+            pool.unpin(newRoot);
+        }
+    }
+
+    /**
+     * 找到key所在的叶子节点, 返回时这个页已经被固定
+     *
+     * @param key 为null时返回最左边的叶子节点
+     */
+    private BufferPool.Frame findLeaf(K key) throws IOException {
+        BufferPool.Frame frame = pool.pin(root);
+        while (Page.type(frame.buffer) == Page.INTERNAL) {
+            long child = child(frame.buffer, key == null ? -1 : childSlot(frame.buffer, key));
+            pool.unpin(frame);
+            frame = pool.pin(child);
+        }
+        return frame;
+    }
+
+    /**
+     * 内部节点中key所在的子节点: 最后一个 <= key 的单元, 都比key大返回-1(最左边的子节点)
+     */
+    private int childSlot(ByteBuffer page, K key) {
+        int begin = 0;
+        int end = Page.count(page);
+        while (begin < end) {
+            int mid = (begin + end) >>> 1;
+            if (compare(keyAt(page, mid), key) <= 0) {
+                begin = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        return begin - 1;
+    }
+
+    private long child(ByteBuffer page, int slot) {
+        return slot < 0 ? Page.link(page) : page.getLong(Page.offset(page, slot));
+    }
+
+    /**
+     * 在叶子节点中二分查找key
+     *
+     * @return 找到返回位置, 否则返回 -(插入位置) - 1
+     */
+    private int search(ByteBuffer leaf, K key) {
+        int begin = 0;
+        int end = Page.count(leaf) - 1;
+        while (begin <= end) {
+            int mid = (begin + end) >>> 1;
+            int cmp = compare(keyAt(leaf, mid), key);
+            if (cmp < 0) {
+                begin = mid + 1;
+            } else if (cmp > 0) {
+                end = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -begin - 1;
+    }
+
+    private K keyAt(ByteBuffer page, int index) {
+        ByteBuffer buffer = page.duplicate();
+        buffer.position(Page.offset(page, index) + (Page.type(page) == Page.INTERNAL ? 8 : 0));
+        return keyCodec.read(buffer);
+    }
+
+    private V valueAt(ByteBuffer leaf, int index) {
+        ByteBuffer buffer = leaf.duplicate();
+        buffer.position(Page.offset(leaf, index));
+        keyCodec.read(buffer);
+        return buffer.get() == 0 ? null : valueCodec.read(buffer);
+    }
+
+    private byte[] leafCell(K key, V value) {
+        int keySize = keyCodec.size(key);
+        int size = keySize + 1 + (value == null ? 0 : valueCodec.size(value));
+        // 一页至少能放4个单元, 分裂之后的两个页一定放得下; 叶子节点的key还会复制到内部节点中
+        int limit = (pageSize - Page.HEADER) / 4 - Page.SLOT;
+        if (size > limit || 8 + keySize > limit) {
+            throw new IllegalArgumentException("entry too large for page size " + pageSize);
+        }
+        ByteBuffer cell = ByteBuffer.allocate(size);
+        keyCodec.write(cell, key);
+        if (value == null) {
+            cell.put((byte) 0);
+        } else {
+            cell.put((byte) 1);
+            valueCodec.write(cell, value);
+        }
+        return cell.array();
+    }
+
+    /**
+     * 内部节点的单元: child key, key复制自叶子节点单元的前keySize个字节
+     */
+    private byte[] internalCell(long child, byte[] leafCell, int keySize) {
+        ByteBuffer cell = ByteBuffer.allocate(8 + keySize);
+        cell.putLong(child);
+        cell.put(leafCell, 0, keySize);
+        return cell.array();
+    }
+
+    // ------------------------------------元数据-------------------------------------------
+
+    /**
+     * 只有一个空的叶子节点(根节点)
+     */
+    private void reset() throws IOException {
+        root = 1;
+        pageCount = 2;
+        size = 0;
+        modified();
+        BufferPool.Frame frame = pool.pinNew(root);
+        try {
+            Page.init(frame.buffer, Page.LEAF, 0);
+        } finally {
+            pool.unpin(frame);
+        }
+    }
+
+    /**
+     * 第一次修改之前把clean置为0并且刷到磁盘, 之后被淘汰的脏页才可能写入文件
+     */
+    private void modified() throws IOException {
+        if (!clean) return;
+        clean = false;
+        writeMeta();
+        channel.force(false);
+    }
+
+    private void writeMeta() throws IOException {
+        ByteBuffer meta = ByteBuffer.allocate(META_SIZE);
+        meta.putInt(MAGIC).putInt(pageSize).putLong(root).putLong(pageCount).putLong(size).put((byte) (clean ? 1 : 0));
+        meta.flip();
+        while (meta.hasRemaining()) {
+            channel.write(meta, meta.position());
+        }
+    }
+
+    private int compare(K k1, K k2) {
+        if (comparator != null) {
+            return comparator.compare(k1, k2);
+        }
+        return ((Comparable<K>) k1).compareTo(k2);
+    }
+
+    private void keyNotNullCheck(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null");
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("BPlusTreeMap is closed");
+    }
+}
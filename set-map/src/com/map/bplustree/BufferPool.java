@@ -0,0 +1,163 @@
+package com.map.bplustree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Description: 缓冲池: 在内存中缓存固定数量的页, 用CLOCK算法淘汰
+ * <p>
+ * 每个缓冲帧有一个访问位, 访问时置为1. 需要空闲帧时时钟指针循环扫描: 被固定(pin)的帧跳过,
+ * 访问位为1的清零后跳过(再给一次机会), 访问位为0的就是被淘汰的帧; 被淘汰的帧是脏页就先写回文件.
+ * <p>
+ * 使用页之前调用pin, 用完调用unpin, 被固定的帧不会被淘汰. 不是线程安全的.
+ *
+ * @author guizy
+ * @date 2026/10/19 02:00
+ */
+@SuppressWarnings("all")
+class BufferPool {
+    private final FileChannel channel;
+    private final int pageSize;
+    private final Frame[] frames;
+    // 页号 -> 缓冲帧
+    private final HashMap<Long, Frame> pageTable = new HashMap<>();
+    private int hand;
+    private long reads;
+    private long writes;
+
+    static class Frame {
+        long pageId = -1;
+        final ByteBuffer buffer;
+        boolean dirty;
+        boolean referenced;
+        int pins;
+
+        Frame(int pageSize) {
+            buffer = ByteBuffer.allocate(pageSize);
+        }
+    }
+
+    BufferPool(FileChannel channel, int pageSize, int capacity) {
+        this.channel = channel;
+        this.pageSize = pageSize;
+        frames = new Frame[capacity];
+        for (int i = 0; i < capacity; i++) {
+            frames[i] = new Frame(pageSize);
+        }
+    }
+
+    /**
+     * 固定一个已有的页, 不在缓冲池中就从文件读取
+     */
+    Frame pin(long pageId) throws IOException {
+        Frame frame = pageTable.get(pageId);
+        if (frame == null) {
+            frame = victim();
+            ByteBuffer buffer = frame.buffer;
+            buffer.clear();
+            long position = pageId * pageSize;
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("page " + pageId + " is beyond the end of file");
+                }
+            }
+            reads++;
+            install(frame, pageId);
+        }
+        frame.pins++;
+        frame.referenced = true;
+        return frame;
+    }
+
+    /**
+     * 固定一个新分配的页, 不读文件, 内容全是0, 标记为脏页
+     */
+    Frame pinNew(long pageId) throws IOException {
+        Frame frame = victim();
+        ByteBuffer buffer = frame.buffer;
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        install(frame, pageId);
+        frame.dirty = true;
+        frame.pins++;
+        frame.referenced = true;
+        return frame;
+    }
+
+    void unpin(Frame frame) {
+        if (frame.pins <= 0) throw new IllegalStateException("page " + frame.pageId + " is not pinned");
+        frame.pins--;
+    }
+
+    /**
+     * 所有的脏页写回文件
+     */
+    void flush() throws IOException {
+        for (Frame frame : frames) {
+            if (frame.dirty) writeBack(frame);
+        }
+    }
+
+    /**
+     * 丢弃所有缓存的页(不写回)
+     */
+    void clear() {
+        for (Frame frame : frames) {
+            if (frame.pins > 0) throw new IllegalStateException("page " + frame.pageId + " is still pinned");
+            frame.pageId = -1;
+            frame.dirty = false;
+            frame.referenced = false;
+        }
+        pageTable.clear();
+    }
+
+    long reads() {
+        return reads;
+    }
+
+    long writes() {
+        return writes;
+    }
+
+    /**
+     * CLOCK: 找一个可以淘汰的缓冲帧, 脏页先写回
+     */
+    private Frame victim() throws IOException {
+        // 转两圈: 第一圈清除访问位, 第二圈一定能找到没有被固定的帧
+        for (int i = 0; i < frames.length * 2; i++) {
+            Frame frame = frames[hand];
+            hand = (hand + 1) % frames.length;
+            if (frame.pins > 0) continue;
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+            if (frame.dirty) writeBack(frame);
+            if (frame.pageId >= 0) pageTable.remove(frame.pageId);
+            frame.pageId = -1;
+            return frame;
+        }
+        throw new IllegalStateException("all " + frames.length + " pages in the buffer pool are pinned");
+    }
+
+    private void install(Frame frame, long pageId) {
+        frame.pageId = pageId;
+        frame.dirty = false;
+        pageTable.put(pageId, frame);
+    }
+
+    private void writeBack(Frame frame) throws IOException {
+        ByteBuffer buffer = frame.buffer.duplicate();
+        buffer.clear();
+        long position = frame.pageId * pageSize;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+        frame.dirty = false;
+        writes++;
+    }
+}
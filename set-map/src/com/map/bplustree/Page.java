@@ -0,0 +1,152 @@
+package com.map.bplustree;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Description: B+树节点在页中的布局(slotted page)
+ * <p>
+ * 页头(HEADER字节): type(1) 保留(1) count(2) freeEnd(2) 保留(2) link(8)
+ * 叶子节点的link是下一个叶子节点的页号(0表示没有), 内部节点的link是最左边的子节点.
+ * 页头后面是按key排好序的槽数组, 每个槽是 offset(2) length(2), 指向页尾向前分配的单元(cell).
+ * 插入只移动槽, 不移动单元; 删除单元留下的空洞在空间不够时整理(compact).
+ * <p>
+ * 只负责字节布局, 单元的内容由BPlusTreeMap编码.
+ *
+ * @author guizy
+ * @date 2026/10/19 02:00
+ */
+class Page {
+    static final byte LEAF = 1;
+    static final byte INTERNAL = 2;
+    static final int HEADER = 16;
+    static final int SLOT = 4;
+
+    private Page() {
+    }
+
+    static void init(ByteBuffer page, byte type, long link) {
+        page.put(0, type);
+        page.putChar(2, (char) 0);
+        page.putChar(4, (char) page.capacity());
+        page.putLong(8, link);
+    }
+
+    static byte type(ByteBuffer page) {
+        return page.get(0);
+    }
+
+    static int count(ByteBuffer page) {
+        return page.getChar(2);
+    }
+
+    static long link(ByteBuffer page) {
+        return page.getLong(8);
+    }
+
+    static void setLink(ByteBuffer page, long link) {
+        page.putLong(8, link);
+    }
+
+    static int offset(ByteBuffer page, int index) {
+        return page.getChar(HEADER + index * SLOT);
+    }
+
+    static int length(ByteBuffer page, int index) {
+        return page.getChar(HEADER + index * SLOT + 2);
+    }
+
+    /**
+     * 复制出第index个单元
+     */
+    static byte[] cell(ByteBuffer page, int index) {
+        byte[] cell = new byte[length(page, index)];
+        int offset = offset(page, index);
+        for (int i = 0; i < cell.length; i++) {
+            cell[i] = page.get(offset + i);
+        }
+        return cell;
+    }
+
+    /**
+     * 复制出所有的单元
+     */
+    static List<byte[]> cells(ByteBuffer page) {
+        int count = count(page);
+        List<byte[]> cells = new ArrayList<>(count + 1);
+        for (int i = 0; i < count; i++) {
+            cells.add(cell(page, i));
+        }
+        return cells;
+    }
+
+    /**
+     * 在第index个位置插入单元, 连续空间不够时先整理
+     *
+     * @return 整理之后空间仍然不够, 返回false, 页不变
+     */
+    static boolean insert(ByteBuffer page, int index, byte[] cell) {
+        int count = count(page);
+        int slotsEnd = HEADER + (count + 1) * SLOT;
+        if (page.getChar(4) - slotsEnd < cell.length) {
+            int live = 0;
+            for (int i = 0; i < count; i++) {
+                live += length(page, i);
+            }
+            if (page.capacity() - slotsEnd - live < cell.length) return false;
+            rebuild(page, type(page), link(page), cells(page));
+        }
+        int freeEnd = page.getChar(4) - cell.length;
+        for (int i = 0; i < cell.length; i++) {
+            page.put(freeEnd + i, cell[i]);
+        }
+        // 槽数组中index之后的槽向后移动一个位置
+        for (int i = count; i > index; i--) {
+            page.putInt(HEADER + i * SLOT, page.getInt(HEADER + (i - 1) * SLOT));
+        }
+        page.putChar(HEADER + index * SLOT, (char) freeEnd);
+        page.putChar(HEADER + index * SLOT + 2, (char) cell.length);
+        page.putChar(2, (char) (count + 1));
+        page.putChar(4, (char) freeEnd);
+        return true;
+    }
+
+    /**
+     * 删除第index个单元, 只删除槽
+     */
+    static void remove(ByteBuffer page, int index) {
+        int count = count(page);
+        for (int i = index; i < count - 1; i++) {
+            page.putInt(HEADER + i * SLOT, page.getInt(HEADER + (i + 1) * SLOT));
+        }
+        page.putChar(2, (char) (count - 1));
+    }
+
+    /**
+     * 清空页, 重新按顺序写入cells
+     */
+    static void rebuild(ByteBuffer page, byte type, long link, List<byte[]> cells) {
+        init(page, type, link);
+        for (int i = 0; i < cells.size(); i++) {
+            insert(page, i, cells.get(i));
+        }
+    }
+
+    /**
+     * 单元加上槽之后占用的空间超过一页的可用空间的一半时, 这个位置就是分裂点
+     *
+     * @return 分裂之后右边页的第一个单元的位置, 两边都不为空
+     */
+    static int splitPoint(List<byte[]> cells, int pageSize) {
+        int half = (pageSize - HEADER) / 2;
+        int used = 0;
+        int split = 0;
+        while (split < cells.size() - 1) {
+            used += cells.get(split).length + SLOT;
+            split++;
+            if (used >= half) break;
+        }
+        return Math.max(split, 1);
+    }
+}
@@ -0,0 +1,94 @@
+package com.map.lsm;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Description: 布隆过滤器, 判断key"一定不在"SSTable中, 避免为不存在的key读取数据块
+ * <p>
+ * 每个key占bitsPerKey位, 用双重哈希(h1 + i * h2)模拟k个哈希函数; bitsPerKey为10、k为7时误判率大约1%.
+ * 哈希值由key编码之后的字节计算, 和hashCode无关, 写入文件之后重新打开仍然有效.
+ *
+ * @author guizy
+ * @date 2026/10/19 01:00
+ */
+class BloomFilter {
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+
+    private final long[] bits;
+    private final long bitCount;
+
+    /**
+     * @param expectedKeys 预计放入的key的数量
+     */
+    BloomFilter(long expectedKeys) {
+        long count = Math.max(64, expectedKeys * BITS_PER_KEY);
+        bits = new long[(int) Math.min((count + 63) >>> 6, Integer.MAX_VALUE - 8)];
+        bitCount = (long) bits.length << 6;
+    }
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+        this.bitCount = (long) bits.length << 6;
+    }
+
+    void put(long hash) {
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return false表示key一定不存在
+     */
+    boolean mightContain(long hash) {
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    int byteSize() {
+        return bits.length << 3;
+    }
+
+    void writeTo(ByteBuffer buffer) {
+        for (long word : bits) {
+            buffer.putLong(word);
+        }
+    }
+
+    static BloomFilter readFrom(ByteBuffer buffer) {
+        long[] bits = new long[buffer.remaining() >>> 3];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = buffer.getLong();
+        }
+        return new BloomFilter(bits);
+    }
+
+    /**
+     * 编码之后的key的64位哈希值
+     */
+    static long hash(ByteBuffer key) {
+        long h = 0x9E3779B97F4A7C15L;
+        int i = key.position();
+        int end = key.limit();
+        for (; i + 8 <= end; i += 8) {
+            h = (h ^ key.getLong(i)) * 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 32;
+        }
+        for (; i < end; i++) {
+            h = (h ^ key.get(i)) * 0xC4CEB9FE1A85EC53L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
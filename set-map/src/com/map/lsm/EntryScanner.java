@@ -0,0 +1,26 @@
+package com.map.lsm;
+
+import java.io.IOException;
+
+/**
+ * Description: 按key升序读取键值对, memtable、SSTable和多路归并都通过它读取
+ *
+ * @author guizy
+ * @date 2026/10/19 01:00
+ */
+interface EntryScanner<K, V> {
+
+    /**
+     * 移动到下一个键值对, 没有了返回false
+     */
+    boolean next() throws IOException;
+
+    K key();
+
+    V value();
+
+    /**
+     * 当前是删除标记(tombstone), 没有value
+     */
+    boolean deleted();
+}
@@ -0,0 +1,639 @@
+package com.map.lsm;
+
+import com.hashtable.persist.Codec;
+import com.map.map.Map;
+import com.map.map.TreeMap;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Description: LSM树(Log-Structured Merge Tree), 写多读少的有序存储
+ * <p>
+ * 写入: 只修改内存中的memtable(TreeMap), 删除也是写入一个删除标记; memtable超过memtableBytes之后变成只读的,
+ * 换一个新的memtable继续写入, 后台线程把只读的memtable按key顺序写成一个SSTable文件. 写入从不读磁盘, 所以put/remove总是返回null.
+ * <p>
+ * 分层合并(size-tiered compaction): 新生成的SSTable放在第0层; 某一层的SSTable达到fanout个, 后台线程就把它们归并成一个,
+ * 放到下一层. 每一层中的SSTable都比下一层的新, 层内从新到旧排列; 归并到的那一层下面没有更旧的SSTable时, 丢弃删除标记.
+ * <p>
+ * 读取: 按memtable、只读memtable、第0层...最后一层的顺序(从新到旧)查找, 第一个找到的就是最新的值;
+ * 范围查询把所有来源多路归并, 同一个key只取最新的版本.
+ * <p>
+ * MANIFEST文件记录每一层有哪些SSTable, 每次变化都整体替换. 没有写前日志, 还在memtable中的数据在close或者flush之前崩溃会丢失.
+ * 读操作持有读锁, 遍历的visitor中不能修改这个LsmTree.
+ *
+ * @author guizy
+ * @date 2026/10/19 01:00
+ */
+@SuppressWarnings("all")
+public class LsmTree<K, V> implements Map<K, V>, Closeable {
+    // memtable中的删除标记
+    private static final Object TOMBSTONE = new Object();
+    private static final long DEFAULT_MEMTABLE_BYTES = 4L << 20;
+    private static final int DEFAULT_FANOUT = 4;
+    // memtable中每个键值对除了key、value之外大约占用的内存(红黑树节点)
+    private static final int NODE_OVERHEAD = 64;
+    private static final String MANIFEST = "MANIFEST";
+    private static final String SSTABLE = ".sst";
+
+    private final File dir;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final Comparator<K> comparator;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Condition changed = lock.writeLock().newCondition();
+    private final AtomicLong blockReads = new AtomicLong();
+    private TreeMap<K, Object> memtable;
+    private long memtableBytes;
+    // 正在写入SSTable的只读memtable
+    private TreeMap<K, Object> immutable;
+    // tiers.get(i): 第i层的SSTable, 从新到旧
+    private final ArrayList<ArrayList<SSTable<K, V>>> tiers = new ArrayList<>();
+    private final long memtableLimit;
+    private final int fanout;
+    private long nextTableId;
+    // 后台线程正在写SSTable
+    private boolean busy;
+    private boolean closed;
+    private IOException failure;
+    private final Thread worker;
+
+    public LsmTree(File dir, Codec<K> keyCodec, Codec<V> valueCodec, Comparator<K> comparator) throws IOException {
+        this(dir, keyCodec, valueCodec, comparator, DEFAULT_MEMTABLE_BYTES, DEFAULT_FANOUT);
+    }
+
+    /**
+     * @param dir           存放SSTable和MANIFEST的目录, 已经有数据就打开它
+     * @param comparator    为null时key必须实现Comparable
+     * @param memtableBytes memtable超过这个大小就写成SSTable
+     * @param fanout        一层中有fanout个SSTable就归并到下一层
+     */
+    public LsmTree(File dir, Codec<K> keyCodec, Codec<V> valueCodec, Comparator<K> comparator,
+                   long memtableBytes, int fanout) throws IOException {
+        if (keyCodec == null || valueCodec == null) {
+            throw new IllegalArgumentException("codecs must not be null");
+        }
+        if (memtableBytes <= 0 || fanout < 2) {
+            throw new IllegalArgumentException("memtableBytes must be positive and fanout must be at least 2");
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("cannot create directory: " + dir);
+        }
+        this.dir = dir;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.comparator = comparator != null ? comparator : new Comparator<K>() {
+            @Override
+            public int compare(K k1, K k2) {
+                return ((Comparable<K>) k1).compareTo(k2);
+            }
+        };
+        this.memtableLimit = memtableBytes;
+        this.fanout = fanout;
+        this.memtable = new TreeMap<>(this.comparator);
+        try {
+            loadManifest();
+        } catch (IOException | RuntimeException e) {
+            closeTables();
+            throw e;
+        }
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "lsm-compaction");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 读取数据块的总次数, 除以查找次数就是读放大
+     */
+    public long blockReads() {
+        return blockReads.get();
+    }
+
+    /**
+     * SSTable的数量
+     */
+    public int tableCount() {
+        lock.readLock().lock();
+        try {
+            int count = 0;
+            for (ArrayList<SSTable<K, V>> tier : tiers) {
+                count += tier.size();
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 遍历所有的键值对计数, 很慢
+     */
+    @Override
+    public int size() {
+        int[] size = new int[1];
+        traversal(null, null, new Visitor<K, V>() {
+            @Override
+            public boolean visit(K key, V value) {
+                size[0]++;
+                return false;
+            }
+        });
+        return size[0];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        boolean[] empty = {true};
+        traversal(null, null, new Visitor<K, V>() {
+            @Override
+            public boolean visit(K key, V value) {
+                empty[0] = false;
+                return true;
+            }
+        });
+        return empty[0];
+    }
+
+    /**
+     * 等后台线程空闲下来, 删除所有的SSTable
+     */
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            while (busy || immutable != null) {
+                changed.awaitUninterruptibly();
+                ensureOpen();
+            }
+            memtable = new TreeMap<>(comparator);
+            memtableBytes = 0;
+            ArrayList<SSTable<K, V>> obsolete = new ArrayList<>();
+            for (ArrayList<SSTable<K, V>> tier : tiers) {
+                obsolete.addAll(tier);
+            }
+            tiers.clear();
+            writeManifest();
+            delete(obsolete);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return 总是返回null, 写入不读取旧值
+     */
+    @Override
+    public V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new IllegalArgumentException("key and value must not be null");
+        }
+        write(key, value);
+        return null;
+    }
+
+    @Override
+    public V get(K key) {
+        if (key == null) return null;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            Object value = memtable.get(key);
+            if (value == null && immutable != null) value = immutable.get(key);
+            if (value != null) return value == TOMBSTONE ? null : (V) value;
+
+            long hash = BloomFilter.hash(encode(key));
+            for (ArrayList<SSTable<K, V>> tier : tiers) {
+                for (SSTable<K, V> table : tier) {
+                    SSTable<K, V>.BlockScanner scanner = table.find(key, hash);
+                    if (scanner != null) return scanner.deleted() ? null : scanner.value();
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 写入删除标记
+     *
+     * @return 总是返回null, 删除不读取旧值
+     */
+    @Override
+    public V remove(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null");
+        }
+        write(key, TOMBSTONE);
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        if (value == null) return false;
+        boolean[] found = new boolean[1];
+        traversal(null, null, new Visitor<K, V>() {
+            @Override
+            public boolean visit(K key, V v) {
+                found[0] = value.equals(v);
+                return found[0];
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * 按key升序遍历, visitor返回true就停止遍历
+     */
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        traversal(null, null, visitor);
+    }
+
+    /**
+     * 按key升序遍历[fromKey, toKey)范围内的键值对, visitor返回true就停止遍历
+     *
+     * @param fromKey 为null表示没有下界
+     * @param toKey   为null表示没有上界
+     */
+    public void traversal(K fromKey, K toKey, Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        lock.readLock().lock();
+        try {
+            ensureOpen();
+            ArrayList<EntryScanner<K, V>> sources = new ArrayList<>();
+            sources.add(new MemtableScanner<>(memtable, fromKey, toKey));
+            if (immutable != null) sources.add(new MemtableScanner<>(immutable, fromKey, toKey));
+            for (ArrayList<SSTable<K, V>> tier : tiers) {
+                for (SSTable<K, V> table : tier) {
+                    sources.add(table.scanner(fromKey));
+                }
+            }
+            MergingScanner<K, V> scanner = new MergingScanner<>(sources.toArray(new EntryScanner[0]), comparator);
+            while (scanner.next()) {
+                if (toKey != null && comparator.compare(scanner.key(), toKey) >= 0) return;
+                if (scanner.deleted()) continue;
+                if (visitor.visit(scanner.key(), scanner.value())) return;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 把memtable写成SSTable, 等待写完
+     */
+    public void flush() throws IOException {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            while (immutable != null) {
+                awaitChange();
+            }
+            if (memtable.isEmpty()) return;
+            switchMemtable();
+            while (immutable != null) {
+                awaitChange();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 等后台线程写完只读的memtable, 把memtable写成SSTable, 关闭所有的SSTable
+     * 没有完成的归并放弃, 下次打开时继续
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            if (failure == null && !memtable.isEmpty()) {
+                SSTable<K, V> table = writeTable(new MemtableScanner<>(memtable, null, null), memtable.size(), false);
+                tier(0).add(0, table);
+                writeManifest();
+            }
+            memtable = new TreeMap<>(comparator);
+        } finally {
+            closeTables();
+            lock.writeLock().unlock();
+        }
+        if (failure != null) throw failure;
+    }
+
+    // ------------------------------------写入-------------------------------------------
+
+    private void write(K key, Object value) {
+        lock.writeLock().lock();
+        try {
+            ensureOpen();
+            // 前一个memtable还没有写完, 当前的memtable又满了, 等待
+            while (immutable != null && memtableBytes >= memtableLimit) {
+                awaitChange();
+            }
+            Object old = memtable.put(key, value);
+            memtableBytes += sizeOf(value) - (old == null ? -keyCodec.size(key) - NODE_OVERHEAD : sizeOf(old));
+            if (memtableBytes >= memtableLimit && immutable == null) {
+                switchMemtable();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int sizeOf(Object value) {
+        return value == TOMBSTONE ? 0 : valueCodec.size((V) value);
+    }
+
+    /**
+     * memtable变成只读的, 交给后台线程写成SSTable, 调用者持有写锁
+     */
+    private void switchMemtable() {
+        immutable = memtable;
+        memtable = new TreeMap<>(comparator);
+        memtableBytes = 0;
+        changed.signalAll();
+    }
+
+    // ------------------------------------后台线程-------------------------------------------
+
+    /**
+     * 后台线程: 优先把只读的memtable写成SSTable, 否则归并SSTable达到fanout个的层
+     */
+    private void work() {
+        while (true) {
+            TreeMap<K, Object> flushing = null;
+            int tier = -1;
+            ArrayList<SSTable<K, V>> inputs = null;
+            boolean dropTombstones = false;
+            lock.writeLock().lock();
+            try {
+                while (true) {
+                    if (failure != null) return;
+                    if (immutable != null) {
+                        flushing = immutable;
+                        break;
+                    }
+                    if (closed) return;
+                    tier = tierToCompact();
+                    if (tier >= 0) {
+                        inputs = new ArrayList<>(tiers.get(tier));
+                        // 下面的层都是空的, 没有更旧的数据需要删除标记来覆盖
+                        dropTombstones = true;
+                        for (int i = tier + 1; i < tiers.size(); i++) {
+                            dropTombstones &= tiers.get(i).isEmpty();
+                        }
+                        break;
+                    }
+                    changed.awaitUninterruptibly();
+                }
+                busy = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            try {
+                if (flushing != null) {
+                    SSTable<K, V> table = writeTable(new MemtableScanner<>(flushing, null, null), flushing.size(), false);
+                    lock.writeLock().lock();
+                    try {
+                        if (table != null) tier(0).add(0, table);
+                        immutable = null;
+                        writeManifest();
+                    } finally {
+                        finishJob();
+                    }
+                } else {
+                    compact(tier, inputs, dropTombstones);
+                }
+            } catch (IOException e) {
+                lock.writeLock().lock();
+                try {
+                    failure = e;
+                } finally {
+                    finishJob();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 把第tier层的SSTable归并成一个, 放到下一层的最前面(最新)
+     */
+    private void compact(int tier, ArrayList<SSTable<K, V>> inputs, boolean dropTombstones) throws IOException {
+        EntryScanner<K, V>[] sources = new EntryScanner[inputs.size()];
+        long count = 0;
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = inputs.get(i).scanner(null);
+            count += inputs.get(i).count;
+        }
+        SSTable<K, V> output = writeTable(new MergingScanner<>(sources, comparator), count, dropTombstones);
+        lock.writeLock().lock();
+        try {
+            tiers.get(tier).removeAll(inputs);
+            if (output != null) tier(tier + 1).add(0, output);
+            writeManifest();
+            // 持有写锁, 没有读操作在使用这些SSTable
+            delete(inputs);
+        } finally {
+            finishJob();
+        }
+    }
+
+    /**
+     * 调用者持有写锁, 这个方法会释放写锁
+     */
+    private void finishJob() {
+        busy = false;
+        changed.signalAll();
+        lock.writeLock().unlock();
+    }
+
+    private int tierToCompact() {
+        for (int i = 0; i < tiers.size(); i++) {
+            if (tiers.get(i).size() >= fanout) return i;
+        }
+        return -1;
+    }
+
+    private ArrayList<SSTable<K, V>> tier(int i) {
+        while (tiers.size() <= i) {
+            tiers.add(new ArrayList<>());
+        }
+        return tiers.get(i);
+    }
+
+    private SSTable<K, V> writeTable(EntryScanner<K, V> entries, long count, boolean dropTombstones) throws IOException {
+        long id;
+        lock.writeLock().lock();
+        try {
+            id = nextTableId++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return SSTable.write(file(id), id, entries, count, dropTombstones, keyCodec, valueCodec, comparator, blockReads);
+    }
+
+    // ------------------------------------MANIFEST-------------------------------------------
+
+    /**
+     * MANIFEST每行是一个SSTable: 层 id, 层内从新到旧; 不在MANIFEST中的SSTable是没有完成的归并留下的, 直接删除
+     */
+    private void loadManifest() throws IOException {
+        File manifest = new File(dir, MANIFEST);
+        HashSet<String> live = new HashSet<>();
+        if (manifest.exists()) {
+            for (String line : Files.readAllLines(manifest.toPath())) {
+                if (line.isEmpty()) continue;
+                String[] parts = line.split(" ");
+                int tier = Integer.parseInt(parts[0]);
+                long id = Long.parseLong(parts[1]);
+                tier(tier).add(SSTable.open(file(id), id, keyCodec, valueCodec, comparator, blockReads));
+                live.add(file(id).getName());
+                nextTableId = Math.max(nextTableId, id + 1);
+            }
+        }
+        for (File file : dir.listFiles()) {
+            if (file.getName().endsWith(SSTABLE) && !live.contains(file.getName())) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    private void writeManifest() throws IOException {
+        StringBuilder manifest = new StringBuilder();
+        for (int i = 0; i < tiers.size(); i++) {
+            for (SSTable<K, V> table : tiers.get(i)) {
+                manifest.append(i).append(' ').append(table.id).append('\n');
+            }
+        }
+        File tmp = new File(dir, MANIFEST + ".tmp");
+        Files.write(tmp.toPath(), manifest.toString().getBytes());
+        Files.move(tmp.toPath(), new File(dir, MANIFEST).toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ------------------------------------工具-------------------------------------------
+
+    /**
+     * memtable中[fromKey, toKey)范围内的键值对, 创建时复制出来, 之后memtable的修改不影响它
+     */
+    private static class MemtableScanner<K, V> implements EntryScanner<K, V> {
+        private final List<K> keys = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private int index = -1;
+
+        MemtableScanner(TreeMap<K, Object> memtable, K fromKey, K toKey) {
+            memtable.traversal(fromKey, toKey, new Visitor<K, Object>() {
+                @Override
+                public boolean visit(K key, Object value) {
+                    keys.add(key);
+                    values.add(value);
+                    return false;
+                }
+            });
+        }
+
+        @Override
+        public boolean next() {
+            return ++index < keys.size();
+        }
+
+        @Override
+        public K key() {
+            return keys.get(index);
+        }
+
+        @Override
+        public V value() {
+            Object value = values.get(index);
+            return value == TOMBSTONE ? null : (V) value;
+        }
+
+        @Override
+        public boolean deleted() {
+            return values.get(index) == TOMBSTONE;
+        }
+    }
+
+    private ByteBuffer encode(K key) {
+        ByteBuffer buffer = ByteBuffer.allocate(keyCodec.size(key));
+        keyCodec.write(buffer, key);
+        buffer.flip();
+        return buffer;
+    }
+
+    private File file(long id) {
+        return new File(dir, id + SSTABLE);
+    }
+
+    private void delete(List<SSTable<K, V>> tables) throws IOException {
+        for (SSTable<K, V> table : tables) {
+            table.close();
+            Files.deleteIfExists(table.file.toPath());
+        }
+    }
+
+    private void awaitChange() throws IOException {
+        changed.awaitUninterruptibly();
+        ensureOpen();
+        if (failure != null) throw failure;
+    }
+
+    private void ensureOpen() {
+        if (closed) throw new IllegalStateException("LsmTree is closed");
+    }
+
+    private void closeTables() throws IOException {
+        for (ArrayList<SSTable<K, V>> tier : tiers) {
+            for (SSTable<K, V> table : tier) {
+                table.close();
+            }
+        }
+        tiers.clear();
+    }
+}
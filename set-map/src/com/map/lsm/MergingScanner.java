@@ -0,0 +1,75 @@
+package com.map.lsm;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Description: 多路归并: 把多个有序的EntryScanner合并成一个有序的序列
+ * <p>
+ * sources按从新到旧排列, 同一个key在多个来源中出现时只返回最新的那个(包括删除标记), 其他的跳过.
+ * 用小顶堆保存每个来源的当前键值对, key相同时来源越新越靠前.
+ *
+ * @author guizy
+ * @date 2026/10/19 01:00
+ */
+@SuppressWarnings("all")
+class MergingScanner<K, V> implements EntryScanner<K, V> {
+    private final EntryScanner<K, V>[] sources;
+    private final Comparator<K> comparator;
+    private final PriorityQueue<Integer> heap;
+    private boolean started;
+    private K key;
+    private V value;
+    private boolean deleted;
+
+    MergingScanner(EntryScanner<K, V>[] sources, Comparator<K> comparator) {
+        this.sources = sources;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<>(Math.max(1, sources.length), new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                int cmp = comparator.compare(sources[i1].key(), sources[i2].key());
+                return cmp != 0 ? cmp : Integer.compare(i1, i2);
+            }
+        });
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!started) {
+            started = true;
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i].next()) heap.offer(i);
+            }
+        }
+        Integer newest = heap.poll();
+        if (newest == null) return false;
+        EntryScanner<K, V> source = sources[newest];
+        key = source.key();
+        value = source.value();
+        deleted = source.deleted();
+        // 其他来源中相同的key都是旧版本
+        while (!heap.isEmpty() && comparator.compare(sources[heap.peek()].key(), key) == 0) {
+            int older = heap.poll();
+            if (sources[older].next()) heap.offer(older);
+        }
+        if (source.next()) heap.offer(newest);
+        return true;
+    }
+
+    @Override
+    public K key() {
+        return key;
+    }
+
+    @Override
+    public V value() {
+        return value;
+    }
+
+    @Override
+    public boolean deleted() {
+        return deleted;
+    }
+}
@@ -0,0 +1,357 @@
+package com.map.lsm;
+
+import com.hashtable.persist.Codec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Description: 不可修改的有序表(Sorted String Table)
+ * <p>
+ * 文件格式: 数据块... 索引块 布隆过滤器 footer
+ * 数据块: 大约BLOCK_SIZE字节的键值对, 每个键值对是 flag(1: 0有值, 1删除) key [value], 最后是crc32(4)
+ * 索引块: 稀疏索引, 每个数据块一项: 第一个key offset(8) length(4), 打开时整个加载到内存中
+ * footer: indexOffset(8) indexLength(4) bloomOffset(8) bloomLength(4) count(8) magic(4)
+ * <p>
+ * 查找一个key: 布隆过滤器判断可能存在, 在稀疏索引中二分查找所在的数据块, 读取这一个数据块顺序查找.
+ *
+ * @author guizy
+ * @date 2026/10/19 01:00
+ */
+@SuppressWarnings("all")
+class SSTable<K, V> implements Closeable {
+    private static final int MAGIC = 0x53535442; // "SSTB"
+    private static final int FOOTER_SIZE = 36;
+    static final int BLOCK_SIZE = 4096;
+    private static final byte PUT = 0;
+    private static final byte DELETE = 1;
+
+    final File file;
+    final long id;
+    // 键值对(包括删除标记)的数量
+    final long count;
+    private final FileChannel channel;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final Comparator<K> comparator;
+    private final BloomFilter bloom;
+    // 稀疏索引: 每个数据块的第一个key、位置、长度
+    private final K[] firstKeys;
+    private final long[] offsets;
+    private final int[] lengths;
+    // 读取数据块的次数, 用来统计读放大
+    private final AtomicLong blockReads;
+
+    private SSTable(File file, long id, Codec<K> keyCodec, Codec<V> valueCodec, Comparator<K> comparator,
+                    AtomicLong blockReads) throws IOException {
+        this.file = file;
+        this.id = id;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.comparator = comparator;
+        this.blockReads = blockReads;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) throw new IOException("truncated sstable: " + file);
+            ByteBuffer footer = read(size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int indexLength = footer.getInt();
+            long bloomOffset = footer.getLong();
+            int bloomLength = footer.getInt();
+            count = footer.getLong();
+            if (footer.getInt() != MAGIC) throw new IOException("not an sstable: " + file);
+            bloom = BloomFilter.readFrom(read(bloomOffset, bloomLength));
+
+            ByteBuffer index = read(indexOffset, indexLength);
+            int blocks = index.getInt();
+            firstKeys = (K[]) new Object[blocks];
+            offsets = new long[blocks];
+            lengths = new int[blocks];
+            for (int i = 0; i < blocks; i++) {
+                firstKeys[i] = keyCodec.read(index);
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 打开已有的SSTable
+     */
+    static <K, V> SSTable<K, V> open(File file, long id, Codec<K> keyCodec, Codec<V> valueCodec,
+                                     Comparator<K> comparator, AtomicLong blockReads) throws IOException {
+        return new SSTable<>(file, id, keyCodec, valueCodec, comparator, blockReads);
+    }
+
+    /**
+     * 把有序的键值对写成SSTable
+     *
+     * @param entries        按key升序, 没有重复的key
+     * @param expectedCount  键值对数量的上限, 用来确定布隆过滤器的大小
+     * @param dropTombstones 不写删除标记(没有更旧的SSTable时, 删除标记已经没有意义)
+     * @return 一个键值对都没有写入时返回null, 不生成文件
+     */
+    static <K, V> SSTable<K, V> write(File file, long id, EntryScanner<K, V> entries, long expectedCount,
+                                      boolean dropTombstones, Codec<K> keyCodec, Codec<V> valueCodec,
+                                      Comparator<K> comparator, AtomicLong blockReads) throws IOException {
+        BloomFilter bloom = new BloomFilter(expectedCount);
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE * 2);
+        ByteBuffer index = ByteBuffer.allocate(1 << 12);
+        CRC32 crc = new CRC32();
+        long count = 0;
+        int blocks = 0;
+        long offset = 0;
+        K firstKey = null;
+        index.position(4);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (entries.next()) {
+                boolean deleted = entries.deleted();
+                if (deleted && dropTombstones) continue;
+                K key = entries.key();
+                V value = entries.value();
+                int keySize = keyCodec.size(key);
+                int size = 1 + keySize + (deleted ? 0 : valueCodec.size(value));
+                if (block.remaining() < size + 4) {
+                    ByteBuffer bigger = ByteBuffer.allocate(Math.max(block.capacity() * 2, block.position() + size + 4));
+                    block.flip();
+                    bigger.put(block);
+                    block = bigger;
+                }
+                if (firstKey == null) firstKey = key;
+                block.put(deleted ? DELETE : PUT);
+                int keyStart = block.position();
+                keyCodec.write(block, key);
+                ByteBuffer encodedKey = block.duplicate();
+                encodedKey.position(keyStart).limit(keyStart + keySize);
+                bloom.put(BloomFilter.hash(encodedKey));
+                if (!deleted) valueCodec.write(block, value);
+                count++;
+                if (block.position() >= BLOCK_SIZE) {
+                    index = addIndex(index, firstKey, offset, block.position() + 4, keyCodec);
+                    offset += flushBlock(channel, block, offset, crc);
+                    blocks++;
+                    firstKey = null;
+                }
+            }
+            if (block.position() > 0) {
+                index = addIndex(index, firstKey, offset, block.position() + 4, keyCodec);
+                offset += flushBlock(channel, block, offset, crc);
+                blocks++;
+            }
+            // 一个键值对都没有写入时不写索引和布隆过滤器, 关闭之后删除空文件
+            if (count > 0) {
+                index.putInt(0, blocks);
+                index.flip();
+                long indexOffset = offset;
+                int indexLength = index.remaining();
+                offset += writeFully(channel, index, offset);
+                ByteBuffer tail = ByteBuffer.allocate(bloom.byteSize() + FOOTER_SIZE);
+                bloom.writeTo(tail);
+                tail.putLong(indexOffset).putInt(indexLength).putLong(offset).putInt(bloom.byteSize());
+                tail.putLong(count).putInt(MAGIC);
+                tail.flip();
+                writeFully(channel, tail, offset);
+                channel.force(true);
+            }
+        }
+        if (count == 0) {
+            file.delete();
+            return null;
+        }
+        return open(file, id, keyCodec, valueCodec, comparator, blockReads);
+    }
+
+    private static <K> ByteBuffer addIndex(ByteBuffer index, K firstKey, long offset, int length, Codec<K> keyCodec) {
+        int size = keyCodec.size(firstKey) + 12;
+        if (index.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(index.capacity() * 2, index.position() + size));
+            index.flip();
+            bigger.put(index);
+            index = bigger;
+        }
+        keyCodec.write(index, firstKey);
+        index.putLong(offset).putInt(length);
+        return index;
+    }
+
+    /**
+     * 数据块后面加上crc32写入文件, 写完清空
+     *
+     * @return 写入的字节数
+     */
+    private static int flushBlock(FileChannel channel, ByteBuffer block, long offset, CRC32 crc) throws IOException {
+        crc.reset();
+        crc.update(block.array(), 0, block.position());
+        block.putInt((int) crc.getValue());
+        block.flip();
+        int length = writeFully(channel, block, offset);
+        block.clear();
+        return length;
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        int length = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + length - buffer.remaining());
+        }
+        return length;
+    }
+
+    // ------------------------------------读取-------------------------------------------
+
+    /**
+     * 查找key
+     *
+     * @param key
+     * @param hash 编码之后的key的哈希值
+     * @return 停在这个key上的BlockScanner(可能是删除标记), 不存在返回null
+     */
+    BlockScanner find(K key, long hash) throws IOException {
+        if (!bloom.mightContain(hash)) return null;
+        int block = blockOf(key);
+        if (block < 0) return null;
+        BlockScanner scanner = new BlockScanner();
+        scanner.load(block);
+        while (scanner.nextInBlock()) {
+            int cmp = comparator.compare(scanner.key, key);
+            if (cmp == 0) return scanner;
+            if (cmp > 0) return null;
+        }
+        return null;
+    }
+
+    /**
+     * 从第一个 >= fromKey 的键值对开始顺序读取
+     *
+     * @param fromKey 为null表示从头开始
+     */
+    BlockScanner scanner(K fromKey) throws IOException {
+        BlockScanner scanner = new BlockScanner();
+        scanner.seek(fromKey);
+        return scanner;
+    }
+
+    /**
+     * 可能包含key的数据块: 最后一个第一个key <= key的数据块
+     *
+     * @return key比所有的key都小, 返回-1
+     */
+    private int blockOf(K key) {
+        int begin = 0;
+        int end = firstKeys.length;
+        while (begin < end) {
+            int mid = (begin + end) >>> 1;
+            if (comparator.compare(firstKeys[mid], key) <= 0) {
+                begin = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        return begin - 1;
+    }
+
+    private ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("unexpected end of sstable: " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 逐个数据块读取键值对
+     */
+    class BlockScanner implements EntryScanner<K, V> {
+        private ByteBuffer block;
+        private int blockIndex = -1;
+        K key;
+        V value;
+        boolean deleted;
+
+        /**
+         * 读取第index个数据块, 校验crc
+         */
+        void load(int index) throws IOException {
+            ByteBuffer buffer = read(offsets[index], lengths[index]);
+            blockReads.incrementAndGet();
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), 0, buffer.limit() - 4);
+            if ((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+                throw new IOException("checksum mismatch in block " + index + " of " + file);
+            }
+            buffer.limit(buffer.limit() - 4);
+            block = buffer;
+            blockIndex = index;
+        }
+
+        /**
+         * 当前数据块中的下一个键值对
+         */
+        boolean nextInBlock() {
+            if (block == null || !block.hasRemaining()) return false;
+            deleted = block.get() == DELETE;
+            key = keyCodec.read(block);
+            value = deleted ? null : valueCodec.read(block);
+            return true;
+        }
+
+        void seek(K fromKey) throws IOException {
+            if (fromKey == null) return;
+            int index = Math.max(blockOf(fromKey), 0);
+            load(index);
+            // 跳过 < fromKey的键值对, 停在第一个 >= fromKey的键值对之前
+            while (block.hasRemaining()) {
+                int position = block.position();
+                nextInBlock();
+                if (comparator.compare(key, fromKey) >= 0) {
+                    block.position(position);
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            while (!nextInBlock()) {
+                if (blockIndex + 1 >= offsets.length) return false;
+                load(blockIndex + 1);
+            }
+            return true;
+        }
+
+        @Override
+        public K key() {
+            return key;
+        }
+
+        @Override
+        public V value() {
+            return value;
+        }
+
+        @Override
+        public boolean deleted() {
+            return deleted;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
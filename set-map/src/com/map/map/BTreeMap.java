@@ -0,0 +1,428 @@
+package com.map.map;
+
+import java.util.Comparator;
+
+/**
+ * Description: BTreeMap使用内存中的B树来实现, 每个节点用数组存放多个key-value
+ * <p>
+ * 红黑树每个节点只有一个key, 查找一个key要访问大约log2(n)个分散在堆中的节点;
+ * B树每个节点最多maxKeys个key, 在节点内部的数组中二分查找, 只需要访问log(maxKeys)(n)个节点, 缓存不命中少得多.
+ * <p>
+ * 除了根节点, 每个节点至少有maxKeys / 2个key. 添加: 在叶子节点中插入, 节点超过maxKeys个key就从中间分裂, 中间的key上移到父节点;
+ * 删除: 内部节点中的key用前驱替换, 转化为删除叶子节点中的key, 节点中的key太少就向兄弟节点借一个, 兄弟节点也不够就合并.
+ *
+ * @author guizy
+ * @date 2026/10/19 03:00
+ */
+@SuppressWarnings("all")
+public class BTreeMap<K, V> implements Map<K, V> {
+    private static final int DEFAULT_MAX_KEYS = 32;
+
+    private int size;
+    private Node<K, V> root;
+    private Comparator<K> comparator;
+    // 每个节点最多、最少(根节点除外)的key的数量
+    private final int maxKeys;
+    private final int minKeys;
+
+    // 添加时子节点分裂, 上移到父节点的key-value和分裂出来的右边节点
+    private K splitKey;
+    private V splitValue;
+    private Node<K, V> splitRight;
+
+    public BTreeMap() {
+        this(DEFAULT_MAX_KEYS, null);
+    }
+
+    public BTreeMap(Comparator<K> comparator) {
+        this(DEFAULT_MAX_KEYS, comparator);
+    }
+
+    /**
+     * @param maxKeys 每个节点最多存放的key的数量, 至少为3
+     */
+    public BTreeMap(int maxKeys, Comparator<K> comparator) {
+        if (maxKeys < 3) {
+            throw new IllegalArgumentException("maxKeys must be at least 3");
+        }
+        this.maxKeys = maxKeys;
+        this.minKeys = maxKeys / 2;
+        this.comparator = comparator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * @return 返回之前被覆盖的值
+     */
+    @Override
+    public V put(K key, V value) {
+        keyNotNullCheck(key);
+        if (root == null) {
+            root = new Node<>(maxKeys, true);
+        }
+        V old = put(root, key, value);
+        if (splitRight != null) {
+            // 根节点分裂, 树长高一层
+            Node<K, V> newRoot = new Node<>(maxKeys, false);
+            newRoot.keys[0] = splitKey;
+            newRoot.values[0] = splitValue;
+            newRoot.children[0] = root;
+            newRoot.children[1] = splitRight;
+            newRoot.size = 1;
+            root = newRoot;
+            clearSplit();
+        }
+        return old;
+    }
+
+    @Override
+    public V get(K key) {
+        keyNotNullCheck(key);
+        Node<K, V> node = root;
+        while (node != null) {
+            int index = search(node, key);
+            if (index >= 0) return (V) node.values[index];
+            node = node.isLeaf() ? null : node.children[-index - 1];
+        }
+        return null;
+    }
+
+    /**
+     * @return 返回被删除的值
+     */
+    @Override
+    public V remove(K key) {
+        keyNotNullCheck(key);
+        if (root == null) return null;
+        V old = remove(root, key);
+        // 根节点的key被合并到子节点中, 树变矮一层
+        if (root.size == 0) {
+            root = root.isLeaf() ? null : root.children[0];
+        }
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(K key) {
+        keyNotNullCheck(key);
+        Node<K, V> node = root;
+        while (node != null) {
+            int index = search(node, key);
+            if (index >= 0) return true;
+            node = node.isLeaf() ? null : node.children[-index - 1];
+        }
+        return false;
+    }
+
+    @Override
+    public boolean containsValue(V value) {
+        boolean[] found = new boolean[1];
+        traversal(new Visitor<K, V>() {
+            @Override
+            public boolean visit(K key, V v) {
+                found[0] = valEquals(value, v);
+                return found[0];
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * 按key升序遍历, visitor返回true就停止遍历
+     */
+    @Override
+    public void traversal(Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        traversal(root, null, null, visitor);
+    }
+
+    /**
+     * 按key升序遍历[fromKey, toKey)范围内的键值对, visitor返回true就停止遍历
+     *
+     * @param fromKey 为null表示没有下界
+     * @param toKey   为null表示没有上界
+     */
+    public void traversal(K fromKey, K toKey, Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        traversal(root, fromKey, toKey, visitor);
+    }
+
+    /**
+     * @return 是否停止遍历
+     */
+    private boolean traversal(Node<K, V> node, K fromKey, K toKey, Visitor<K, V> visitor) {
+        if (node == null) return false;
+        // 从第一个 >= fromKey 的key所在的位置开始, 正好等于fromKey时它左边的子节点中都是更小的key
+        int begin = 0;
+        boolean exact = false;
+        if (fromKey != null) {
+            begin = search(node, fromKey);
+            exact = begin >= 0;
+            if (begin < 0) begin = -begin - 1;
+        }
+        for (int i = begin; i <= node.size; i++) {
+            // 第i个子节点中的key都在keys[i - 1]和keys[i]之间
+            boolean skip = node.isLeaf() || exact && i == begin;
+            if (!skip && traversal(node.children[i], i == begin ? fromKey : null, toKey, visitor)) return true;
+            if (i == node.size) break;
+            if (toKey != null && compare((K) node.keys[i], toKey) >= 0) return true;
+            if (visitor.visit((K) node.keys[i], (V) node.values[i])) return true;
+        }
+        return false;
+    }
+
+    // ------------------------------------添加-------------------------------------------
+
+    /**
+     * 添加到以node为根的子树中, node分裂时结果放在splitKey、splitValue、splitRight中
+     */
+    private V put(Node<K, V> node, K key, V value) {
+        int index = search(node, key);
+        if (index >= 0) {
+            V old = (V) node.values[index];
+            node.values[index] = value;
+            return old;
+        }
+        index = -index - 1;
+        if (node.isLeaf()) {
+            node.insert(index, key, value, null);
+            size++;
+        } else {
+            V old = put(node.children[index], key, value);
+            if (splitRight == null) return old;
+            // 子节点分裂, 上移的key插入到当前节点中
+            Node<K, V> right = splitRight;
+            K upKey = splitKey;
+            V upValue = splitValue;
+            clearSplit();
+            node.insert(index, upKey, upValue, right);
+        }
+        if (node.size > maxKeys) split(node);
+        return null;
+    }
+
+    /**
+     * 节点从中间分裂, 中间的key上移, 后一半移到新的右边节点中
+     */
+    private void split(Node<K, V> node) {
+        int mid = node.size / 2;
+        Node<K, V> right = new Node<>(maxKeys, node.isLeaf());
+        right.size = node.size - mid - 1;
+        System.arraycopy(node.keys, mid + 1, right.keys, 0, right.size);
+        System.arraycopy(node.values, mid + 1, right.values, 0, right.size);
+        if (!node.isLeaf()) {
+            System.arraycopy(node.children, mid + 1, right.children, 0, right.size + 1);
+        }
+        splitKey = (K) node.keys[mid];
+        splitValue = (V) node.values[mid];
+        splitRight = right;
+        // 清空移走的位置, 避免内存泄漏
+        for (int i = mid; i < node.size; i++) {
+            node.keys[i] = null;
+            node.values[i] = null;
+            if (!node.isLeaf()) node.children[i + 1] = null;
+        }
+        node.size = mid;
+    }
+
+    private void clearSplit() {
+        splitKey = null;
+        splitValue = null;
+        splitRight = null;
+    }
+
+    // ------------------------------------删除-------------------------------------------
+
+    /**
+     * 从以node为根的子树中删除, 删除之后子节点的key太少时调整
+     */
+    private V remove(Node<K, V> node, K key) {
+        int index = search(node, key);
+        if (node.isLeaf()) {
+            if (index < 0) return null;
+            V old = (V) node.values[index];
+            node.delete(index, false);
+            size--;
+            return old;
+        }
+        V old;
+        if (index >= 0) {
+            // 用前驱(左子树中最大的key)替换, 再从左子树中删除前驱
+            old = (V) node.values[index];
+            Node<K, V> predecessor = node.children[index];
+            while (!predecessor.isLeaf()) {
+                predecessor = predecessor.children[predecessor.size];
+            }
+            K predecessorKey = (K) predecessor.keys[predecessor.size - 1];
+            node.keys[index] = predecessorKey;
+            node.values[index] = predecessor.values[predecessor.size - 1];
+            remove(node.children[index], predecessorKey);
+        } else {
+            index = -index - 1;
+            old = remove(node.children[index], key);
+        }
+        if (node.children[index].size < minKeys) fixUnderflow(node, index);
+        return old;
+    }
+
+    /**
+     * 第index个子节点的key太少: 向兄弟节点借一个key(旋转), 兄弟节点也不够就和兄弟节点合并
+     */
+    private void fixUnderflow(Node<K, V> parent, int index) {
+        Node<K, V> child = parent.children[index];
+        Node<K, V> left = index > 0 ? parent.children[index - 1] : null;
+        Node<K, V> right = index < parent.size ? parent.children[index + 1] : null;
+        if (left != null && left.size > minKeys) {
+            // 父节点的key下移到child最前面, 左兄弟最后的key上移到父节点
+            Node<K, V> moved = left.isLeaf() ? null : left.children[left.size];
+            child.insert(0, (K) parent.keys[index - 1], (V) parent.values[index - 1], null);
+            if (!child.isLeaf()) {
+                System.arraycopy(child.children, 1, child.children, 2, child.size - 1);
+                child.children[1] = child.children[0];
+                child.children[0] = moved;
+            }
+            parent.keys[index - 1] = left.keys[left.size - 1];
+            parent.values[index - 1] = left.values[left.size - 1];
+            left.delete(left.size - 1, true);
+        } else if (right != null && right.size > minKeys) {
+            // 父节点的key下移到child最后面, 右兄弟最前的key上移到父节点
+            child.insert(child.size, (K) parent.keys[index], (V) parent.values[index],
+                    right.isLeaf() ? null : right.children[0]);
+            parent.keys[index] = right.keys[0];
+            parent.values[index] = right.values[0];
+            if (!right.isLeaf()) {
+                System.arraycopy(right.children, 1, right.children, 0, right.size);
+                right.children[right.size] = null;
+            }
+            right.delete(0, false);
+        } else if (left != null) {
+            merge(parent, index - 1);
+        } else {
+            merge(parent, index);
+        }
+    }
+
+    /**
+     * 第index个子节点、父节点的第index个key、第index + 1个子节点合并成一个节点
+     */
+    private void merge(Node<K, V> parent, int index) {
+        Node<K, V> left = parent.children[index];
+        Node<K, V> right = parent.children[index + 1];
+        left.keys[left.size] = parent.keys[index];
+        left.values[left.size] = parent.values[index];
+        System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+        System.arraycopy(right.values, 0, left.values, left.size + 1, right.size);
+        if (!left.isLeaf()) {
+            System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+        }
+        left.size += right.size + 1;
+        parent.delete(index, true);
+    }
+
+    // ------------------------------------工具-------------------------------------------
+
+    /**
+     * 在节点的key数组中二分查找
+     *
+     * @return 找到返回位置, 否则返回 -(插入位置) - 1, 插入位置也是key所在的子节点
+     */
+    private int search(Node<K, V> node, K key) {
+        int begin = 0;
+        int end = node.size - 1;
+        while (begin <= end) {
+            int mid = (begin + end) >>> 1;
+            int cmp = compare((K) node.keys[mid], key);
+            if (cmp < 0) {
+                begin = mid + 1;
+            } else if (cmp > 0) {
+                end = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -begin - 1;
+    }
+
+    private int compare(K k1, K k2) {
+        if (comparator != null) {
+            return comparator.compare(k1, k2);
+        }
+        return ((Comparable<K>) k1).compareTo(k2);
+    }
+
+    private boolean valEquals(V v1, V v2) {
+        return v1 == null ? v2 == null : v1.equals(v2);
+    }
+
+    private void keyNotNullCheck(K key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key must not be null");
+        }
+    }
+
+    private static class Node<K, V> {
+        // 多留一个位置, 节点先插入再分裂
+        Object[] keys;
+        Object[] values;
+        // 叶子节点为null, 第i个子节点中的key都在keys[i - 1]和keys[i]之间
+        Node<K, V>[] children;
+        int size;
+
+        Node(int maxKeys, boolean leaf) {
+            keys = new Object[maxKeys + 1];
+            values = new Object[maxKeys + 1];
+            if (!leaf) children = new Node[maxKeys + 2];
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        /**
+         * 在index位置插入key-value, right插入到index + 1位置的子节点
+         */
+        void insert(int index, K key, V value, Node<K, V> right) {
+            System.arraycopy(keys, index, keys, index + 1, size - index);
+            System.arraycopy(values, index, values, index + 1, size - index);
+            keys[index] = key;
+            values[index] = value;
+            if (right != null) {
+                System.arraycopy(children, index + 1, children, index + 2, size - index);
+                children[index + 1] = right;
+            }
+            size++;
+        }
+
+        /**
+         * 删除index位置的key-value
+         *
+         * @param rightChild 同时删除index + 1位置的子节点
+         */
+        void delete(int index, boolean rightChild) {
+            System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            if (rightChild && children != null) {
+                System.arraycopy(children, index + 2, children, index + 1, size - index - 1);
+                children[size] = null;
+            }
+            size--;
+            keys[size] = null;
+            values[size] = null;
+        }
+    }
+}
@@ -101,6 +101,52 @@ public class TreeMap<K, V> implements Map<K, V> {
         return null;
     }
 
+    /**
+     * 用升序排列(没有重复)的键值对直接构建红黑树, 只能在TreeMap为空时调用
+     * 不需要逐个比较查找插入位置, 也没有旋转, 时间复杂度O(n);
+     * 构建出来的是一颗完全平衡的二叉树, 只有最底层(不满的那一层)的节点染成红色
+     *
+     * @param keys   升序排列的key
+     * @param values keys[i]对应values[i]
+     */
+    public void buildFromSorted(K[] keys, V[] values) {
+        if (root != null) {
+            throw new IllegalStateException("TreeMap must be empty");
+        }
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values must have the same length");
+        }
+        for (int i = 0; i < keys.length; i++) {
+            keyNotNullCheck(keys[i]);
+            if (i > 0 && compare(keys[i - 1], keys[i]) >= 0) {
+                throw new IllegalArgumentException("keys must be sorted in ascending order without duplicates");
+            }
+        }
+        if (keys.length == 0) return;
+        // 完全平衡二叉树中, 最底层的深度
+        int redLevel = 0;
+        for (int m = keys.length - 1; m >= 0; m = m / 2 - 1) {
+            redLevel++;
+        }
+        root = buildFromSorted(keys, values, 0, 0, keys.length - 1, redLevel);
+        size = keys.length;
+    }
+
+    /**
+     * 构建[lo, hi]范围内的子树, 中间的键值对作为子树的根节点
+     */
+    private Node<K, V> buildFromSorted(K[] keys, V[] values, int level, int lo, int hi, int redLevel) {
+        if (hi < lo) return null;
+        int mid = (lo + hi) >>> 1;
+        Node<K, V> middle = new Node<>(keys[mid], values[mid], null);
+        middle.color = level == redLevel ? RED : BLACK;
+        middle.left = buildFromSorted(keys, values, level + 1, lo, mid - 1, redLevel);
+        if (middle.left != null) middle.left.parent = middle;
+        middle.right = buildFromSorted(keys, values, level + 1, mid + 1, hi, redLevel);
+        if (middle.right != null) middle.right.parent = middle;
+        return middle;
+    }
+
     @Override
     public V get(K key) {
         Node<K, V> node = node(key);
@@ -154,6 +200,32 @@ public class TreeMap<K, V> implements Map<K, V> {
         traversal(node.right, visitor);
     }
 
+    /**
+     * 按key升序遍历[fromKey, toKey)范围内的键值对, visitor返回true就停止遍历
+     * 只进入和范围有交集的子树, 时间复杂度O(logn + 范围内键值对的数量)
+     *
+     * @param fromKey 为null表示没有下界
+     * @param toKey   为null表示没有上界
+     */
+    public void traversal(K fromKey, K toKey, Visitor<K, V> visitor) {
+        if (visitor == null) return;
+        traversal(root, fromKey, toKey, visitor);
+    }
+
+    /**
+     * @return 是否停止遍历
+     */
+    private boolean traversal(Node<K, V> node, K fromKey, K toKey, Visitor<K, V> visitor) {
+        if (node == null) return false;
+        // node.key >= fromKey, 左子树中才可能有范围内的key
+        boolean afterFrom = fromKey == null || compare(node.key, fromKey) >= 0;
+        // node.key < toKey, 右子树中才可能有范围内的key
+        boolean beforeTo = toKey == null || compare(node.key, toKey) < 0;
+        if (afterFrom && traversal(node.left, fromKey, toKey, visitor)) return true;
+        if (afterFrom && beforeTo && visitor.visit(node.key, node.value)) return true;
+        return beforeTo && traversal(node.right, fromKey, toKey, visitor);
+    }
+
     private boolean valEquals(V v1, V v2) {
         // 如果v1==null,说明为true, 走v2==null, v2等于null的话, 说明v1和v2相等, v2不等于空的话, 返回false
         // 如果v1!=null, 直接判断v1.equals(v2)是否相等
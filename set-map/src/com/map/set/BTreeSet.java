@@ -0,0 +1,68 @@
+package com.map.set;
+
+import com.map.map.BTreeMap;
+import com.map.map.Map;
+
+import java.util.Comparator;
+
+/**
+ * Description: BTreeMap来实现Set, 元素按顺序遍历
+ *
+ * @author guizy
+ * @date 2026/10/19 03:00
+ */
+public class BTreeSet<E> implements Set<E> {
+
+    Map<E, Object> map;
+
+    public BTreeSet() {
+        map = new BTreeMap<>();
+    }
+
+    /**
+     * @param maxKeys 每个节点最多存放的元素的数量
+     */
+    public BTreeSet(int maxKeys, Comparator<E> comparator) {
+        map = new BTreeMap<>(maxKeys, comparator);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public boolean contains(E element) {
+        return map.containsKey(element);
+    }
+
+    @Override
+    public void add(E element) {
+        map.put(element, null);
+    }
+
+    @Override
+    public void remove(E element) {
+        map.remove(element);
+    }
+
+    @Override
+    public void traversal(Visitor<E> visitor) {
+        map.traversal(new Map.Visitor<E, Object>() {
+            @Override
+            public boolean visit(E key, Object value) {
+                return visitor.visit(key);
+            }
+        });
+    }
+}